@@ -0,0 +1,59 @@
+package net.thebigrock.turbotape.benchmarks;
+
+import net.thebigrock.turbotape.Deserializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Deserializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Deserialization throughput of TurboTape, with {@link ObjectInputStream} as the baseline.
+ * The tapes are encoded once per trial, and decoded from memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DeserializeBenchmark {
+    private final Deserializer _deserializer = new TurboTapeV1Deserializer(Shapes.readHandlers());
+    private byte[] _turboTape;
+    private byte[] _objectStream;
+
+    @Setup
+    public void setup(ShapeState state) throws IOException {
+        _turboTape = new TurboTapeV1Serializer(Shapes.writeHandlers()).serialize(state.object);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(state.object);
+        }
+        _objectStream = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Object turboTape(ShapeState state, EncodedBytes counter) {
+        counter.bytes += _turboTape.length;
+        return _deserializer.deserialize(state.type(), new ByteArrayInputStream(_turboTape));
+    }
+
+    @Benchmark
+    public Object objectInputStream(EncodedBytes counter) throws IOException, ClassNotFoundException {
+        counter.bytes += _objectStream.length;
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(_objectStream))) {
+            return objectInputStream.readObject();
+        }
+    }
+}
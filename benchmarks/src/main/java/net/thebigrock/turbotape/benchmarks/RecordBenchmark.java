@@ -0,0 +1,98 @@
+package net.thebigrock.turbotape.benchmarks;
+
+import net.thebigrock.turbotape.Deserializer;
+import net.thebigrock.turbotape.ObjectReadHandlerProviderBuilder;
+import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
+import net.thebigrock.turbotape.Serializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Deserializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput of the handlers derived from record components, with the handwritten handlers of the same
+ * sequence of flat records as the baseline. Both tapes hold the same fields, and both sequences are materialized.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordBenchmark {
+    private static final int SAMPLES = 10_000;
+
+    /**
+     * The record equivalent of {@link Shapes.Flat}
+     */
+    public record FlatRecord(boolean active, int id, long timestamp, float ratio, double amount) { }
+
+    /**
+     * The record equivalent of {@link Shapes.Series}
+     */
+    public record SeriesRecord(String name, List<FlatRecord> samples) { }
+
+    private final Serializer _handwrittenSerializer = new TurboTapeV1Serializer(Shapes.writeHandlers());
+    private final Deserializer _handwrittenDeserializer = new TurboTapeV1Deserializer(Shapes.readHandlers());
+    private final Serializer _recordSerializer = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+            .addRecord(FlatRecord.class)
+            .addRecord(SeriesRecord.class)
+            .build());
+    private final Deserializer _recordDeserializer = new TurboTapeV1Deserializer(
+            ObjectReadHandlerProviderBuilder.create()
+                    .addRecord(FlatRecord.class)
+                    .addRecord(SeriesRecord.class)
+                    .build());
+    private Shapes.Series _handwritten;
+    private SeriesRecord _record;
+    private byte[] _handwrittenTape;
+    private byte[] _recordTape;
+
+    @Setup
+    public void setup() throws IOException {
+        _handwritten = Shapes.series(SAMPLES);
+        List<FlatRecord> samples = new ArrayList<>(SAMPLES);
+        for (Shapes.Flat flat : _handwritten.samples) {
+            samples.add(new FlatRecord(flat.active, flat.id, flat.timestamp, flat.ratio, flat.amount));
+        }
+        _record = new SeriesRecord(_handwritten.name, samples);
+        _handwrittenTape = _handwrittenSerializer.serialize(_handwritten);
+        _recordTape = _recordSerializer.serialize(_record);
+    }
+
+    @Benchmark
+    public byte[] serializeHandwritten(EncodedBytes counter) throws IOException {
+        byte[] tape = _handwrittenSerializer.serialize(_handwritten);
+        counter.bytes += tape.length;
+        return tape;
+    }
+
+    @Benchmark
+    public byte[] serializeRecord(EncodedBytes counter) throws IOException {
+        byte[] tape = _recordSerializer.serialize(_record);
+        counter.bytes += tape.length;
+        return tape;
+    }
+
+    @Benchmark
+    public Object deserializeHandwritten(EncodedBytes counter) {
+        counter.bytes += _handwrittenTape.length;
+        return _handwrittenDeserializer.deserialize(Shapes.Series.class, _handwrittenTape);
+    }
+
+    @Benchmark
+    public Object deserializeRecord(EncodedBytes counter) {
+        counter.bytes += _recordTape.length;
+        return _recordDeserializer.deserialize(SeriesRecord.class, _recordTape);
+    }
+}
@@ -0,0 +1,80 @@
+package net.thebigrock.turbotape.benchmarks;
+
+import net.thebigrock.turbotape.Serializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Serializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1SerializerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Serialization throughput of TurboTape, with {@link ObjectOutputStream} as the baseline.
+ * Both write to a reused in-memory stream, so the allocations measured are the serializers own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializeBenchmark {
+    private final Serializer _serializer = new TurboTapeV1Serializer(Shapes.writeHandlers());
+    private final Serializer _parallelSerializer = TurboTapeV1SerializerBuilder.create(Shapes.writeHandlers())
+            .parallelSequences(ForkJoinPool.commonPool())
+            .build();
+    private final Serializer _pooledSerializer = TurboTapeV1SerializerBuilder.create(Shapes.writeHandlers())
+            .pooledEncoders(true)
+            .build();
+    private ByteArrayOutputStream _outputStream;
+
+    @Setup
+    public void setup() {
+        _outputStream = new ByteArrayOutputStream(1 << 20);
+    }
+
+    @Benchmark
+    public int turboTape(ShapeState state, EncodedBytes counter) throws IOException {
+        _outputStream.reset();
+        _serializer.serialize(state.object, _outputStream);
+        counter.bytes += _outputStream.size();
+        return _outputStream.size();
+    }
+
+    // Only differs from the sequential serializer for the sequence shape
+    @Benchmark
+    public int turboTapeParallel(ShapeState state, EncodedBytes counter) throws IOException {
+        _outputStream.reset();
+        _parallelSerializer.serialize(state.object, _outputStream);
+        counter.bytes += _outputStream.size();
+        return _outputStream.size();
+    }
+
+    // Reuses the context and buffer of the benchmark thread, best compared with -prof gc
+    @Benchmark
+    public int turboTapePooled(ShapeState state, EncodedBytes counter) throws IOException {
+        _outputStream.reset();
+        _pooledSerializer.serialize(state.object, _outputStream);
+        counter.bytes += _outputStream.size();
+        return _outputStream.size();
+    }
+
+    @Benchmark
+    public int objectOutputStream(ShapeState state, EncodedBytes counter) throws IOException {
+        _outputStream.reset();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(_outputStream)) {
+            objectOutputStream.writeObject(state.object);
+        }
+        counter.bytes += _outputStream.size();
+        return _outputStream.size();
+    }
+}
@@ -0,0 +1,34 @@
+package net.thebigrock.turbotape.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * The object benchmarked, selected by the shape parameter
+ */
+@State(Scope.Benchmark)
+public class ShapeState {
+    // Flat primitive records, string heavy records, deep object trees or large sequences
+    @Param({ "flat", "strings", "tree", "sequence" })
+    public String shape;
+
+    Object object;
+
+    @Setup
+    public void setup() {
+        switch (shape) {
+            case "flat": object = Shapes.flat(42); break;
+            case "strings": object = Shapes.text(42); break;
+            case "tree": object = Shapes.tree(12); break;
+            case "sequence": object = Shapes.series(10_000); break;
+            default: throw new IllegalArgumentException("Unknown shape [" + shape + "]");
+        }
+    }
+
+    Class<?> type() {
+        return object.getClass();
+    }
+}
@@ -0,0 +1,174 @@
+package net.thebigrock.turbotape.benchmarks;
+
+import net.thebigrock.turbotape.FieldReader;
+import net.thebigrock.turbotape.FieldWriter;
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.ObjectReadHandlerProviderBuilder;
+import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
+import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The object shapes benchmarked, with their TurboTape handlers.
+ * <p>
+ * The classes are {@link Serializable}, so the same instances can be written by the
+ * {@link java.io.ObjectOutputStream} baseline.
+ */
+public final class Shapes {
+    private Shapes() { }
+
+    /**
+     * Flat record of primitive fields
+     */
+    public static class Flat implements Serializable {
+        final boolean active;
+        final int id;
+        final long timestamp;
+        final float ratio;
+        final double amount;
+
+        Flat(boolean active, int id, long timestamp, float ratio, double amount) {
+            this.active = active;
+            this.id = id;
+            this.timestamp = timestamp;
+            this.ratio = ratio;
+            this.amount = amount;
+        }
+
+        static void serialize(FieldWriter writer, Flat obj) {
+            writer.write(obj.active).as("active");
+            writer.write(obj.id).as("id");
+            writer.write(obj.timestamp).as("timestamp");
+            writer.write(obj.ratio).as("ratio");
+            writer.write(obj.amount).as("amount");
+        }
+
+        static Flat deserialize(FieldReader reader) {
+            return new Flat(reader.readBool() == 1, reader.readInt(), reader.readLong(), reader.readFloat(),
+                    reader.readDouble());
+        }
+    }
+
+    /**
+     * Record dominated by string fields
+     */
+    public static class Text implements Serializable {
+        final String name;
+        final String email;
+        final String street;
+        final String city;
+        final String description;
+
+        Text(String name, String email, String street, String city, String description) {
+            this.name = name;
+            this.email = email;
+            this.street = street;
+            this.city = city;
+            this.description = description;
+        }
+
+        static void serialize(FieldWriter writer, Text obj) {
+            writer.write(obj.name).as("name");
+            writer.write(obj.email).as("email");
+            writer.write(obj.street).as("street");
+            writer.write(obj.city).as("city");
+            writer.write(obj.description).as("description");
+        }
+
+        static Text deserialize(FieldReader reader) {
+            return new Text(reader.readString(), reader.readString(), reader.readString(), reader.readString(),
+                    reader.readString());
+        }
+    }
+
+    /**
+     * Node of a binary object tree
+     */
+    public static class Node implements Serializable {
+        final int value;
+        final Node left;
+        final Node right;
+
+        Node(int value, Node left, Node right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        static void serialize(FieldWriter writer, Node obj) {
+            writer.write(obj.value).as("value");
+            writer.write(obj.left).as("left");
+            writer.write(obj.right).as("right");
+        }
+
+        static Node deserialize(FieldReader reader) {
+            return new Node(reader.readInt(), reader.readObject(Node.class), reader.readObject(Node.class));
+        }
+    }
+
+    /**
+     * Large sequence of flat records
+     */
+    public static class Series implements Serializable {
+        final String name;
+        final List<Flat> samples;
+
+        Series(String name, List<Flat> samples) {
+            this.name = name;
+            this.samples = samples;
+        }
+
+        static void serialize(FieldWriter writer, Series obj) {
+            writer.write(obj.name).as("name");
+            writer.write(obj.samples).as("samples");
+        }
+
+        // The sequence is materialized, to compare with the baseline which always is
+        static Series deserialize(FieldReader reader) {
+            String name = reader.readString();
+            List<Flat> samples = new ArrayList<>();
+            reader.readIterable(Flat.class).forEach(samples::add);
+            return new Series(name, samples);
+        }
+    }
+
+    static Flat flat(int id) {
+        return new Flat(id % 2 == 0, id, 1_600_000_000_000L + id, id / 7.0f, id * 1.25);
+    }
+
+    static Text text(int id) {
+        return new Text("Name Namesson " + id, "name.namesson" + id + "@example.com", "Long Street " + id,
+                "Big City", "A somewhat longer description of the record, which is record number " + id);
+    }
+
+    static Node tree(int depth) {
+        return depth == 0 ? null : new Node(depth, tree(depth - 1), tree(depth - 1));
+    }
+
+    static Series series(int size) {
+        List<Flat> samples = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) samples.add(flat(id));
+        return new Series("series", samples);
+    }
+
+    static ObjectWriteHandlerProvider writeHandlers() {
+        return ObjectWriteHandlerProviderBuilder.create()
+                .add(Flat.class, Flat::serialize)
+                .add(Text.class, Text::serialize)
+                .add(Node.class, Node::serialize)
+                .add(Series.class, Series::serialize)
+                .build();
+    }
+
+    static ObjectReadHandlerProvider readHandlers() {
+        return ObjectReadHandlerProviderBuilder.create()
+                .add(Flat.class, Flat::deserialize)
+                .add(Text.class, Text::deserialize)
+                .add(Node.class, Node::deserialize)
+                .add(Series.class, Series::deserialize)
+                .build();
+    }
+}
@@ -1,5 +1,7 @@
 package net.thebigrock.turbotape;
 
+import net.thebigrock.turbotape.util.StringView;
+
 /**
  * Defines methods provided by a Field Reader, to read data from a deserializer.
  */
@@ -72,6 +74,49 @@ public interface FieldReader {
      */
     String readString();
 
+    /**
+     * Reads string from serializer as a view of its UTF-8 bytes, decoded only if the characters are accessed.
+     * <p>
+     * Where the deserializer holds the bytes of the string, such as for strings not yet decoded, the view refers
+     * to them without copying. Such a view becomes invalid once the read handler returns, as the bytes are then
+     * reused for the next object, so use {@link StringView#toString()} to keep the value. Otherwise the view
+     * wraps the decoded string, and is only encoded if its bytes are needed.
+     *
+     * @return Read value
+     * @see StringView
+     */
+    StringView readStringView();
+
+    /**
+     * Reads integer array from serializer
+     * @return Read value, which is shared by subsequent reads of the same field
+     */
+    int[] readIntArray();
+
+    /**
+     * Reads long array from serializer
+     * @return Read value, which is shared by subsequent reads of the same field
+     */
+    long[] readLongArray();
+
+    /**
+     * Reads float array from serializer
+     * @return Read value, which is shared by subsequent reads of the same field
+     */
+    float[] readFloatArray();
+
+    /**
+     * Reads double array from serializer
+     * @return Read value, which is shared by subsequent reads of the same field
+     */
+    double[] readDoubleArray();
+
+    /**
+     * Reads byte array from serializer
+     * @return Read value, which is shared by subsequent reads of the same field
+     */
+    byte[] readByteArray();
+
     /**
      * Reads object of given class from serializer
      * @param cls The class of the object to read
@@ -79,6 +124,19 @@ public interface FieldReader {
      */
     <T> T readObject(Class<T> cls);
 
+    /**
+     * Registers the object being built, before reading sub-objects referring back to it.
+     * <p>
+     * Only needed to read cyclic graphs written with identity tracking, where back-references to an object
+     * can be read before its read handler returns. The handler then has to create the object, register it,
+     * and read the sub-objects into it. Without identity tracking, this does nothing.
+     *
+     * @param object The object being built
+     * @param <T> The objects type
+     * @return The object, for cascading
+     */
+    <T> T register(T object);
+
     /**
      * Returns iterator to read sequence of objects
      * @param cls The class of the object to read
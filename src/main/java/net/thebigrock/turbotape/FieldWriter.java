@@ -41,6 +41,26 @@ public interface FieldWriter {
      */
     Allocator write(long value);
 
+    /**
+     * Write an integer value using a variable length encoding, which takes a single byte for values
+     * between -64 and 63. Serializers without a compact encoding write the value as {@link #write(int)}.
+     * @param value The value
+     * @return Allocator for the field
+     */
+    default Allocator writeCompact(int value) {
+        return write(value);
+    }
+
+    /**
+     * Write a long value using a variable length encoding, which takes a single byte for values
+     * between -64 and 63. Serializers without a compact encoding write the value as {@link #write(long)}.
+     * @param value The value
+     * @return Allocator for the field
+     */
+    default Allocator writeCompact(long value) {
+        return write(value);
+    }
+
     /**
      * Write a float value
      * @param value The value
@@ -62,6 +82,41 @@ public interface FieldWriter {
      */
     Allocator write(String value);
 
+    /**
+     * Write an integer array as a single field, with the elements packed
+     * @param values The values, which must not be null
+     * @return Allocator for the field
+     */
+    Allocator write(int[] values);
+
+    /**
+     * Write a long array as a single field, with the elements packed
+     * @param values The values, which must not be null
+     * @return Allocator for the field
+     */
+    Allocator write(long[] values);
+
+    /**
+     * Write a float array as a single field, with the elements packed
+     * @param values The values, which must not be null
+     * @return Allocator for the field
+     */
+    Allocator write(float[] values);
+
+    /**
+     * Write a double array as a single field, with the elements packed
+     * @param values The values, which must not be null
+     * @return Allocator for the field
+     */
+    Allocator write(double[] values);
+
+    /**
+     * Write a byte array as a single field
+     * @param values The values, which must not be null
+     * @return Allocator for the field
+     */
+    Allocator write(byte[] values);
+
     /**
      * Writes the specific object to the serializer
      *
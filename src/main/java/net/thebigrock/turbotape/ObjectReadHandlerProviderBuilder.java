@@ -46,6 +46,39 @@ public class ObjectReadHandlerProviderBuilder {
         return add(cls.getSimpleName(), readHandler);
     }
 
+    /**
+     * Adds a read handler for a record class, derived from its components. The canonical constructor is bound
+     * once when added, so no reflection is used when reading.
+     * @param alias The alias that maps to the Read Handler
+     * @param cls The record class
+     * @param <T> The type of the record
+     * @return The ObjectReadHandlerProviderBuilder instance for cascaded calls
+     * @throws IllegalArgumentException If the class is not a record, or a component type is not supported
+     */
+    public <T> ObjectReadHandlerProviderBuilder addRecord(String alias, Class<T> cls) {
+        return add(alias, RecordHandlers.readHandler(cls));
+    }
+
+    /**
+     * Register the class {@link Class#getSimpleName()} as an alias for the read handler of a record class,
+     * derived from its components
+     * @param cls The record class
+     * @param <T> The type of the record
+     * @return The ObjectReadHandlerProviderBuilder instance for cascaded calls
+     * @throws IllegalArgumentException If the class is not a record, or a component type is not supported
+     */
+    public <T> ObjectReadHandlerProviderBuilder addRecord(Class<T> cls) {
+        return addRecord(cls.getSimpleName(), cls);
+    }
+
+    /**
+     * Builds the ObjectReadHandlerProvider
+     * @return ObjectReadHandlerProvider instance
+     */
+    public ObjectReadHandlerProvider build() {
+        return new Provider(new HashMap<>(_aliasReadHandlerMap));
+    }
+
     /**
      * Internal provider implementation that wraps the reader map
      */
@@ -51,6 +51,34 @@ public class ObjectWriteHandlerProviderBuilder {
         return add(cls.getSimpleName(), cls, writeHandler);
     }
 
+    /**
+     * Adds a handler for a record class, derived from its components. The accessors are bound once when added,
+     * so no reflection is used when writing.
+     *
+     * @param alias The alias to use to reference the record class
+     * @param cls The record class
+     * @param <T> The type of the record
+     * @return This ObjectWriteHandlerProviderBuilder instance for cascading
+     * @throws IllegalArgumentException If the class is not a record, or a component type is not supported
+     */
+    public <T> ObjectWriteHandlerProviderBuilder addRecord(String alias, Class<T> cls) {
+        return add(alias, cls, RecordHandlers.writeHandler(cls));
+    }
+
+    /**
+     * Adds a handler for a record class, derived from its components
+     *
+     * The {@link Class#getSimpleName()} is used as the class alias
+     *
+     * @param cls The record class
+     * @param <T> The type of the record
+     * @return This ObjectWriteHandlerProviderBuilder instance for cascading
+     * @throws IllegalArgumentException If the class is not a record, or a component type is not supported
+     */
+    public <T> ObjectWriteHandlerProviderBuilder addRecord(Class<T> cls) {
+        return addRecord(cls.getSimpleName(), cls);
+    }
+
     /**
      * Builds the ObjectWriteHandlerProvider
      * @return ObjectWriteHandlerProvider instance
@@ -98,7 +126,8 @@ public class ObjectWriteHandlerProviderBuilder {
 
         @SuppressWarnings("unchecked")  // Unchecked Cast is safe, as we enforce type match on build
         private <T> Entry<T> get(Class<T> cls) {
-            if (_classEntryMap.containsKey(cls)) return (Entry<T>) _classEntryMap.get(cls);
+            Entry<T> entry = (Entry<T>) _classEntryMap.get(cls);
+            if (entry != null) return entry;
             throw new IllegalStateException("No ObjectWriteHandler registered for class: " + cls);
         }
     }
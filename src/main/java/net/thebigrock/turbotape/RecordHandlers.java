@@ -0,0 +1,335 @@
+package net.thebigrock.turbotape;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Derives the write handler and read handler of a record class from its components.
+ * <p>
+ * The component accessors are bound once to functional interfaces through {@link LambdaMetafactory}, typed for
+ * the primitive components, so writing a component is an interface call without reflection or boxing. The
+ * components are written in declaration order, named by their names, and read by their position. The canonical
+ * constructor is bound once into a single {@link MethodHandle}, with each argument read by the typed method of
+ * the field reader, so reading a record neither boxes the primitive components nor allocates an argument array.
+ * <p>
+ * Components can be primitives other than char, short and byte, strings, primitive arrays of the supported
+ * kinds, enums, which are written by name, lists of objects, and objects of types registered with the providers.
+ * Records in named modules must be open to this module.
+ */
+final class RecordHandlers {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle AT;
+
+    static {
+        try {
+            AT = LOOKUP.findVirtual(FieldReader.class, "at", MethodType.methodType(FieldReader.class, int.class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private RecordHandlers() { }
+
+    /**
+     * Creates the write handler of a record class
+     * @param cls The record class
+     * @param <T> The record type
+     * @return The write handler
+     * @throws IllegalArgumentException If the class is not a record, or a component type is not supported
+     */
+    static <T> ObjectWriteHandler<T> writeHandler(Class<T> cls) {
+        MethodHandles.Lookup lookup = lookup(cls);
+        RecordComponent[] components = cls.getRecordComponents();
+        ComponentWriter[] writers = new ComponentWriter[components.length];
+        for (int ix = 0; ix < components.length; ix++) {
+            writers[ix] = componentWriter(lookup, cls, components[ix]);
+        }
+        return (fieldWriter, object) -> {
+            for (ComponentWriter writer : writers) {
+                writer.write(fieldWriter, object);
+            }
+        };
+    }
+
+    /**
+     * Creates the read handler of a record class
+     * @param cls The record class
+     * @param <T> The record type
+     * @return The read handler
+     * @throws IllegalArgumentException If the class is not a record, or a component type is not supported
+     */
+    static <T> ObjectReadHandler<T> readHandler(Class<T> cls) {
+        MethodHandles.Lookup lookup = lookup(cls);
+        RecordComponent[] components = cls.getRecordComponents();
+        Class<?>[] types = new Class<?>[components.length];
+        MethodHandle[] readers = new MethodHandle[components.length];
+        for (int ix = 0; ix < components.length; ix++) {
+            types[ix] = components[ix].getType();
+            readers[ix] = componentReader(components[ix], ix);
+        }
+
+        // The constructor taking the field reader once for every component, reading each from its position
+        MethodHandle constructor;
+        try {
+            constructor = lookup.findConstructor(cls, MethodType.methodType(void.class, types));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Canonical constructor of " + cls + " is not accessible", e);
+        }
+        constructor = MethodHandles.filterArguments(constructor, 0, readers);
+        constructor = MethodHandles.permuteArguments(constructor, MethodType.methodType(cls, FieldReader.class),
+                new int[components.length]);
+        MethodHandle factory = constructor.asType(MethodType.methodType(Object.class, FieldReader.class));
+        return reader -> {
+            try {
+                return cls.cast((Object)factory.invokeExact(reader));
+            }
+            catch (RuntimeException | Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                throw new IllegalStateException("Failed to construct " + cls, e);
+            }
+        };
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> cls) {
+        if (!cls.isRecord()) throw new IllegalArgumentException(cls + " is not a record");
+        try {
+            return MethodHandles.privateLookupIn(cls, MethodHandles.lookup());
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(cls + " is not open to " + RecordHandlers.class.getModule(), e);
+        }
+    }
+
+    /**
+     * Binds the accessor of a component, and returns the writer writing it
+     * @param lookup The lookup with private access to the record class
+     * @param cls The record class
+     * @param component The component
+     * @return The component writer
+     */
+    @SuppressWarnings("unchecked")  // Unchecked casts are safe, as the getters are bound to the record class
+    private static ComponentWriter componentWriter(MethodHandles.Lookup lookup, Class<?> cls,
+                                                   RecordComponent component) {
+        String name = component.getName();
+        Class<?> type = component.getType();
+        if (type == boolean.class) {
+            Predicate<Object> getter = bind(lookup, cls, component, Predicate.class, "test", boolean.class);
+            return (writer, object) -> writer.write(getter.test(object)).as(name);
+        }
+        if (type == int.class) {
+            ToIntFunction<Object> getter = bind(lookup, cls, component, ToIntFunction.class, "applyAsInt", int.class);
+            return (writer, object) -> writer.write(getter.applyAsInt(object)).as(name);
+        }
+        if (type == long.class) {
+            ToLongFunction<Object> getter = bind(lookup, cls, component, ToLongFunction.class, "applyAsLong",
+                    long.class);
+            return (writer, object) -> writer.write(getter.applyAsLong(object)).as(name);
+        }
+        if (type == float.class || type == double.class) {
+            // Floats are widened to double by the getter, which is exact
+            ToDoubleFunction<Object> getter = bind(lookup, cls, component, ToDoubleFunction.class, "applyAsDouble",
+                    double.class);
+            if (type == double.class) return (writer, object) -> writer.write(getter.applyAsDouble(object)).as(name);
+            return (writer, object) -> writer.write((float)getter.applyAsDouble(object)).as(name);
+        }
+
+        Function<Object, Object> getter = bind(lookup, cls, component, Function.class, "apply", Object.class);
+        switch (kind(component)) {
+            case STRING: return (writer, object) -> writer.write((String)getter.apply(object)).as(name);
+            case INT_ARRAY: return (writer, object) -> writer.write((int[])getter.apply(object)).as(name);
+            case LONG_ARRAY: return (writer, object) -> writer.write((long[])getter.apply(object)).as(name);
+            case FLOAT_ARRAY: return (writer, object) -> writer.write((float[])getter.apply(object)).as(name);
+            case DOUBLE_ARRAY: return (writer, object) -> writer.write((double[])getter.apply(object)).as(name);
+            case BYTE_ARRAY: return (writer, object) -> writer.write((byte[])getter.apply(object)).as(name);
+            case ENUM:
+                return (writer, object) -> writer.write(((Enum<?>)getter.apply(object)).name()).as(name);
+            case LIST: return (writer, object) -> writer.write((Iterable<Object>)getter.apply(object)).as(name);
+            default: return (writer, object) -> writer.write(getter.apply(object)).as(name);
+        }
+    }
+
+    /**
+     * Returns the method handle reading a component from a field reader, typed as the component
+     * @param component The component
+     * @param position The position of the component
+     * @return The handle taking the field reader, and returning the component
+     */
+    private static MethodHandle componentReader(RecordComponent component, int position) {
+        Class<?> type = component.getType();
+        MethodHandle read;
+        try {
+            if (type == boolean.class) {
+                read = MethodHandles.filterReturnValue(readMethod("readBool", int.class),
+                        LOOKUP.findStatic(RecordHandlers.class, "isTrue",
+                                MethodType.methodType(boolean.class, int.class)));
+            }
+            else if (type == int.class) read = readMethod("readInt", int.class);
+            else if (type == long.class) read = readMethod("readLong", long.class);
+            else if (type == float.class) read = readMethod("readFloat", float.class);
+            else if (type == double.class) read = readMethod("readDouble", double.class);
+            else {
+                switch (kind(component)) {
+                    case STRING: read = readMethod("readString", String.class); break;
+                    case INT_ARRAY: read = readMethod("readIntArray", int[].class); break;
+                    case LONG_ARRAY: read = readMethod("readLongArray", long[].class); break;
+                    case FLOAT_ARRAY: read = readMethod("readFloatArray", float[].class); break;
+                    case DOUBLE_ARRAY: read = readMethod("readDoubleArray", double[].class); break;
+                    case BYTE_ARRAY: read = readMethod("readByteArray", byte[].class); break;
+                    default:
+                        read = LOOKUP.findVirtual(ComponentReader.class, "read",
+                                MethodType.methodType(Object.class, FieldReader.class))
+                                .bindTo(objectReader(component))
+                                .asType(MethodType.methodType(type, FieldReader.class));
+                        break;
+                }
+            }
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to bind reader of component [" + component.getName() + "]", e);
+        }
+        // Position the field reader at the component before reading it
+        MethodHandle at = MethodHandles.insertArguments(AT, 1, position);
+        return MethodHandles.filterReturnValue(at, read);
+    }
+
+    /**
+     * Returns the reader reading a component which is not read by a typed method of the field reader
+     * @param component The component
+     * @return The component reader
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })  // Enum constants are looked up in the enum of the component
+    private static ComponentReader objectReader(RecordComponent component) {
+        Class<?> type = component.getType();
+        switch (kind(component)) {
+            case ENUM:
+                return reader -> Enum.valueOf((Class<Enum>)type, reader.readString());
+            case LIST:
+                Class<?> element = elementClass(component);
+                return reader -> {
+                    List<Object> list = new ArrayList<>();
+                    for (Object value : reader.readIterable(element)) {
+                        list.add(value);
+                    }
+                    return list;
+                };
+            default: return reader -> reader.readObject(type);
+        }
+    }
+
+    private static MethodHandle readMethod(String name, Class<?> returnType) throws ReflectiveOperationException {
+        return LOOKUP.findVirtual(FieldReader.class, name, MethodType.methodType(returnType));
+    }
+
+    private static boolean isTrue(int value) {
+        return value != 0;
+    }
+
+    /**
+     * Binds the accessor of a component to a functional interface
+     * @param lookup The lookup with private access to the record class
+     * @param cls The record class
+     * @param component The component
+     * @param functionalInterface The functional interface, taking an object
+     * @param method The name of the method of the interface
+     * @param returnType The return type of the interface method
+     * @param <F> The type of the interface
+     * @return The interface calling the accessor
+     */
+    @SuppressWarnings("unchecked")
+    private static <F> F bind(MethodHandles.Lookup lookup, Class<?> cls, RecordComponent component,
+                              Class<?> functionalInterface, String method, Class<?> returnType) {
+        try {
+            MethodHandle accessor = lookup.unreflect(component.getAccessor());
+            CallSite site = LambdaMetafactory.metafactory(lookup, method, MethodType.methodType(functionalInterface),
+                    MethodType.methodType(returnType, Object.class), accessor,
+                    MethodType.methodType(returnType == Object.class ? component.getType() : returnType, cls));
+            return (F)site.getTarget().invoke();
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new IllegalArgumentException("Failed to bind accessor of component [" + component.getName()
+                    + "] of " + cls, e);
+        }
+    }
+
+    /**
+     * Resolves the kind of a reference type component
+     * @param component The component
+     * @return The kind
+     * @throws IllegalArgumentException If the component type is not supported
+     */
+    private static Kind kind(RecordComponent component) {
+        Class<?> type = component.getType();
+        if (type == String.class) return Kind.STRING;
+        if (type == int[].class) return Kind.INT_ARRAY;
+        if (type == long[].class) return Kind.LONG_ARRAY;
+        if (type == float[].class) return Kind.FLOAT_ARRAY;
+        if (type == double[].class) return Kind.DOUBLE_ARRAY;
+        if (type == byte[].class) return Kind.BYTE_ARRAY;
+        if (type.isEnum()) return Kind.ENUM;
+        if (type == List.class || type == Collection.class || type == Iterable.class) {
+            elementClass(component);
+            return Kind.LIST;
+        }
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || type.getName().startsWith("java.lang.")) {
+            throw new IllegalArgumentException("Unsupported type " + type.getTypeName() + " of component ["
+                    + component.getName() + "] of " + component.getDeclaringRecord());
+        }
+        return Kind.OBJECT;
+    }
+
+    /**
+     * Returns the element class of a list component
+     * @param component The component
+     * @return The element class
+     * @throws IllegalArgumentException If the element type is not a class
+     */
+    private static Class<?> elementClass(RecordComponent component) {
+        Type type = component.getGenericType();
+        if (type instanceof ParameterizedType) {
+            Type element = ((ParameterizedType)type).getActualTypeArguments()[0];
+            if (element instanceof ParameterizedType) element = ((ParameterizedType)element).getRawType();
+            if (element instanceof Class) return (Class<?>)element;
+        }
+        throw new IllegalArgumentException("Unsupported element type of component [" + component.getName()
+                + "] of " + component.getDeclaringRecord());
+    }
+
+    private enum Kind {
+        STRING, INT_ARRAY, LONG_ARRAY, FLOAT_ARRAY, DOUBLE_ARRAY, BYTE_ARRAY, ENUM, LIST, OBJECT
+    }
+
+    /**
+     * Writes a component of a record
+     */
+    private interface ComponentWriter {
+        void write(FieldWriter writer, Object record);
+    }
+
+    /**
+     * Reads a component of a record
+     */
+    private interface ComponentReader {
+        Object read(FieldReader reader);
+    }
+}
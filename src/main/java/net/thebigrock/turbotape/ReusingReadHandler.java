@@ -0,0 +1,17 @@
+package net.thebigrock.turbotape;
+
+/**
+ * Interface for handler method that reads data for an object into an existing, mutable instance of it.
+ * <p>
+ * Used in place of an {@link ObjectReadHandler} when scanning many objects, so the same instance can be
+ * filled for each object read rather than a new one built.
+ */
+public interface ReusingReadHandler<T> {
+
+    /**
+     * Fills the given instance of object T from the given reader
+     * @param reader The field reader to read object data from
+     * @param instance The instance to fill, holding the data of the previous object read into it
+     */
+    void fill(FieldReader reader, T instance);
+}
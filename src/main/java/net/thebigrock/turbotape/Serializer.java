@@ -3,6 +3,9 @@ package net.thebigrock.turbotape;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Interface implemented by an TurboTape Object serializer.
@@ -32,4 +35,34 @@ public interface Serializer {
         serialize(object, outputStream);
         return outputStream.toByteArray();
     }
+
+    /**
+     * Serializes the given object into the remaining space of the byte buffer.
+     * <p>
+     * On return, the position of the buffer is advanced past the serialized data.
+     * The default implementation serializes to a byte array, and copies it into the buffer.
+     *
+     * @param object The object to serialize
+     * @param buffer The byte buffer to serialize into
+     * @param <T> The objects type
+     * @throws IOException If thrown by used stream
+     * @throws java.nio.BufferOverflowException If the remaining space of the buffer is too small
+     */
+    default <T> void serialize(T object, ByteBuffer buffer) throws IOException {
+        buffer.put(serialize(object));
+    }
+
+    /**
+     * Serializes the given object to the byte channel
+     * <p>
+     * The default implementation serializes through an output stream wrapping the channel.
+     *
+     * @param object The object to serialize
+     * @param channel The channel to write to
+     * @param <T> The objects type
+     * @throws IOException If thrown by used stream or channel
+     */
+    default <T> void serialize(T object, WritableByteChannel channel) throws IOException {
+        serialize(object, Channels.newOutputStream(channel));
+    }
 }
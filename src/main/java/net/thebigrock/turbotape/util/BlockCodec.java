@@ -0,0 +1,79 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.IOException;
+
+/**
+ * Codec compressing the blocks written by a {@link BlockCompressingOutputStream}, and decompressing them
+ * in a {@link BlockDecompressingInputStream}.
+ * <p>
+ * The codec itself must be thread safe, as it is shared by streams. Each stream creates a compressor or
+ * decompressor of its own, which is only used by one thread at the time, and closed with the stream.
+ * <p>
+ * Codecs with a public no-argument constructor can be registered as services, listing the class in
+ * {@code META-INF/services/net.thebigrock.turbotape.util.BlockCodec}, which makes them
+ * {@linkplain BlockCodecs#installed() installed} so compressed tapes are read without passing the codec.
+ */
+public interface BlockCodec {
+
+    /**
+     * The identifier of the codec, written in the stream header so the reader can select the codec
+     * @return The identifier, from 1 to 255
+     */
+    int id();
+
+    /**
+     * Creates a compressor, used by one stream
+     * @return The compressor
+     */
+    Compressor newCompressor();
+
+    /**
+     * Creates a decompressor, used by one stream
+     * @return The decompressor
+     */
+    Decompressor newDecompressor();
+
+    /**
+     * Compresses blocks. Instances are not thread safe.
+     */
+    interface Compressor extends AutoCloseable {
+
+        /**
+         * Compresses a block into the target array
+         * @param block The array holding the block
+         * @param length The length of the block
+         * @param target The array to compress into
+         * @return The compressed length, or -1 if the compressed block does not fit the target
+         * @throws IOException If the block cannot be compressed
+         */
+        int compress(byte[] block, int length, byte[] target) throws IOException;
+
+        /**
+         * Releases the resources held by the compressor
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Decompresses blocks. Instances are not thread safe.
+     */
+    interface Decompressor extends AutoCloseable {
+
+        /**
+         * Decompresses a block
+         * @param compressed The array holding the compressed block
+         * @param compressedLength The length of the compressed block
+         * @param block The array to decompress the block into
+         * @param length The length of the block, as written by the compressing stream
+         * @throws IOException If the compressed block is malformed, or does not decompress to the length
+         */
+        void decompress(byte[] compressed, int compressedLength, byte[] block, int length) throws IOException;
+
+        /**
+         * Releases the resources held by the decompressor
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,52 @@
+package net.thebigrock.turbotape.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The block codecs available without being given, which are the built-in {@link DeflateBlockCodec}, and the
+ * codecs registered as {@link BlockCodec} services in {@code META-INF/services}.
+ * <p>
+ * The services are looked up once, by the class loader of the calling thread, when first needed. A registered
+ * codec with the identifier of the built-in codec takes its place.
+ */
+public final class BlockCodecs {
+    private static volatile List<BlockCodec> _installed;
+
+    private BlockCodecs() {
+    }
+
+    /**
+     * Returns the built-in codec followed by the registered codecs, in the order they were found
+     * @return The installed codecs
+     */
+    public static List<BlockCodec> installed() {
+        List<BlockCodec> installed = _installed;
+        if (installed == null) {
+            List<BlockCodec> codecs = new ArrayList<>();
+            codecs.add(new DeflateBlockCodec());
+            for (BlockCodec codec : ServiceLoader.load(BlockCodec.class)) {
+                codecs.add(codec);
+            }
+            installed = List.copyOf(codecs);
+            _installed = installed;
+        }
+        return installed;
+    }
+
+    /**
+     * Returns the installed codec of the identifier, the last one found taking precedence
+     * @param id The identifier of the codec
+     * @return The codec
+     * @throws IllegalArgumentException If no codec of the identifier is installed
+     */
+    public static BlockCodec find(int id) {
+        BlockCodec found = null;
+        for (BlockCodec codec : installed()) {
+            if (codec.id() == id) found = codec;
+        }
+        if (found == null) throw new IllegalArgumentException("Unknown block codec [" + id + "]");
+        return found;
+    }
+}
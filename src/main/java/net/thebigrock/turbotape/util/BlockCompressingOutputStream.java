@@ -0,0 +1,343 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output stream compressing the data written to it in blocks, using a {@link BlockCodec}, before writing it
+ * to a sink stream. The stream is read by a {@link BlockDecompressingInputStream}.
+ * <p>
+ * The stream starts with the {@value #MAGIC} magic, the codec identifier as a byte, and the block size as a varint.
+ * Each block follows as its length and its stored length as varints, and then the stored bytes. Blocks which do
+ * not compress are stored as is, which is told by the stored length being the same as the length. The stream
+ * ends with a zero length.
+ * <p>
+ * Data is collected into blocks of the block size, and a block is only cut short when the stream is flushed.
+ * Given a thread factory, the blocks are compressed and written to the sink on a compressor thread of their own,
+ * so compression overlaps with producing the data. At most {@value #QUEUE_CAPACITY} full blocks wait for the
+ * compressor, after which writes block until it catches up. If the sink fails, further writes throw the failure.
+ * If the compressor thread is interrupted, the blocks waiting for it are abandoned, and further writes fail
+ * rather than wait for it.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class BlockCompressingOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    public static final int MAX_BLOCK_SIZE = 1 << 24;
+    static final String MAGIC = "FSZ1";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.UTF_8);
+    private static final int QUEUE_CAPACITY = 2;
+    private static final long SUBMIT_POLL_MILLIS = 100;
+
+    private final OutputStream _sink;
+    private final BlockCodec _codec;
+    private final int _blockSize;
+    private final BlockingQueue<Block> _queue;
+    private final BlockingQueue<byte[]> _pool;
+    private byte[] _block;
+    private int _length;
+    private boolean _closed;
+    // The failure of the sink, set by the compressor thread
+    private volatile IOException _failure;
+    // True once the compressor thread has stopped taking blocks
+    private volatile boolean _stopped;
+
+    // Only accessed by the thread compressing
+    private final BlockCodec.Compressor _compressor;
+    private final byte[] _compressed;
+    private final TapeBuffer _frame = new TapeBuffer(16);
+    private boolean _headerWritten;
+
+    /**
+     * Creates the stream, compressing on the calling thread
+     * @param sink The stream to write the compressed blocks to
+     * @param codec The codec compressing the blocks
+     * @param blockSize The number of bytes in each block
+     */
+    public BlockCompressingOutputStream(OutputStream sink, BlockCodec codec, int blockSize) {
+        this(sink, codec, blockSize, null);
+    }
+
+    /**
+     * Creates the stream, compressing on a thread created by the thread factory
+     * @param sink The stream to write the compressed blocks to
+     * @param codec The codec compressing the blocks
+     * @param blockSize The number of bytes in each block
+     * @param threadFactory The factory creating the compressor thread, or null to compress on the calling thread
+     */
+    public BlockCompressingOutputStream(OutputStream sink, BlockCodec codec, int blockSize,
+                                        ThreadFactory threadFactory) {
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be from 1 to " + MAX_BLOCK_SIZE + ": " + blockSize);
+        }
+        if (codec.id() <= 0 || codec.id() > 0xFF) throw new IllegalArgumentException("Invalid codec id: " + codec.id());
+        _sink = sink;
+        _codec = codec;
+        _blockSize = blockSize;
+        _block = new byte[blockSize];
+        _compressed = new byte[blockSize];
+        _compressor = codec.newCompressor();
+        if (threadFactory != null) {
+            _queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            _pool = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+            threadFactory.newThread(this::runCompressor).start();
+        }
+        else {
+            _queue = null;
+            _pool = null;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        _block[_length++] = (byte)b;
+        if (_length == _blockSize) submit(Block.WRITE);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        checkOpen();
+        while (len > 0) {
+            int count = Math.min(len, _blockSize - _length);
+            System.arraycopy(b, off, _block, _length, count);
+            _length += count;
+            off += count;
+            len -= count;
+            if (_length == _blockSize) submit(Block.WRITE);
+        }
+    }
+
+    /**
+     * Compresses the data written so far as a block, which may be shorter than the block size, and flushes
+     * the sink, waiting for the compressor thread if there is one
+     * @throws IOException If thrown by the sink
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        submit(Block.FLUSH);
+    }
+
+    /**
+     * Compresses the data written so far, ends the stream and closes the sink
+     * @throws IOException If thrown by the sink
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed) return;
+        _closed = true;
+        submit(Block.CLOSE);
+    }
+
+    private void checkOpen() throws IOException {
+        if (_closed) throw new IOException("Stream is closed");
+        IOException failure = _failure;
+        if (failure != null) throw new IOException("Sink of the compressing stream failed", failure);
+    }
+
+    /**
+     * Hands the current block to the compressor, waiting for it to complete unless a full block is written
+     * @param action The action following the write of the block
+     * @throws IOException If thrown by the sink
+     */
+    private void submit(int action) throws IOException {
+        if (_queue == null) {
+            try {
+                process(_block, _length, action);
+            }
+            finally {
+                _length = 0;
+            }
+            return;
+        }
+
+        CompletableFuture<Void> future = action != Block.WRITE ? new CompletableFuture<>() : null;
+        enqueue(new Block(_block, _length, action, future));
+        byte[] block = _pool.poll();
+        _block = block != null ? block : new byte[_blockSize];
+        _length = 0;
+        if (future == null) return;
+
+        try {
+            future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the block for the compressor, blocking while the queue is full, and failing once the compressor
+     * has stopped
+     * @param block The block to queue
+     * @throws IOException If the compressor has stopped, or the thread is interrupted while waiting
+     */
+    private void enqueue(Block block) throws IOException {
+        boolean queued = false;
+        try {
+            while (!queued && !_stopped) {
+                queued = _queue.offer(block, SUBMIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compressor");
+        }
+        // A block queued as the compressor stopped may have been left behind, if so it is abandoned here
+        if (!_stopped || (queued && !_queue.remove(block))) return;
+        throw abandon(block, stoppedFailure());
+    }
+
+    /**
+     * Completes the future of a block which will not be written exceptionally, releasing the compressor
+     * and the sink if the block closes the stream
+     * @param block The block abandoned
+     * @param failure The failure to complete the future with
+     * @return The failure
+     */
+    private IOException abandon(Block block, IOException failure) {
+        if (block.action == Block.CLOSE) {
+            try {
+                release();
+            }
+            catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        if (block.future != null) block.future.completeExceptionally(failure);
+        return failure;
+    }
+
+    private IOException stoppedFailure() {
+        IOException failure = _failure;
+        return failure != null
+            ? new IOException("Sink of the compressing stream failed", failure)
+            : new IOException("Compressor thread stopped");
+    }
+
+    /**
+     * The compressor thread, processing the blocks until the stream is closed. After a failure, the remaining
+     * blocks are completed with the failure. Once it stops, blocks left in the queue are abandoned, so no writer
+     * waits for it.
+     */
+    private void runCompressor() {
+        try {
+            compressQueue();
+        }
+        finally {
+            _stopped = true;
+            Block block;
+            while ((block = _queue.poll()) != null) {
+                abandon(block, stoppedFailure());
+            }
+        }
+    }
+
+    private void compressQueue() {
+        while (true) {
+            Block block;
+            try {
+                block = _queue.take();
+            }
+            catch (InterruptedException e) {
+                _failure = new InterruptedIOException("Compressor thread interrupted");
+                return;
+            }
+
+            try {
+                if (_failure != null) {
+                    if (block.action == Block.CLOSE) release();
+                    throw _failure;
+                }
+                process(block.data, block.length, block.action);
+                if (block.future != null) block.future.complete(null);
+            }
+            catch (IOException e) {
+                if (_failure == null) _failure = e;
+                if (block.future != null) block.future.completeExceptionally(_failure);
+            }
+            catch (RuntimeException | Error e) {
+                if (_failure == null) _failure = new IOException(e);
+                if (block.future != null) block.future.completeExceptionally(_failure);
+            }
+            if (block.action == Block.CLOSE) return;
+            _pool.offer(block.data);
+        }
+    }
+
+    /**
+     * Compresses and writes a block, followed by the action
+     * @param data The array holding the block
+     * @param length The length of the block, which is not written if empty
+     * @param action The action following the write of the block
+     * @throws IOException If thrown by the sink
+     */
+    private void process(byte[] data, int length, int action) throws IOException {
+        try {
+            _frame.reset();
+            if (!_headerWritten) {
+                _frame.write(MAGIC_BYTES);
+                _frame.writeByte(_codec.id());
+                _frame.writeVarInt(_blockSize);
+                _headerWritten = true;
+            }
+            if (length > 0) {
+                int compressedLength = _compressor.compress(data, length, _compressed);
+                boolean stored = compressedLength < 0 || compressedLength >= length;
+                _frame.writeVarInt(length);
+                _frame.writeVarInt(stored ? length : compressedLength);
+                _frame.writeTo(_sink);
+                _sink.write(stored ? data : _compressed, 0, stored ? length : compressedLength);
+                _frame.reset();
+            }
+            if (action == Block.CLOSE) _frame.writeVarInt(0);
+            _frame.writeTo(_sink);
+            if (action == Block.FLUSH) _sink.flush();
+        }
+        finally {
+            if (action == Block.CLOSE) release();
+        }
+    }
+
+    /**
+     * Releases the compressor, and closes the sink
+     * @throws IOException If thrown by the sink
+     */
+    private void release() throws IOException {
+        _compressor.close();
+        _sink.close();
+    }
+
+    /**
+     * A block handed to the compressor thread, with the action following the write of the block
+     */
+    private static class Block {
+        private static final int WRITE = 0;
+        private static final int FLUSH = 1;
+        private static final int CLOSE = 2;
+
+        private final byte[] data;
+        private final int length;
+        private final int action;
+        private final CompletableFuture<Void> future;
+
+        private Block(byte[] data, int length, int action, CompletableFuture<Void> future) {
+            this.data = data;
+            this.length = length;
+            this.action = action;
+            this.future = future;
+        }
+    }
+}
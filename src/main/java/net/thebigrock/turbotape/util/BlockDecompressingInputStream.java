@@ -0,0 +1,142 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Input stream reading the blocks written by a {@link BlockCompressingOutputStream} from a source stream,
+ * and decompressing them as they are read.
+ * <p>
+ * Only one block is held at the time, and the header is read with the first block, so the stream can be
+ * created before any data is available. The codec is selected by the identifier in the header, from the
+ * {@linkplain BlockCodecs#installed() installed codecs} followed by the given codecs, the last one taking
+ * precedence. The stream reports its end once the end of the
+ * compressed stream is read, which need not be the end of the source.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class BlockDecompressingInputStream extends InputStream {
+    private static final byte[] NO_BLOCK = new byte[0];
+
+    private final DataInputStream _source;
+    private final BlockCodec[] _codecs;
+    private BlockCodec.Decompressor _decompressor;
+    private int _blockSize;
+    private byte[] _block = NO_BLOCK;
+    private byte[] _compressed = NO_BLOCK;
+    private int _position;
+    private int _limit;
+    private boolean _ended;
+
+    /**
+     * Creates the stream
+     * @param source The stream to read the compressed blocks from
+     * @param codecs The codecs the stream may be compressed with, in addition to the installed codecs
+     */
+    public BlockDecompressingInputStream(InputStream source, BlockCodec... codecs) {
+        _source = new DataInputStream(source);
+        List<BlockCodec> installed = BlockCodecs.installed();
+        _codecs = installed.toArray(new BlockCodec[installed.size() + codecs.length]);
+        System.arraycopy(codecs, 0, _codecs, installed.size(), codecs.length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (_position == _limit && !nextBlock()) return -1;
+        return _block[_position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) return 0;
+        if (_position == _limit && !nextBlock()) return -1;
+        int count = Math.min(len, _limit - _position);
+        System.arraycopy(_block, _position, b, off, count);
+        _position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return _limit - _position;
+    }
+
+    /**
+     * Releases the decompressor, and closes the source stream
+     * @throws IOException If thrown by the source stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (_decompressor != null) _decompressor.close();
+        _decompressor = null;
+        _ended = true;
+        _source.close();
+    }
+
+    /**
+     * Reads the next block, and the header before the first block
+     * @return True if a block was read, false at the end of the stream
+     * @throws IOException If thrown by the source stream, or the stream is malformed
+     */
+    private boolean nextBlock() throws IOException {
+        if (_ended) return false;
+        if (_decompressor == null) readHeader();
+
+        int length = VarInt.readInt(_source);
+        if (length == 0) {
+            _ended = true;
+            _decompressor.close();
+            return false;
+        }
+        int storedLength = VarInt.readInt(_source);
+        if (length < 0 || length > _blockSize || storedLength <= 0 || storedLength > length) {
+            throw new StreamCorruptedException("Invalid block lengths [" + length + ", " + storedLength + "]");
+        }
+        if (storedLength == length) {
+            _source.readFully(_block, 0, length);
+        }
+        else {
+            _source.readFully(_compressed, 0, storedLength);
+            _decompressor.decompress(_compressed, storedLength, _block, length);
+        }
+        _position = 0;
+        _limit = length;
+        return true;
+    }
+
+    /**
+     * Reads the magic, the codec identifier and the block size
+     * @throws IOException If thrown by the source stream, or the header is invalid
+     */
+    private void readHeader() throws IOException {
+        byte[] magic = new byte[BlockCompressingOutputStream.MAGIC_BYTES.length];
+        _source.readFully(magic);
+        if (!Arrays.equals(magic, BlockCompressingOutputStream.MAGIC_BYTES)) {
+            throw new StreamCorruptedException("Invalid compressed stream header: "
+                    + new String(magic, StandardCharsets.ISO_8859_1));
+        }
+
+        int id = _source.readUnsignedByte();
+        BlockCodec codec = null;
+        for (BlockCodec candidate : _codecs) {
+            if (candidate.id() == id) codec = candidate;
+        }
+        if (codec == null) throw new StreamCorruptedException("Unknown block codec [" + id + "]");
+
+        int blockSize = VarInt.readInt(_source);
+        if (blockSize <= 0 || blockSize > BlockCompressingOutputStream.MAX_BLOCK_SIZE) {
+            throw new StreamCorruptedException("Invalid block size [" + blockSize + "]");
+        }
+        _blockSize = blockSize;
+        _block = new byte[blockSize];
+        _compressed = new byte[blockSize];
+        _decompressor = codec.newDecompressor();
+    }
+}
@@ -0,0 +1,139 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DataInput} reading straight from a {@link ByteBuffer}, such as a memory mapped file region,
+ * without copying the content to an intermediate stream buffer.
+ * <p>
+ * Values are read in big endian byte order from the position of the buffer, advancing it.
+ * An {@link EOFException} is thrown if the buffer ends within a value.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class ByteBufferInput implements DataInput {
+    private final ByteBuffer _buffer;
+
+    /**
+     * Creates an input reading the remaining content of the buffer
+     * @param buffer The buffer to read from, which is read using its own position
+     */
+    public ByteBufferInput(ByteBuffer buffer) {
+        _buffer = buffer;
+    }
+
+    /**
+     * The number of bytes left to read
+     * @return The number of bytes
+     */
+    public int remaining() {
+        return _buffer.remaining();
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        ensureRemaining(len).get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        int skipped = Math.max(0, Math.min(n, _buffer.remaining()));
+        _buffer.position(_buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        return ensureRemaining(Byte.BYTES).get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return ensureRemaining(Short.BYTES).getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return ensureRemaining(Character.BYTES).getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        return ensureRemaining(Integer.BYTES).getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        return ensureRemaining(Long.BYTES).getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return ensureRemaining(Float.BYTES).getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return ensureRemaining(Double.BYTES).getDouble();
+    }
+
+    /**
+     * Reads a line of bytes as Latin-1 characters, terminated by a line feed, carriage return, or both
+     * @return The line, or null if at the end of the buffer
+     */
+    @Override
+    public String readLine() {
+        if (!_buffer.hasRemaining()) return null;
+        StringBuilder line = new StringBuilder();
+        while (_buffer.hasRemaining()) {
+            char c = (char)(_buffer.get() & 0xFF);
+            if (c == '\n') break;
+            if (c == '\r') {
+                if (_buffer.hasRemaining() && _buffer.get(_buffer.position()) == '\n') _buffer.get();
+                break;
+            }
+            line.append(c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    /**
+     * Makes sure the given number of bytes can be read
+     * @param length The number of bytes to be read
+     * @return The buffer to read from
+     * @throws EOFException If fewer bytes remain
+     */
+    private ByteBuffer ensureRemaining(int length) throws EOFException {
+        if (_buffer.remaining() < length) throw new EOFException("End of buffer reached");
+        return _buffer;
+    }
+}
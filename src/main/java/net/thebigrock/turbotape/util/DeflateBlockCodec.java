@@ -0,0 +1,99 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.StreamCorruptedException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block codec using the zlib format of {@link Deflater} and {@link Inflater} from {@code java.util.zip},
+ * so each block carries a checksum of its content.
+ */
+public class DeflateBlockCodec implements BlockCodec {
+    public static final int ID = 1;
+
+    private final int _level;
+
+    /**
+     * Creates a codec compressing at the default level of {@link Deflater}
+     */
+    public DeflateBlockCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec compressing at the given level, trading speed for size
+     * @param level The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateBlockCodec(int level) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+                && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        _level = level;
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public Compressor newCompressor() {
+        Deflater deflater = new Deflater(_level);
+        return new Compressor() {
+            @Override
+            public int compress(byte[] block, int length, byte[] target) {
+                deflater.reset();
+                deflater.setInput(block, 0, length);
+                deflater.finish();
+                int size = 0;
+                while (!deflater.finished() && size < target.length) {
+                    size += deflater.deflate(target, size, target.length - size);
+                }
+                return deflater.finished() ? size : -1;
+            }
+
+            @Override
+            public void close() {
+                deflater.end();
+            }
+        };
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+        Inflater inflater = new Inflater();
+        byte[] overflow = new byte[1];
+        return new Decompressor() {
+            @Override
+            public void decompress(byte[] compressed, int compressedLength, byte[] block, int length)
+                    throws StreamCorruptedException {
+                inflater.reset();
+                inflater.setInput(compressed, 0, compressedLength);
+                int size = 0;
+                try {
+                    while (size < length && !inflater.finished()) {
+                        int count = inflater.inflate(block, size, length - size);
+                        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                        size += count;
+                    }
+                    // The checksum trailer may only be consumed by inflating past the end of the block
+                    if (size == length && !inflater.finished() && inflater.inflate(overflow) > 0) size++;
+                }
+                catch (DataFormatException e) {
+                    throw new StreamCorruptedException("Invalid deflate block: " + e.getMessage());
+                }
+                if (size != length || !inflater.finished()) {
+                    throw new StreamCorruptedException("Deflate block does not inflate to its length [" + length + "]");
+                }
+            }
+
+            @Override
+            public void close() {
+                inflater.end();
+            }
+        };
+    }
+}
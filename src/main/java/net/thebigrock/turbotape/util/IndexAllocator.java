@@ -9,6 +9,9 @@ import java.util.Map;
 /**
  * Allocates indices for given names, if the name is not already known.
  * If a known name is given, the existing index is re-used.
+ * <p>
+ * Resetting the allocator keeps the entries of the names, only marking them as forgotten, so an allocator reused
+ * for many tapes of the same names does not allocate once warmed up.
  */
 public class IndexAllocator {
     /**
@@ -16,12 +19,18 @@ public class IndexAllocator {
      */
     public static final Index NULL_INDEX = new NullIndex();
 
+    /**
+     * The number of names kept when resetting, beyond which the names are dropped instead
+     */
+    private static final int MAX_RETAINED_NAMES = 4096;
+
     // Internal variables
-    private final Map<String, Integer> _indexMap = new HashMap<>();
+    private final Map<String, Entry> _indexMap = new HashMap<>();
     private final int limitValue;
 
     // State
     private int nextIndex = 1;
+    private int _generation;
 
     /**
      * Create allocator that is limited to the given value
@@ -42,16 +51,71 @@ public class IndexAllocator {
      */
     public Index allocate(String name) {
         // :? Does name index exist?
-        if (_indexMap.containsKey(name)) {
+        int index = find(name);
+        if (index != 0) {
             // -> Yes, then return Existing Index instance
-            return new ExistingIndex(_indexMap.get(name));
+            return new ExistingIndex(index);
         }
-        // E-> No, make sure limit is not reached, then allocate new index
+        // E-> No, allocate new index
+        return new NewIndex(allocateNew(name), name);
+    }
+
+    /**
+     * Finds the index of a known name, without allocating anything
+     * @param name The name to look up
+     * @return The index representing the name, or the null index (0) if the name is not known
+     */
+    public int find(String name) {
+        Entry entry = _indexMap.get(name);
+        return entry != null && entry.generation == _generation ? entry.index : 0;
+    }
+
+    /**
+     * Allocates a new index for a name that is not known, as determined by {@link #find(String)}
+     * @param name The name to allocate an index for
+     * @return The newly allocated index
+     * @throws IndexOutOfBoundsException if entire index range has been exceeded
+     */
+    public int allocateNew(String name) {
+        // Make sure limit is not reached, then allocate new index
         if (nextIndex >= this.limitValue) {
             throw new IndexOutOfBoundsException("Index limit [" + limitValue + "] exceeded");
         }
-        _indexMap.put(name, nextIndex);
-        return new NewIndex(nextIndex++, name);
+        assign(name, nextIndex);
+        return nextIndex++;
+    }
+
+    /**
+     * Assigns an index allocated elsewhere to a name that is not known, for allocators caching the indices
+     * of a shared allocator. Such allocators must not allocate indices themselves.
+     * @param name The name
+     * @param index The index of the name
+     */
+    public void assign(String name, int index) {
+        Entry entry = _indexMap.get(name);
+        if (entry == null) {
+            entry = new Entry();
+            _indexMap.put(name, entry);
+        }
+        entry.index = index;
+        entry.generation = _generation;
+    }
+
+    /**
+     * Forgets all names, so the allocator allocates from the first index again
+     */
+    public void reset() {
+        if (_indexMap.size() > MAX_RETAINED_NAMES) _indexMap.clear();
+        _generation++;
+        nextIndex = 1;
+    }
+
+    /**
+     * The index of a name, which is only known if allocated since the allocator was last reset
+     */
+    private static class Entry {
+        private int index;
+        private int generation;
     }
 
     /**
@@ -1,21 +1,23 @@
 package net.thebigrock.turbotape.util;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Optional;
 
 /**
  * Resolves names for indexes.
  */
 public class IndexResolver {
-    private final Map<Integer, String> _indexMap = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The names by index, null where not yet seen
+    private String[] _names = new String[INITIAL_CAPACITY];
 
     /**
      * Resolves the name associated with the index.
      *
      * If the index has not been seen before, the provided reader function is called
-     * to read the name from the "tape". If the index is 0, null will be returned.
+     * to read the name from the "tape". If the index is 0, an empty result will be returned.
      *
      * @param index The index to resolve
      * @param readName Function that reads the name from the "tape" if not known
@@ -23,15 +25,30 @@ public class IndexResolver {
      * @throws IOException If the read name function throws this
      */
     public Optional<String> resolve(int index, IOFunction<Integer, String> readName) throws IOException {
-        // Null index results in an empty result
-        if (index == 0) return Optional.empty();
+        return Optional.ofNullable(resolveName(index, readName));
+    }
+
+    /**
+     * Resolves the name associated with the index like {@link #resolve(int, IOFunction)}, but without
+     * allocating once the index has been seen.
+     *
+     * @param index The index to resolve
+     * @param readName Function that reads the name from the "tape" if not known
+     * @return The resolved index name, or null if the index is 0
+     * @throws IOException If the read name function throws this
+     */
+    public String resolveName(int index, IOFunction<Integer, String> readName) throws IOException {
+        // Null index results in a null name
+        if (index == 0) return null;
 
-        // Just return existing index if it exists
-        if (_indexMap.containsKey(index)) return Optional.of(_indexMap.get(index));
+        // Just return existing name if it exists
+        if (index < _names.length && _names[index] != null) return _names[index];
 
         // If not, resolve the name
+        if (index < 0) throw new IllegalArgumentException("Negative index [" + index + "]");
         String name = readName.apply(index);
-        _indexMap.put(index, name);
-        return Optional.of(name);
+        if (index >= _names.length) _names = Arrays.copyOf(_names, Math.max(_names.length << 1, index + 1));
+        _names[index] = name;
+        return name;
     }
 }
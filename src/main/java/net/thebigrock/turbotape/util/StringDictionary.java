@@ -0,0 +1,78 @@
+package net.thebigrock.turbotape.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded dictionary assigning slots to string values, used to write repeated values as back-references.
+ * <p>
+ * When the dictionary is full, a slot is reclaimed using the CLOCK policy: the slots are visited in a ring,
+ * and a slot whose string was found since the last visit gets a second chance, while the first slot which
+ * was not is evicted. This approximates least recently used eviction with constant work per lookup.
+ * The slot of each added string is written to the tape, so readers need not know the policy.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> _slotMap = new HashMap<>();
+    private final String[] _strings;
+    private final boolean[] _referenced;
+    private int _hand;
+
+    /**
+     * Creates the dictionary
+     * @param capacity The maximum number of strings held
+     */
+    public StringDictionary(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        _strings = new String[capacity];
+        _referenced = new boolean[capacity];
+    }
+
+    /**
+     * Finds the slot of the string, marking it as referenced
+     * @param value The string to look up
+     * @return The slot, or -1 if the string is not in the dictionary
+     */
+    public int find(String value) {
+        Integer slot = _slotMap.get(value);
+        if (slot == null) return -1;
+        _referenced[slot] = true;
+        return slot;
+    }
+
+    /**
+     * Adds a string which is not in the dictionary, evicting another string if it is full
+     * @param value The string to add
+     * @return The slot assigned to the string
+     */
+    public int add(String value) {
+        while (_referenced[_hand]) {
+            _referenced[_hand] = false;
+            advance();
+        }
+        int slot = _hand;
+        String evicted = _strings[slot];
+        if (evicted != null) _slotMap.remove(evicted);
+        _strings[slot] = value;
+        _slotMap.put(value, slot);
+        advance();
+        return slot;
+    }
+
+    /**
+     * Removes all strings, so the dictionary assigns slots from the first slot again
+     */
+    public void clear() {
+        if (_slotMap.isEmpty()) return;
+        _slotMap.clear();
+        Arrays.fill(_strings, null);
+        Arrays.fill(_referenced, false);
+        _hand = 0;
+    }
+
+    private void advance() {
+        if (++_hand == _strings.length) _hand = 0;
+    }
+}
@@ -0,0 +1,154 @@
+package net.thebigrock.turbotape.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A string held as its UTF-8 bytes, which are only decoded when the characters are accessed. A view created
+ * from a string with {@link #of(String)} is the other way around, and only encoded when its bytes are needed.
+ * <p>
+ * A view may refer to the bytes of a buffer being read, such as the field bytes of the object being read,
+ * which are then only valid while the object is read. Comparing and hashing views works on the bytes, so
+ * a view can be matched against a known value without decoding it, such as a view created with
+ * {@link #of(String)} and kept for the purpose. The hash code is computed from the bytes, and does not
+ * match the hash code of the string. Use {@link #toString()} to keep the value past the read.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class StringView implements CharSequence {
+    // The UTF-8 bytes, or null until a view of a string is encoded
+    private byte[] _bytes;
+    private int _offset;
+    private int _length;
+    // The decoded string, or null until decoded
+    private String _string;
+    private int _hash;
+
+    /**
+     * Creates a view over UTF-8 bytes, which are not copied
+     * @param bytes The array holding the bytes
+     * @param offset The offset of the first byte in the array
+     * @param length The number of bytes
+     */
+    public StringView(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + length + "] out of bounds for "
+                    + bytes.length + " bytes");
+        }
+        _bytes = bytes;
+        _offset = offset;
+        _length = length;
+    }
+
+    private StringView(String string) {
+        _string = string;
+    }
+
+    /**
+     * Creates a view of a string, which is encoded once its bytes are first needed
+     * @param string The string
+     * @return The view
+     */
+    public static StringView of(String string) {
+        return new StringView(string);
+    }
+
+    /**
+     * The number of UTF-8 bytes of the string
+     * @return The number of bytes
+     */
+    public int byteLength() {
+        return encoded()._length;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the string, as a read only buffer sharing the bytes of the view
+     * @return The bytes
+     */
+    public ByteBuffer bytes() {
+        encoded();
+        return ByteBuffer.wrap(_bytes, _offset, _length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks if the string has the given UTF-8 bytes, without decoding it
+     * @param utf8 The bytes to compare with
+     * @return True if the bytes are the same
+     */
+    public boolean contentEquals(byte[] utf8) {
+        encoded();
+        return Arrays.equals(_bytes, _offset, _offset + _length, utf8, 0, utf8.length);
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Returns the string, decoding it when first called
+     * @return The string
+     */
+    @Override
+    public String toString() {
+        if (_string == null) _string = new String(_bytes, _offset, _length, StandardCharsets.UTF_8);
+        return _string;
+    }
+
+    /**
+     * Checks if the object is a view of the same UTF-8 bytes
+     * @param obj The object to compare with
+     * @return True if the object is a view of the same string
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof StringView)) return false;
+        StringView other = (StringView)obj;
+        encoded();
+        other.encoded();
+        return Arrays.equals(_bytes, _offset, _offset + _length, other._bytes, other._offset,
+                other._offset + other._length);
+    }
+
+    /**
+     * Returns the hash code of the UTF-8 bytes
+     * @return The hash code
+     */
+    @Override
+    public int hashCode() {
+        int hash = _hash;
+        if (hash == 0) {
+            encoded();
+            hash = 1;
+            for (int ix = _offset; ix < _offset + _length; ix++) {
+                hash = 31 * hash + _bytes[ix];
+            }
+            _hash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Encodes the string of a view created from one, when its bytes are first needed
+     * @return This view
+     */
+    private StringView encoded() {
+        if (_bytes == null) {
+            _bytes = _string.getBytes(StandardCharsets.UTF_8);
+            _length = _bytes.length;
+        }
+        return this;
+    }
+}
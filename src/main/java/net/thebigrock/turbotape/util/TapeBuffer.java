@@ -0,0 +1,397 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Growable byte buffer implementing {@link DataOutput}, used as the encoding target of the serializers.
+ * <p>
+ * Values are written in big endian byte order straight into the backing {@link ByteBuffer} using its bulk
+ * put methods, and the buffer can be reset and reused, so encoding does not allocate once it has grown to fit.
+ * As writes go to memory, the methods do not throw IOExceptions, except for {@link #writeUTF(String)} if the
+ * string is too long.
+ * <p>
+ * The backing buffer is either a growable heap or direct buffer owned by the tape buffer, or a fixed region of
+ * a caller supplied buffer, in which case a {@link BufferOverflowException} is thrown once the region is full.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TapeBuffer implements DataOutput {
+    private static final int MAX_UTF_LENGTH = 0xFFFF;
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private final boolean _growable;
+    private ByteBuffer _buffer;
+
+    /**
+     * Creates a growable heap backed buffer with the given initial capacity
+     * @param initialCapacity The initial capacity in bytes
+     */
+    public TapeBuffer(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    /**
+     * Creates a growable buffer with the given initial capacity
+     * @param initialCapacity The initial capacity in bytes
+     * @param direct True to back the buffer with direct memory, false for heap memory
+     */
+    public TapeBuffer(int initialCapacity, boolean direct) {
+        _buffer = direct ? ByteBuffer.allocateDirect(initialCapacity) : ByteBuffer.allocate(initialCapacity);
+        _growable = true;
+    }
+
+    /**
+     * Creates a fixed capacity buffer writing into the remaining space of the target buffer.
+     * <p>
+     * The position of the target is not changed, use {@link #size()} to advance it past the data written.
+     *
+     * @param target The buffer to write into
+     */
+    public TapeBuffer(ByteBuffer target) {
+        _buffer = target.slice();
+        _growable = false;
+    }
+
+    /**
+     * The number of bytes written since creation or last reset
+     * @return The number of bytes
+     */
+    public int size() {
+        return _buffer.position();
+    }
+
+    /**
+     * The number of bytes the buffer holds before it grows
+     * @return The capacity in bytes
+     */
+    public int capacity() {
+        return _buffer.capacity();
+    }
+
+    /**
+     * Discards the content written after the given size
+     * @param size The size to keep, at most the current size
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > _buffer.position()) {
+            throw new IllegalArgumentException("Invalid size [" + size + "] of " + _buffer.position() + " bytes");
+        }
+        _buffer.position(size);
+    }
+
+    /**
+     * Resets the buffer, discarding the content but keeping the capacity for reuse
+     */
+    public void reset() {
+        _buffer.clear();
+    }
+
+    /**
+     * Writes the content of the buffer to the output stream
+     * @param outputStream The output stream to write to
+     * @throws IOException If thrown by the output stream
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (_buffer.hasArray()) {
+            outputStream.write(_buffer.array(), _buffer.arrayOffset(), _buffer.position());
+            return;
+        }
+
+        // Direct memory has to be copied through a heap chunk
+        ByteBuffer content = contentBuffer();
+        byte[] chunk = new byte[Math.min(COPY_CHUNK_SIZE, content.remaining())];
+        while (content.hasRemaining()) {
+            int length = Math.min(chunk.length, content.remaining());
+            content.get(chunk, 0, length);
+            outputStream.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Copies the content of the buffer to a new byte array
+     * @return The byte array
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[_buffer.position()];
+        contentBuffer().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a view of the content written, sharing the memory of the tape buffer.
+     * The view is only valid until the tape buffer is written to or reset.
+     * @return Buffer positioned at the start of the content, and limited at its end
+     */
+    public ByteBuffer contentBuffer() {
+        return _buffer.duplicate().flip();
+    }
+
+    @Override
+    public void write(int b) {
+        ensureRemaining(Byte.BYTES).put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureRemaining(len).put(b, off, len);
+    }
+
+    /**
+     * Writes the content of another tape buffer
+     * @param other The tape buffer to copy the content from
+     */
+    public void write(TapeBuffer other) {
+        ensureRemaining(other.size()).put(other.contentBuffer());
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+        write(v ? 1 : 0);
+    }
+
+    @Override
+    public void writeByte(int v) {
+        write(v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+        ensureRemaining(Short.BYTES).putShort((short)v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+        ensureRemaining(Character.BYTES).putChar((char)v);
+    }
+
+    @Override
+    public void writeInt(int v) {
+        ensureRemaining(Integer.BYTES).putInt(v);
+    }
+
+    /**
+     * Overwrites an int written earlier, such as a length reserved ahead of the data it covers
+     * @param position The position of the int, as returned by {@link #size()} before it was written
+     * @param v The value
+     * @throws IndexOutOfBoundsException If the int is not within the content written
+     */
+    public void writeInt(int position, int v) {
+        if (position < 0 || position > _buffer.position() - Integer.BYTES) {
+            throw new IndexOutOfBoundsException("No int written at [" + position + "]");
+        }
+        _buffer.putInt(position, v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+        ensureRemaining(Long.BYTES).putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+        ensureRemaining(Float.BYTES).putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) {
+        ensureRemaining(Double.BYTES).putDouble(v);
+    }
+
+    @Override
+    public void writeBytes(String s) {
+        int length = s.length();
+        ByteBuffer buffer = ensureRemaining(length);
+        for (int ix = 0; ix < length; ix++) {
+            buffer.put((byte)s.charAt(ix));
+        }
+    }
+
+    @Override
+    public void writeChars(String s) {
+        int length = s.length();
+        ByteBuffer buffer = ensureRemaining(length * Character.BYTES);
+        for (int ix = 0; ix < length; ix++) {
+            buffer.putChar(s.charAt(ix));
+        }
+    }
+
+    /**
+     * Writes the integers in a single bulk copy
+     * @param values The values to write
+     */
+    public void writeInts(int[] values) {
+        ByteBuffer buffer = ensureRemaining(bulkLength(values.length, Integer.BYTES));
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    /**
+     * Writes the longs in a single bulk copy
+     * @param values The values to write
+     */
+    public void writeLongs(long[] values) {
+        ByteBuffer buffer = ensureRemaining(bulkLength(values.length, Long.BYTES));
+        buffer.asLongBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Long.BYTES);
+    }
+
+    /**
+     * Writes the floats in a single bulk copy
+     * @param values The values to write
+     */
+    public void writeFloats(float[] values) {
+        ByteBuffer buffer = ensureRemaining(bulkLength(values.length, Float.BYTES));
+        buffer.asFloatBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Float.BYTES);
+    }
+
+    /**
+     * Writes the doubles in a single bulk copy
+     * @param values The values to write
+     */
+    public void writeDoubles(double[] values) {
+        ByteBuffer buffer = ensureRemaining(bulkLength(values.length, Double.BYTES));
+        buffer.asDoubleBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Double.BYTES);
+    }
+
+    /**
+     * Writes an unsigned integer using the variable length encoding of {@link VarInt}
+     * @param v The value, treated as unsigned
+     */
+    public void writeVarInt(int v) {
+        ByteBuffer buffer = ensureRemaining(VarInt.sizeOf(v));
+        while ((v & ~0x7F) != 0) {
+            buffer.put((byte)(v | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte)v);
+    }
+
+    /**
+     * Writes an unsigned long using the variable length encoding of {@link VarInt}
+     * @param v The value, treated as unsigned
+     */
+    public void writeVarLong(long v) {
+        ByteBuffer buffer = ensureRemaining(VarInt.sizeOf(v));
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte)(v | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte)v);
+    }
+
+    /**
+     * Writes the string as its varint byte length, followed by the standard UTF-8 encoding. There is no limit
+     * on the length of the string.
+     * <p>
+     * ASCII strings, the common case, are copied in bulk from the string into a heap buffer, which for compact
+     * strings copies the backing bytes. Other strings are encoded using {@link StandardCharsets#UTF_8}.
+     *
+     * @param s The string to write
+     */
+    @SuppressWarnings("deprecation")  // The deprecated String.getBytes variant is exact for ASCII strings
+    public void writeString(String s) {
+        int length = s.length();
+        if (isAscii(s, length)) {
+            ByteBuffer buffer = ensureRemaining(VarInt.sizeOf(length) + length);
+            writeVarInt(length);
+            int position = buffer.position();
+            if (buffer.hasArray()) {
+                s.getBytes(0, length, buffer.array(), buffer.arrayOffset() + position);
+            }
+            else {
+                for (int ix = 0; ix < length; ix++) {
+                    buffer.put(position + ix, (byte)s.charAt(ix));
+                }
+            }
+            buffer.position(position + length);
+        }
+        else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            write(bytes);
+        }
+    }
+
+    private static boolean isAscii(String s, int length) {
+        for (int ix = 0; ix < length; ix++) {
+            if (s.charAt(ix) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the string in the modified UTF-8 format of {@link java.io.DataOutputStream#writeUTF(String)}
+     * @param s The string to write
+     * @throws UTFDataFormatException If the encoded string is longer than 65535 bytes
+     */
+    @Override
+    public void writeUTF(String s) throws UTFDataFormatException {
+        int length = s.length();
+        int utfLength = length;
+        for (int ix = 0; ix < length; ix++) {
+            char c = s.charAt(ix);
+            if (c >= 0x80 || c == 0) utfLength += c >= 0x800 ? 2 : 1;
+        }
+        if (utfLength > MAX_UTF_LENGTH) {
+            throw new UTFDataFormatException("Encoded string too long: " + utfLength + " bytes");
+        }
+
+        ByteBuffer buffer = ensureRemaining(Short.BYTES + utfLength);
+        buffer.putShort((short)utfLength);
+        for (int ix = 0; ix < length; ix++) {
+            char c = s.charAt(ix);
+            if (c < 0x80 && c != 0) {
+                buffer.put((byte)c);
+            }
+            else if (c >= 0x800) {
+                buffer.put((byte)(0xE0 | ((c >> 12) & 0x0F)));
+                buffer.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte)(0x80 | (c & 0x3F)));
+            }
+            else {
+                buffer.put((byte)(0xC0 | ((c >> 6) & 0x1F)));
+                buffer.put((byte)(0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Makes sure the given number of bytes can be written, growing the buffer if needed
+     * @param length The number of bytes to be written
+     * @return The backing buffer to write to
+     */
+    private ByteBuffer ensureRemaining(int length) {
+        if (_buffer.remaining() < length) grow(length);
+        return _buffer;
+    }
+
+    private static int bulkLength(int count, int elementSize) {
+        if (count > Integer.MAX_VALUE / elementSize) throw new OutOfMemoryError("Required buffer capacity too large");
+        return count * elementSize;
+    }
+
+    private void grow(int length) {
+        if (!_growable) throw new BufferOverflowException();
+        int required = _buffer.position() + length;
+        if (required < 0) throw new OutOfMemoryError("Required buffer capacity too large");
+        int capacity = Math.max(required, _buffer.capacity() << 1);
+        if (capacity < 0) capacity = Integer.MAX_VALUE - 8;
+        ByteBuffer buffer = _buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        _buffer.flip();
+        buffer.put(_buffer);
+        _buffer = buffer;
+    }
+}
@@ -0,0 +1,145 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Functions for the variable length integer encodings.
+ * <p>
+ * Unsigned values are encoded 7 bits at the time, least significant group first, with the high bit of each
+ * byte set if more bytes follow. Signed values are ZigZag encoded first, mapping small negative and positive
+ * values to small unsigned values (0, -1, 1, -2, ... to 0, 1, 2, 3, ...).
+ */
+public final class VarInt {
+    private VarInt() { }
+
+    /**
+     * ZigZag encodes a signed integer
+     * @param value The signed value
+     * @return The unsigned encoded value
+     */
+    public static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * ZigZag encodes a signed long
+     * @param value The signed value
+     * @return The unsigned encoded value
+     */
+    public static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Decodes a ZigZag encoded integer
+     * @param value The unsigned encoded value
+     * @return The signed value
+     */
+    public static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Decodes a ZigZag encoded long
+     * @param value The unsigned encoded value
+     * @return The signed value
+     */
+    public static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The number of bytes needed to encode the unsigned integer
+     * @param value The value, treated as unsigned
+     * @return The encoded size, between 1 and 5
+     */
+    public static int sizeOf(int value) {
+        return (Integer.SIZE - Integer.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    /**
+     * The number of bytes needed to encode the unsigned long
+     * @param value The value, treated as unsigned
+     * @return The encoded size, between 1 and 10
+     */
+    public static int sizeOf(long value) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    /**
+     * Reads an unsigned variable length integer
+     * @param in The Data Input to read from
+     * @return The value
+     * @throws IOException If thrown by the Data Input, or the encoding is longer than 5 bytes
+     */
+    public static int readInt(DataInput in) throws IOException {
+        int b = in.readByte();
+        if (b >= 0) return b;
+        int value = b & 0x7F;
+        for (int shift = 7; shift < Integer.SIZE; shift += 7) {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("Variable length integer too long");
+    }
+
+    /**
+     * Reads an unsigned variable length long
+     * @param in The Data Input to read from
+     * @return The value
+     * @throws IOException If thrown by the Data Input, or the encoding is longer than 10 bytes
+     */
+    public static long readLong(DataInput in) throws IOException {
+        long b = in.readByte();
+        if (b >= 0) return b;
+        long value = b & 0x7F;
+        for (int shift = 7; shift < Long.SIZE; shift += 7) {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("Variable length long too long");
+    }
+
+    /**
+     * Reads an unsigned variable length integer from the buffer
+     * @param in The buffer to read from
+     * @return The value
+     * @throws StreamCorruptedException If the encoding is longer than 5 bytes
+     * @throws java.nio.BufferUnderflowException If the buffer ends within the encoding
+     */
+    public static int readInt(ByteBuffer in) throws StreamCorruptedException {
+        int b = in.get();
+        if (b >= 0) return b;
+        int value = b & 0x7F;
+        for (int shift = 7; shift < Integer.SIZE; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("Variable length integer too long");
+    }
+
+    /**
+     * Reads an unsigned variable length long from the buffer
+     * @param in The buffer to read from
+     * @return The value
+     * @throws StreamCorruptedException If the encoding is longer than 10 bytes
+     * @throws java.nio.BufferUnderflowException If the buffer ends within the encoding
+     */
+    public static long readLong(ByteBuffer in) throws StreamCorruptedException {
+        long b = in.get();
+        if (b >= 0) return b;
+        long value = b & 0x7F;
+        for (int shift = 7; shift < Long.SIZE; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("Variable length long too long");
+    }
+}
@@ -0,0 +1,293 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.util.TapeBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes many top level objects to a single tape like the {@link TurboTapeV1SessionWriter}, but leaves
+ * the writing to the output stream to a drainer thread, so a slow stream does not stall the encoding.
+ * <p>
+ * Objects are encoded on the calling thread into tape buffers, which are handed to the drainer through
+ * a bounded queue. Once the queue is full, writing blocks until the drainer catches up. Each write returns a
+ * future completed when the object has been written to the stream, and the drainer returns the tape buffers
+ * to a pool, so encoding does not allocate once the pool has grown to fit.
+ * <p>
+ * If the output stream fails, the futures of the object being written and all objects after it complete
+ * exceptionally, and further writes throw the failure. If the drainer thread is interrupted, the queued entries
+ * complete exceptionally, and further writes fail rather than wait for it.
+ * <p>
+ * If encoding an object fails, the part of it encoded is discarded as by the {@link TurboTapeV1SessionWriter},
+ * failing the session if the tape is not readable past it.
+ * <p>
+ * Instances are not thread safe, objects must be written by one thread at the time.
+ */
+public class TurboTapeV1AsyncSessionWriter implements Closeable {
+    private static final int INITIAL_BUFFER_CAPACITY = 256;
+    private static final long ENQUEUE_POLL_MILLIS = 100;
+
+    private final OutputStream _outputStream;
+    private final TurboTapeV1ObjectWriter.Context _context;
+    private final BlockingQueue<Entry> _queue;
+    private final BlockingQueue<TapeBuffer> _pool;
+    private final Thread _drainer;
+    private TapeBuffer _buffer = new TapeBuffer(INITIAL_BUFFER_CAPACITY);
+    private boolean _closed;
+    // True if a write failed, leaving the tape unreadable past it
+    private boolean _failed;
+    // The failure of the output stream, set by the drainer thread
+    private volatile IOException _failure;
+    // True once the drainer thread has stopped taking entries
+    private volatile boolean _stopped;
+
+    /**
+     * Creates the session writer, starting its drainer thread.
+     * Use {@link TurboTapeV1Serializer#openAsyncSession(OutputStream, int, ThreadFactory)} to open a session.
+     * @param plans The write plans of the classes written
+     * @param options The encoding options
+     * @param outputStream The output stream to write the tape to
+     * @param queueCapacity The number of encoded buffers which may wait for the drainer
+     * @param threadFactory The factory creating the drainer thread
+     */
+    TurboTapeV1AsyncSessionWriter(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options,
+                                  OutputStream outputStream, int queueCapacity, ThreadFactory threadFactory) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        _outputStream = outputStream;
+        _context = new TurboTapeV1ObjectWriter.Context(plans, options, this::drain);
+        _queue = new ArrayBlockingQueue<>(queueCapacity);
+        _pool = new ArrayBlockingQueue<>(queueCapacity + 2);
+        _buffer.write(TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES);
+        _drainer = threadFactory.newThread(this::runDrainer);
+        _drainer.start();
+    }
+
+    /**
+     * Encodes the object, and queues it to be written to the tape, blocking while the queue is full
+     * @param object The object to write
+     * @param <T> The objects type
+     * @return A future completed when the object has been written to the output stream
+     * @throws IOException If the output stream has failed, or the object writer raises one
+     */
+    public <T> CompletableFuture<Void> write(T object) throws IOException {
+        checkOpen();
+        int start = _buffer.size();
+        int revision = _context.revision();
+        boolean written = false;
+        try {
+            new TurboTapeV1ObjectWriter<>(_context, object).write(_buffer);
+            written = true;
+        }
+        finally {
+            if (!written) discard(start, revision);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(new Entry(_buffer, Entry.WRITE, future));
+        _buffer = takeBuffer();
+        return future;
+    }
+
+    /**
+     * Queues a flush of the output stream, blocking while the queue is full
+     * @return A future completed when the objects written before have been written and flushed
+     * @throws IOException If the output stream has failed
+     */
+    public CompletableFuture<Void> flush() throws IOException {
+        checkOpen();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(new Entry(takeBuffer(), Entry.FLUSH, future));
+        return future;
+    }
+
+    /**
+     * Ends the session, waiting for the queued objects to be written, and closing the output stream
+     * @throws IOException If thrown by the output stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (_closed) return;
+        _closed = true;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue(new Entry(_buffer, Entry.CLOSE, future));
+        try {
+            future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Drain of the writer context, handing the content of a tape buffer grown large while writing a sequence
+     * to the drainer, and resetting it
+     * @param buffer The tape buffer
+     * @throws IOException If the output stream has failed
+     */
+    private void drain(TapeBuffer buffer) throws IOException {
+        TapeBuffer content = takeBuffer();
+        content.write(buffer);
+        buffer.reset();
+        enqueue(new Entry(content, Entry.WRITE, null));
+    }
+
+    /**
+     * Discards the part of a failed object encoded, failing the session unless the tape written before it
+     * is still readable without it
+     * @param start The size of the tape buffer when the object started
+     * @param revision The revision of the context when the object started
+     */
+    private void discard(int start, int revision) {
+        if (_context.revision() != revision) {
+            _failed = true;
+            _buffer.reset();
+        }
+        else {
+            _buffer.truncate(start);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (_closed) throw new IllegalStateException("Session is closed");
+        if (_failed) throw new IOException("Session failed by an earlier write");
+        IOException failure = _failure;
+        if (failure != null) throw new IOException("Output stream of the session failed", failure);
+    }
+
+    private TapeBuffer takeBuffer() {
+        TapeBuffer buffer = _pool.poll();
+        return buffer != null ? buffer : new TapeBuffer(INITIAL_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Queues the entry for the drainer, blocking while the queue is full, and failing once the drainer has stopped
+     * @param entry The entry to queue
+     * @throws IOException If the drainer has stopped, or the thread is interrupted while waiting
+     */
+    private void enqueue(Entry entry) throws IOException {
+        boolean queued = false;
+        try {
+            while (!queued && !_stopped) {
+                queued = _queue.offer(entry, ENQUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            IOException failure = new InterruptedIOException("Interrupted while waiting for the session queue");
+            if (entry.future != null) entry.future.completeExceptionally(failure);
+            throw failure;
+        }
+        // An entry queued as the drainer stopped may have been left behind, if so it is abandoned here
+        if (!_stopped || (queued && !_queue.remove(entry))) return;
+        throw abandon(entry, stoppedFailure());
+    }
+
+    /**
+     * Completes the future of an entry which will not be written exceptionally, closing the output stream
+     * if the entry closes the session
+     * @param entry The entry abandoned
+     * @param failure The failure to complete the future with
+     * @return The failure
+     */
+    private IOException abandon(Entry entry, IOException failure) {
+        if (entry.action == Entry.CLOSE) {
+            try {
+                _outputStream.close();
+            }
+            catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        if (entry.future != null) entry.future.completeExceptionally(failure);
+        return failure;
+    }
+
+    private IOException stoppedFailure() {
+        IOException failure = _failure;
+        return failure != null
+            ? new IOException("Output stream of the session failed", failure)
+            : new IOException("Session drainer stopped");
+    }
+
+    /**
+     * The drainer thread, writing the queued buffers to the output stream until the session is closed.
+     * After a failure, the remaining entries are completed with the failure. Once it stops, entries left
+     * in the queue are abandoned, so no writer waits for it.
+     */
+    private void runDrainer() {
+        try {
+            drainQueue();
+        }
+        finally {
+            _stopped = true;
+            Entry entry;
+            while ((entry = _queue.poll()) != null) {
+                abandon(entry, stoppedFailure());
+            }
+        }
+    }
+
+    private void drainQueue() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = _queue.take();
+            }
+            catch (InterruptedException e) {
+                _failure = new InterruptedIOException("Session drainer interrupted");
+                return;
+            }
+
+            try {
+                if (_failure == null) {
+                    entry.buffer.writeTo(_outputStream);
+                    if (entry.action == Entry.FLUSH) _outputStream.flush();
+                }
+                if (entry.action == Entry.CLOSE) _outputStream.close();
+                if (_failure != null) throw _failure;
+                if (entry.future != null) entry.future.complete(null);
+            }
+            catch (IOException e) {
+                if (_failure == null) _failure = e;
+                if (entry.future != null) entry.future.completeExceptionally(_failure);
+            }
+            catch (RuntimeException | Error e) {
+                if (_failure == null) _failure = new IOException(e);
+                if (entry.future != null) entry.future.completeExceptionally(_failure);
+            }
+            if (entry.action == Entry.CLOSE) return;
+
+            entry.buffer.reset();
+            _pool.offer(entry.buffer);
+        }
+    }
+
+    /**
+     * An encoded buffer queued for the drainer, with the action following the write of its content
+     */
+    private static class Entry {
+        private static final int WRITE = 0;
+        private static final int FLUSH = 1;
+        private static final int CLOSE = 2;
+
+        private final TapeBuffer buffer;
+        private final int action;
+        private final CompletableFuture<Void> future;
+
+        private Entry(TapeBuffer buffer, int action, CompletableFuture<Void> future) {
+            this.buffer = buffer;
+            this.action = action;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.Deserializer;
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.util.BlockCodec;
+import net.thebigrock.turbotape.util.BlockCodecs;
+import net.thebigrock.turbotape.util.BlockDecompressingInputStream;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * TurboTape deserializer instance.
+ * <p>
+ * The tape is read in a single streaming pass, and only the fields of the objects currently
+ * being built are held in memory. IO errors and malformed tapes are raised as {@link UncheckedIOException}.
+ */
+public class TurboTapeV1Deserializer implements Deserializer {
+
+    private final ObjectReadHandlerProvider _readerProvider;
+    private final TurboTapeV1MetricsListener _metrics;
+
+    public TurboTapeV1Deserializer(ObjectReadHandlerProvider readerProvider) {
+        this(readerProvider, null);
+    }
+
+    /**
+     * Creates a deserializer reporting the objects and fields read per alias to a metrics listener,
+     * which must be thread safe if the deserializer is used concurrently
+     * @param readerProvider The reader provider used to resolve object read handlers
+     * @param metrics The listener receiving the decoding metrics, or null to not collect metrics
+     */
+    public TurboTapeV1Deserializer(ObjectReadHandlerProvider readerProvider, TurboTapeV1MetricsListener metrics) {
+        _readerProvider = readerProvider;
+        _metrics = metrics;
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> cls, InputStream inputStream) {
+        try {
+            DataInputStream dataReader = new DataInputStream(inputStream);
+            readHeader(dataReader);
+            TurboTapeV1ObjectReader objectReader = new TurboTapeV1ObjectReader(_readerProvider, _metrics, dataReader);
+            return cls.cast(objectReader.read());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens a session reading a tape of many top level objects, written by a
+     * {@link TurboTapeV1SessionWriter}, from the input stream.
+     *
+     * @param inputStream The input stream to read the tape from
+     * @return The session reader, which is not thread safe
+     */
+    public TurboTapeV1SessionReader openSession(InputStream inputStream) {
+        return new TurboTapeV1SessionReader(_readerProvider, _metrics, inputStream);
+    }
+
+    /**
+     * Opens a session reading a tape compressed in blocks, written by a session opened with
+     * {@link TurboTapeV1Serializer#openCompressedSession(java.io.OutputStream, BlockCodec, int)}.
+     * The blocks are decompressed as the objects are read.
+     *
+     * @param inputStream The input stream to read the compressed tape from
+     * @param codecs The codecs the tape may be compressed with, in addition to the
+     *               {@linkplain BlockCodecs#installed() installed codecs}
+     * @return The session reader, which is not thread safe
+     */
+    public TurboTapeV1SessionReader openCompressedSession(InputStream inputStream, BlockCodec... codecs) {
+        return openSession(new BlockDecompressingInputStream(inputStream, codecs));
+    }
+
+    /**
+     * Opens a tape file written by a {@link TurboTapeV1TapeFileWriter}, memory mapping it for reading
+     * its records in any order.
+     *
+     * @param path The path of the tape file
+     * @return The tape file reader, which is not thread safe
+     * @throws IOException If the file cannot be opened, or is not a tape file
+     */
+    public TurboTapeV1TapeFileReader openTapeFile(Path path) throws IOException {
+        return new TurboTapeV1TapeFileReader(_readerProvider, _metrics, path);
+    }
+
+    /**
+     * Opens a split of a splittable tape written by a {@link TurboTapeV1SplittableWriter}, reading the objects
+     * of the blocks starting within the given byte range. Splits of adjacent ranges can be read concurrently,
+     * and together read every object of the tape once.
+     *
+     * @param path The path of the splittable tape
+     * @param start The position of the first byte of the range
+     * @param end The position after the last byte of the range
+     * @return The split reader, which is not thread safe
+     * @throws IOException If the file cannot be opened, or is not a splittable tape
+     */
+    public TurboTapeV1SplitReader openSplit(Path path, long start, long end) throws IOException {
+        return new TurboTapeV1SplitReader(_readerProvider, _metrics, path, start, end);
+    }
+
+    /**
+     * Reads all objects of a splittable tape, dividing the tape into the given number of splits of equal size,
+     * which are read concurrently on the pool. The consumer is called concurrently by the pool threads, with
+     * the objects of each split in tape order.
+     *
+     * @param path The path of the splittable tape
+     * @param cls The class of the objects to read
+     * @param splitCount The number of splits
+     * @param pool The pool reading the splits
+     * @param consumer The consumer of the objects read, which must be thread safe
+     * @param <T> The object type deferred from the specified class
+     * @throws IOException If a file cannot be opened, or the tape is malformed
+     */
+    public <T> void readSplits(Path path, Class<T> cls, int splitCount, ForkJoinPool pool,
+                               Consumer<? super T> consumer) throws IOException {
+        if (splitCount <= 0) throw new IllegalArgumentException("Split count must be positive: " + splitCount);
+        long size = Files.size(path);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int split = 0; split < splitCount; split++) {
+            long start = size * split / splitCount;
+            long end = size * (split + 1) / splitCount;
+            tasks.add(pool.submit(() -> {
+                try (TurboTapeV1SplitReader reader = openSplit(path, start, end)) {
+                    while (reader.hasNext()) {
+                        consumer.accept(reader.read(cls));
+                    }
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading splits");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new IOException(cause);
+        }
+        finally {
+            for (Future<?> task : tasks) task.cancel(false);
+        }
+    }
+
+    /**
+     * Reads and verifies the protocol header
+     * @param in The Data Input to read from
+     * @throws IOException If the header is missing or does not match
+     */
+    static void readHeader(DataInput in) throws IOException {
+        byte[] expected = TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES;
+        byte[] header = new byte[expected.length];
+        in.readFully(header);
+        if (!Arrays.equals(expected, header)) {
+            throw new StreamCorruptedException("Invalid protocol header: "
+                    + new String(header, StandardCharsets.ISO_8859_1));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.thebigrock.turbotape.v1;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a top level object encoded by a serializer, lasting the time taken to encode it.
+ * <p>
+ * Unless a recording enables the event, the writer does not create it, and does not collect the values.
+ */
+@Name("net.thebigrock.turbotape.Encode")
+@Label("TurboTape Encode")
+@Category("TurboTape")
+@Description("A top level object encoded, along with its sub-objects and sequences")
+@StackTrace(false)
+class TurboTapeV1EncodeEvent extends jdk.jfr.Event {
+
+    @Label("Alias")
+    @Description("The alias of the object, or null if the object is null")
+    String alias;
+
+    @Label("Bytes")
+    @Description("The number of bytes encoded, including those drained while encoding")
+    @DataAmount
+    long bytes;
+}
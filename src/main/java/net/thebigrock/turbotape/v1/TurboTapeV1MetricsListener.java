@@ -0,0 +1,58 @@
+package net.thebigrock.turbotape.v1;
+
+/**
+ * Receives the metrics of the tapes written by a serializer, or read by a deserializer, per object alias.
+ * Set it with {@link TurboTapeV1SerializerBuilder#metricsListener(TurboTapeV1MetricsListener)} or
+ * {@link TurboTapeV1Deserializer#TurboTapeV1Deserializer(net.thebigrock.turbotape.ObjectReadHandlerProvider,
+ * TurboTapeV1MetricsListener)}.
+ * <p>
+ * The methods are called as the tape is encoded or decoded, so they should be cheap, and must not throw.
+ * Serializers are used concurrently, and parallel sequences are encoded on the threads of their pool,
+ * so the listener must be thread safe. All methods do nothing by default.
+ * <p>
+ * Without a listener, the metrics are never collected, and the writers and readers only check that
+ * there is no listener.
+ */
+public interface TurboTapeV1MetricsListener {
+
+    /**
+     * Called when objects have been written, being either a single object, or the objects of a sequence chunk
+     * written as a column block. The bytes are those of the type index and the fields, excluding sub-objects.
+     * @param alias The alias of the objects
+     * @param objects The number of objects written
+     * @param fields The total number of fields of the objects
+     * @param bytes The number of bytes written
+     */
+    default void objectsWritten(String alias, int objects, int fields, int bytes) { }
+
+    /**
+     * Called when a field name is allocated an index on the tape, and defined there
+     * @param name The field name
+     * @param index The index allocated
+     */
+    default void fieldNameAllocated(String name, int index) { }
+
+    /**
+     * Called when an alias is allocated an index on the tape, and defined there
+     * @param alias The alias
+     * @param index The index allocated
+     */
+    default void aliasAllocated(String alias, int index) { }
+
+    /**
+     * Called when a top level object has been encoded, along with its sub-objects and sequences
+     * @param alias The alias of the object, or null if the object is null
+     * @param bytes The number of bytes encoded, including those drained while encoding
+     * @param nanos The time taken to encode the object, in nanoseconds
+     */
+    default void encoded(String alias, long bytes, long nanos) { }
+
+    /**
+     * Called when objects have been read, being either a single object, or the objects of a sequence chunk
+     * read as a column block. Objects skipped are not reported.
+     * @param alias The alias of the objects
+     * @param objects The number of objects read
+     * @param fields The total number of fields of the objects
+     */
+    default void objectsRead(String alias, int objects, int fields) { }
+}
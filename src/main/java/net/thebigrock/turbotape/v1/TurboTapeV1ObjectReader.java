@@ -1,65 +1,1367 @@
 package net.thebigrock.turbotape.v1;
 
 import net.thebigrock.turbotape.FieldReader;
+import net.thebigrock.turbotape.ObjectReadHandler;
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.ReusingReadHandler;
+import net.thebigrock.turbotape.util.ByteBufferInput;
+import net.thebigrock.turbotape.util.IOFunction;
+import net.thebigrock.turbotape.util.IndexResolver;
+import net.thebigrock.turbotape.util.StringView;
+import net.thebigrock.turbotape.util.VarInt;
 
-public class TurboTapeV1ObjectReader {
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
+/**
+ * Reads an object and its sub-objects from the tape.
+ * <p>
+ * Since the sub-objects follow the fields of their parent on the tape, all fields of the object are read
+ * into a field table before the read handler is invoked. Sub-objects are then read in tape order as the
+ * handler requests them, and the ones never requested are skipped once the handler returns.
+ * <p>
+ * Sequences are decoded lazily as their iterator is advanced. To keep the memory bounded, a sequence must be
+ * iterated before any sub-object following it on the tape is read, as the remainder of the sequence otherwise
+ * has to be kept in memory. For the same reason, a partially iterated sequence is read to its end when the
+ * handler returns, unless it is the last sequence of the top level object, which stays lazy.
+ * <p>
+ * Sequence chunks written as column blocks are read whole, but each column is only decoded the first time
+ * a read handler reads it, so columns never read are never decoded.
+ * <p>
+ * On tapes written with identity tracking, every object read is numbered and kept until the next top level
+ * object, and objects not requested are built rather than skipped, as back-references may refer to them.
+ * <p>
+ * Top level objects written with length prefixed objects have the byte length of the fields, and of the fields
+ * and sub-objects, ahead of each object. The fields are then read in bulk into the field arena of the context,
+ * and strings and arrays are only decoded from it when the handler reads them. Sub-objects not requested are
+ * skipped in one step when their length is known. The strings of other objects are read into the field arena
+ * as well, so strings never read are never decoded.
+ */
+public class TurboTapeV1ObjectReader extends TurboTapeV1Protocol {
+    private static final int INITIAL_FIELD_CAPACITY = 8;
+    // The capacity of the scratch buffer primitive arrays and strings are read through
+    private static final int SCRATCH_CAPACITY = 8192;
 
+    private final Context _context;
+    private final boolean _root;
+    // The identity number of the object, or -1 if not tracking identity
+    private int _identity = -1;
+
+    // The field table of the object
+    private int[] _types = new int[INITIAL_FIELD_CAPACITY];
+    private String[] _names = new String[INITIAL_FIELD_CAPACITY];
+    private long[] _values = new long[INITIAL_FIELD_CAPACITY];
+    private Object[] _references = new Object[INITIAL_FIELD_CAPACITY];
+    private int _fieldCount;
+
+    // The field positions of the sub-objects and sequences, in tape order
+    private int[] _subObjectPositions = new int[INITIAL_FIELD_CAPACITY];
+    private int _subObjectCount;
+    private int _subObjectsRead;
+
+    // The fields of a length prefixed object in the field arena, holding the strings and arrays not yet decoded,
+    // or null if not length prefixed
+    private ByteBuffer _fieldBytes;
+    // The arena top to restore when the object is read
+    private int _arenaTop;
+
+    // The field reader passed to the read handler, kept for reading the next object when reused
+    private FieldReaderImpl _fieldReader;
+
+    /**
+     * Creates the initial object reader, initializing a context for the data input
+     * @param readerProvider The reader provider used to resolve object read handlers
+     * @param metrics The listener receiving the decoding metrics, or null
+     * @param in The Data Input to read from
+     */
+    TurboTapeV1ObjectReader(ObjectReadHandlerProvider readerProvider, TurboTapeV1MetricsListener metrics,
+                            DataInput in) {
+        this(new Context(readerProvider, metrics, in), true);
+    }
+
+    /**
+     * Creates a top level object reader using an existing context, which keeps the object
+     * aliases and field names resolved by the objects read before it.
+     * @param context The reader context
+     */
+    TurboTapeV1ObjectReader(Context context) {
+        this(context, true);
+    }
+
+    /**
+     * Creates a reader sharing the given context
+     * @param context The reader context
+     * @param root True if this is the reader of the top level object
+     */
+    private TurboTapeV1ObjectReader(Context context, boolean root) {
+        this._context = context;
+        this._root = root;
+    }
+
+    /**
+     * Reads the object, and builds it using the read handler registered for its alias
+     * @return The object read, or null if a null object was written
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    Object read() throws IOException {
+        return read(true, null, null);
+    }
+
+    /**
+     * Reads the top level object into the given instance using the reusing read handler, whatever the alias
+     * of the object. The reader is reset first, so a reader can read many top level objects of its context,
+     * each being finished before the next is read, reusing its field table. Sub-objects are built using the
+     * read handlers registered for their aliases.
+     * @param handler The handler filling the instance
+     * @param instance The instance to fill
+     * @param <T> The type of the instance
+     * @return The instance, or null if a null object was written
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    @SuppressWarnings("unchecked")  // Unchecked cast is safe, as the handler is only passed the instance
+    <T> T read(ReusingReadHandler<? super T> handler, T instance) throws IOException {
+        reset();
+        return (T)read(true, (ReusingReadHandler<Object>)handler, instance);
+    }
+
+    /**
+     * Reads the rest of a top level sequence left lazy by {@link #read()}, buffering its objects,
+     * so the tape is positioned after the object.
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    void finish() throws IOException {
+        if (_subObjectsRead < _subObjectCount) {
+            ((SequenceReader)_references[_subObjectPositions[_subObjectsRead]]).finish(true);
+            _subObjectsRead++;
+        }
+    }
+
+    /**
+     * Reads the object and its sub-objects from the tape, optionally building it
+     * @param build True to build the object, false to only skip past it
+     * @param reusing The handler filling the instance rather than building the object, or null to build it
+     * @param instance The instance filled by the reusing handler
+     * @return The object built, or null if not built
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    private Object read(boolean build, ReusingReadHandler<Object> reusing, Object instance) throws IOException {
+        // A top level object starts a new identity table, tracked if preceded by the tracked index
+        // A length prefixed top level object is preceded by the sized index, ahead of any tracked index
+        DataInput in = _context._in;
+        int typeIndex = in.readUnsignedShort();
+        if (_root) {
+            _context._identities.clear();
+            _context._arenaTop = 0;
+            _context._sized = typeIndex == SIZED_OBJECT_INDEX;
+            if (_context._sized) typeIndex = in.readUnsignedShort();
+            _context._tracking = typeIndex == TRACKED_OBJECT_INDEX;
+            if (_context._tracking) typeIndex = in.readUnsignedShort();
+        }
+        if (typeIndex == BACK_REFERENCE_INDEX) return _context.identity(VarInt.readInt(in));
+
+        // Resolve the object type alias. The null index represents a null object.
+        String alias = _context._objectResolver.resolveName(typeIndex, _context._readName);
+        if (alias == null) return null;
+
+        // When tracking identity, objects are numbered in the order read, and always built,
+        // as objects skipped may be referenced later
+        if (_context._tracking) {
+            build = true;
+            _identity = _context._identities.size();
+            _context._identities.add(null);
+        }
+
+        // Skip the object and its sub-objects if not built and the length is known, or else read the fields,
+        // length prefixed ones in bulk, then let the handler build the object
+        _arenaTop = _context._arenaTop;
+        if (_context._sized) {
+            int fieldsLength = in.readInt();
+            int length = in.readInt();
+            if (fieldsLength < 0 || length < UNKNOWN_LENGTH || length >= 0 && length < fieldsLength) {
+                throw new StreamCorruptedException("Invalid object lengths [" + fieldsLength + ", " + length + "]");
+            }
+            if (!build && length != UNKNOWN_LENGTH) {
+                if (in.skipBytes(length) != length) throw new EOFException("End of tape within skipped object");
+                return null;
+            }
+            _fieldBytes = _context.readFieldBytes(fieldsLength);
+            ByteBufferInput fieldInput = new ByteBufferInput(_fieldBytes.duplicate());
+            readFields(fieldInput);
+            if (fieldInput.remaining() > 0) throw new StreamCorruptedException("Fields end before their length");
+        }
+        else {
+            readFields(in);
+        }
+        Object object = null;
+        if (reusing != null) {
+            reusing.fill(fieldReader(), instance);
+            object = instance;
+            if (_identity >= 0) _context._identities.set(_identity, object);
+        }
+        else if (build) {
+            ObjectReadHandler<?> readHandler = _context._readerProvider.getReadHandler(alias);
+            object = readHandler.build(fieldReader());
+            if (_identity >= 0) _context._identities.set(_identity, object);
+        }
+        if (build && _context._metrics != null) _context._metrics.objectsRead(alias, 1, _fieldCount);
+
+        // Then skip past the sub-objects the handler did not request, and finish partially read sequences
+        while (_subObjectsRead < _subObjectCount) {
+            int position = _subObjectPositions[_subObjectsRead];
+            SequenceReader sequence = (SequenceReader)_references[position];
+            if (sequence != null) {
+                if (_root && _subObjectsRead == _subObjectCount - 1) break;
+                sequence.finish(true);
+            }
+            else if (_types[position] == TYPE_FLAG_REF_ARRAY) {
+                new SequenceReader().finish(false);
+            }
+            else {
+                new TurboTapeV1ObjectReader(_context, false).read(false, null, null);
+            }
+            _subObjectsRead++;
+        }
+        _context._arenaTop = _arenaTop;
+        return object;
+    }
+
+    /**
+     * Reads all fields up to the end of object marker into the field table. Strings and arrays of length
+     * prefixed objects are skipped, keeping their offset in the field bytes to decode them from when read.
+     * Strings of other objects are read into the field arena, to decode them from when read.
+     * @param in The input to read from
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    private void readFields(DataInput in) throws IOException {
+        boolean lazy = _fieldBytes != null;
+        IOFunction<Integer, String> readName = lazy ? index -> in.readUTF() : _context._readName;
+        while (true) {
+            int header = in.readUnsignedShort();
+            int type = header & TYPE_FLAG_MASK;
+            if (type == TYPE_FLAG_END_OBJECT) return;
+
+            String name = _context._fieldResolver.resolveName(header >>> TYPE_FLAG_SIZE, readName);
+            if (type == TYPE_FLAG_EXTENDED) type = in.readUnsignedByte() << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+            int position = addField(type, name);
+            switch (type) {
+                case TYPE_FLAG_BOOLEAN_FALSE:
+                case TYPE_FLAG_BOOLEAN_TRUE:
+                    break;
+                case TYPE_FLAG_INTEGER_32:
+                case TYPE_FLAG_FLOAT_32:
+                    _values[position] = in.readInt();
+                    break;
+                case TYPE_FLAG_INTEGER_64:
+                case TYPE_FLAG_FLOAT_64:
+                    _values[position] = in.readLong();
+                    break;
+                case TYPE_FLAG_VARINT_32:
+                    _values[position] = VarInt.readInt(in);
+                    break;
+                case TYPE_FLAG_ZIGZAG_32:
+                    _values[position] = VarInt.decodeZigZag(VarInt.readInt(in));
+                    break;
+                case TYPE_FLAG_VARINT_64:
+                    _values[position] = VarInt.readLong(in);
+                    break;
+                case TYPE_FLAG_ZIGZAG_64:
+                    _values[position] = VarInt.decodeZigZag(VarInt.readLong(in));
+                    break;
+                case TYPE_FLAG_UTF_STRING:
+                    _references[position] = in.readUTF();
+                    break;
+                case TYPE_FLAG_STRING:
+                    if (lazy) _values[position] = skipLazy((ByteBufferInput)in, type);
+                    else readArenaString(in, position);
+                    break;
+                case TYPE_STRING_DEFINE:
+                    _references[position] = _context.defineString(VarInt.readInt(in), readString(in));
+                    break;
+                case TYPE_STRING_REF:
+                    _references[position] = _context.lookupString(VarInt.readInt(in));
+                    break;
+                case TYPE_OBJECT_BACK_REFERENCE:
+                    _values[position] = VarInt.readInt(in);
+                    break;
+                case TYPE_INT_ARRAY:
+                case TYPE_LONG_ARRAY:
+                case TYPE_FLOAT_ARRAY:
+                case TYPE_DOUBLE_ARRAY:
+                case TYPE_BYTE_ARRAY:
+                    if (lazy) _values[position] = skipLazy((ByteBufferInput)in, type);
+                    else _references[position] = readArray(in, type);
+                    break;
+                case TYPE_FLAG_REF_OBJECT:
+                case TYPE_FLAG_REF_ARRAY:
+                    addSubObject(position);
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unsupported type flag [" + type + "] in field header");
+            }
+        }
+    }
+
+    /**
+     * Skips a string or array of a length prefixed object
+     * @param in The input reading the field bytes
+     * @param type The field type
+     * @return The offset of the value in the field bytes
+     * @throws IOException If the value does not fit the field bytes, or the length is invalid
+     */
+    private int skipLazy(ByteBufferInput in, int type) throws IOException {
+        int offset = _fieldBytes.limit() - in.remaining();
+        int length = VarInt.readInt(in);
+        long size = type == TYPE_FLAG_STRING || type == TYPE_BYTE_ARRAY ? length
+                : type == TYPE_INT_ARRAY || type == TYPE_FLOAT_ARRAY ? (long)length * Integer.BYTES
+                : (long)length * Long.BYTES;
+        if (length < 0 || size > in.remaining()) {
+            throw new StreamCorruptedException("Invalid field length [" + (length & 0xFFFFFFFFL) + "]");
+        }
+        in.skipBytes((int)size);
+        return offset;
+    }
+
+    /**
+     * Reads a string of an object which is not length prefixed onto the top of the field arena, keeping its
+     * offset and length to decode it from when read. Strings larger than the scratch buffer are decoded at once,
+     * so the arena does not keep growing.
+     * @param in The input to read from
+     * @param position The field position
+     * @throws IOException If an IO exception occurs, or the length is invalid
+     */
+    private void readArenaString(DataInput in, int position) throws IOException {
+        int length = VarInt.readInt(in);
+        if (length < 0) throw new StreamCorruptedException("Invalid string length [" + (length & 0xFFFFFFFFL) + "]");
+        if (length > SCRATCH_CAPACITY) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            _references[position] = new String(bytes, StandardCharsets.UTF_8);
+            return;
+        }
+        _values[position] = (long)_context.pushArena(length) << Integer.SIZE | length;
+    }
+
+    /**
+     * Returns the string or array of the field at the given position, decoding it from the field bytes
+     * of a length prefixed object, or a string from the field arena, when first read
+     * @param position The field position
+     * @return The value
+     */
+    private Object reference(int position) {
+        if (_references[position] != null) return _references[position];
+        int type = _types[position];
+        if (_fieldBytes == null) {
+            if (type != TYPE_FLAG_STRING) return null;
+            long value = _values[position];
+            _references[position] = new String(_context._arena, (int)(value >>> Integer.SIZE), (int)value,
+                    StandardCharsets.UTF_8);
+            return _references[position];
+        }
+        if (type != TYPE_FLAG_STRING && (type & TYPE_FLAG_MASK) != TYPE_FLAG_EXTENDED) return null;
+        ByteBuffer bytes = _fieldBytes.duplicate().position((int)_values[position]);
+        try {
+            if (type == TYPE_FLAG_STRING) {
+                // Strings are decoded straight from the arena
+                int length = VarInt.readInt(bytes);
+                _references[position] = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), length,
+                        StandardCharsets.UTF_8);
+            }
+            else {
+                _references[position] = readArray(new ByteBufferInput(bytes), type);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return _references[position];
+    }
+
+    /**
+     * Returns a view of the string of the field at the given position, over its bytes in the field bytes
+     * of a length prefixed object, or else in the field arena. The view is invalid once the object is read,
+     * as the arena top is then restored, and the bytes are overwritten by the next object.
+     * @param position The field position
+     * @return The view
+     */
+    private StringView stringView(int position) {
+        if (_fieldBytes == null) {
+            long value = _values[position];
+            return new StringView(_context._arena, (int)(value >>> Integer.SIZE), (int)value);
+        }
+        ByteBuffer bytes = _fieldBytes.duplicate().position((int)_values[position]);
+        try {
+            int length = VarInt.readInt(bytes);
+            return new StringView(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a view of a decoded string, which is not encoded unless its bytes are needed
+     * @param value The string, or null
+     * @return The view, or null if the string is null
+     */
+    private static StringView view(String value) {
+        return value != null ? StringView.of(value) : null;
+    }
+
+    /**
+     * Reads a varint length prefixed UTF-8 string. Strings fitting the scratch buffer of the context
+     * are read through it, so only the string itself is allocated.
+     * @param in The input to read from
+     * @return The string
+     * @throws IOException If an IO exception occurs, or the length is invalid
+     */
+    private String readString(DataInput in) throws IOException {
+        int length = VarInt.readInt(in);
+        if (length < 0) throw new StreamCorruptedException("Invalid string length [" + (length & 0xFFFFFFFFL) + "]");
+        byte[] bytes = length <= SCRATCH_CAPACITY ? _context._scratch.array() : new byte[length];
+        in.readFully(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length prefixed primitive array. The elements are read in chunks through the scratch buffer
+     * of the context, and bulk copied from its view buffers into the array.
+     * @param in The input to read from
+     * @param type The extended type of the array
+     * @return The array
+     * @throws IOException If an IO exception occurs, or the length is invalid
+     */
+    private Object readArray(DataInput in, int type) throws IOException {
+        int length = VarInt.readInt(in);
+        if (length < 0) throw new StreamCorruptedException("Invalid array length [" + (length & 0xFFFFFFFFL) + "]");
+        if (type == TYPE_BYTE_ARRAY) {
+            byte[] array = new byte[length];
+            in.readFully(array);
+            return array;
+        }
+
+        int elementSize = type == TYPE_INT_ARRAY || type == TYPE_FLOAT_ARRAY ? Integer.BYTES : Long.BYTES;
+        Object array = type == TYPE_INT_ARRAY ? new int[length]
+                : type == TYPE_LONG_ARRAY ? new long[length]
+                : type == TYPE_FLOAT_ARRAY ? new float[length]
+                : new double[length];
+        ByteBuffer scratch = _context._scratch;
+        for (int offset = 0; offset < length; ) {
+            int count = Math.min(length - offset, scratch.capacity() / elementSize);
+            in.readFully(scratch.array(), 0, count * elementSize);
+            scratch.clear().limit(count * elementSize);
+            switch (type) {
+                case TYPE_INT_ARRAY: scratch.asIntBuffer().get((int[])array, offset, count); break;
+                case TYPE_LONG_ARRAY: scratch.asLongBuffer().get((long[])array, offset, count); break;
+                case TYPE_FLOAT_ARRAY: scratch.asFloatBuffer().get((float[])array, offset, count); break;
+                default: scratch.asDoubleBuffer().get((double[])array, offset, count); break;
+            }
+            offset += count;
+        }
+        return array;
+    }
+
+    /**
+     * Adds a field to the field table, growing it if needed
+     * @param type The field type flag
+     * @param name The field name, or null if unnamed
+     * @return The position of the field
+     */
+    private int addField(int type, String name) {
+        if (_fieldCount == _types.length) {
+            int capacity = _fieldCount << 1;
+            _types = Arrays.copyOf(_types, capacity);
+            _names = Arrays.copyOf(_names, capacity);
+            _values = Arrays.copyOf(_values, capacity);
+            _references = Arrays.copyOf(_references, capacity);
+        }
+        _types[_fieldCount] = type;
+        _names[_fieldCount] = name;
+        return _fieldCount++;
+    }
+
+    /**
+     * Clears the field table and the sub-objects of the object read before
+     */
+    private void reset() {
+        Arrays.fill(_names, 0, _fieldCount, null);
+        Arrays.fill(_references, 0, _fieldCount, null);
+        _fieldCount = 0;
+        _subObjectCount = 0;
+        _subObjectsRead = 0;
+        _identity = -1;
+        _fieldBytes = null;
+    }
+
+    /**
+     * Returns the field reader of the object, reset to read from the first field
+     * @return The field reader
+     */
+    private FieldReaderImpl fieldReader() {
+        if (_fieldReader == null) _fieldReader = new FieldReaderImpl();
+        _fieldReader._cursor = 0;
+        _fieldReader._atIndex = -1;
+        _fieldReader._asName = null;
+        return _fieldReader;
+    }
+
+    /**
+     * Registers the field at the given position as the next sub-object on the tape
+     * @param position The field position
+     */
+    private void addSubObject(int position) {
+        if (_subObjectCount == _subObjectPositions.length) {
+            _subObjectPositions = Arrays.copyOf(_subObjectPositions, _subObjectCount << 1);
+        }
+        _values[position] = _subObjectCount;
+        _subObjectPositions[_subObjectCount++] = position;
+    }
+
+    /**
+     * Returns the sub-object of the field at the given position.
+     * @param position The field position
+     * @return The sub-object
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    private Object subObject(int position) throws IOException {
+        readUpTo((int)_values[position] + 1);
+        return _references[position];
+    }
+
+    /**
+     * Returns the sequence reader of the field at the given position
+     * @param position The field position
+     * @return The sequence reader
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    private SequenceReader sequence(int position) throws IOException {
+        readUpTo((int)_values[position]);
+        if (_references[position] == null) _references[position] = new SequenceReader();
+        return (SequenceReader)_references[position];
+    }
+
+    /**
+     * Reads all sub-objects and sequences preceding the given ordinal on the tape.
+     * They are kept, as the handler may request them later.
+     * @param ordinal The ordinal of the sub-object to read up to, exclusive
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    private void readUpTo(int ordinal) throws IOException {
+        while (_subObjectsRead < ordinal) {
+            int position = _subObjectPositions[_subObjectsRead];
+            if (_types[position] == TYPE_FLAG_REF_ARRAY) {
+                sequence(position).finish(true);
+            }
+            else {
+                _references[position] = new TurboTapeV1ObjectReader(_context, false).read(true, null, null);
+            }
+            _subObjectsRead++;
+        }
+    }
+
+    /**
+     * Reads the objects of a sequence, being chunks of objects each prefixed by the number of objects
+     * in the chunk, terminated by an empty chunk. Chunks with the columnar flag set in the count are
+     * column blocks, and chunks with the definitions flag define field names and aliases of the chunks
+     * following them.
+     * <p>
+     * Objects are read from the tape as the iterator is advanced, unless the sequence had to be read ahead
+     * to reach a sub-object following it, in which case the objects read ahead are buffered.
+     */
+    private class SequenceReader implements Iterable<Object>, Iterator<Object> {
+        private final List<Object> _buffered = new ArrayList<>();
+        private int _bufferedRead;
+        private int _remaining;
+        private boolean _ended;
+        private boolean _iterated;
+        // The column block of the current chunk, or null if the chunk is rows
+        private ColumnBlock _block;
+
+        @Override
+        public Iterator<Object> iterator() {
+            if (_iterated) throw new IllegalStateException("Sequence can only be iterated once");
+            _iterated = true;
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return _bufferedRead < _buffered.size() || hasNextOnTape();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Object next() {
+            if (_bufferedRead < _buffered.size()) return _buffered.set(_bufferedRead++, null);
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                return readNext(true);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Reads the rest of the sequence from the tape
+         * @param keep True to build and buffer the objects, false to skip them
+         * @throws IOException If an IO exception occurs, or the tape is malformed
+         */
+        private void finish(boolean keep) throws IOException {
+            while (hasNextOnTape()) {
+                Object object = readNext(keep);
+                if (keep) _buffered.add(object);
+            }
+        }
+
+        /**
+         * Reads the next object of the current chunk
+         * @param build True to build the object, false to only skip past it
+         * @return The object built, or null if not built
+         * @throws IOException If an IO exception occurs, or the tape is malformed
+         */
+        private Object readNext(boolean build) throws IOException {
+            _remaining--;
+            if (_block != null) return build ? _block.build() : _block.skip();
+            return new TurboTapeV1ObjectReader(_context, false).read(build, null, null);
+        }
+
+        /**
+         * Checks if there are more objects on the tape, reading the next chunk size if needed
+         * @return True if there are more objects on the tape
+         * @throws IOException If an IO exception occurs, or the tape is malformed
+         */
+        private boolean hasNextOnTape() throws IOException {
+            if (_ended) return false;
+            if (_remaining == 0) {
+                int count = _context._in.readUnsignedShort();
+                while (count == DEFINITIONS_CHUNK_FLAG) {
+                    _context.readDefinitions();
+                    count = _context._in.readUnsignedShort();
+                }
+                _block = null;
+                if ((count & COLUMNAR_CHUNK_FLAG) != 0) {
+                    count &= ~COLUMNAR_CHUNK_FLAG;
+                    _block = new ColumnBlock(count);
+                }
+                _remaining = count;
+                _ended = _remaining == 0;
+            }
+            return !_ended;
+        }
+    }
+
+    /**
+     * A chunk of a sequence written as a column block, being the type index of the objects, the number of
+     * columns, and then each column as a field header followed by the byte length and the values of the column.
+     * <p>
+     * The raw bytes of the columns are read with the block, and each column is decoded in bulk the first time
+     * it is read. The objects are then built row by row, with a field reader reading from the columns.
+     */
+    private class ColumnBlock {
+        private final int _count;
+        private final ObjectReadHandler<?> _readHandler;
+        private final int[] _types;
+        private final String[] _names;
+        private final ByteBuffer[] _bytes;
+        private final Object[] _decoded;
+        private final ColumnRowReader _rowReader = new ColumnRowReader(this);
+        private int _row;
+
+        /**
+         * Reads the column block following the object count from the tape
+         * @param count The number of objects in the block
+         * @throws IOException If an IO exception occurs, or the tape is malformed
+         */
+        private ColumnBlock(int count) throws IOException {
+            DataInput in = _context._in;
+            if (count == 0 || _context._tracking) throw new StreamCorruptedException("Invalid column block");
+            _count = count;
+
+            int typeIndex = in.readUnsignedShort();
+            String alias = _context._objectResolver.resolveName(typeIndex, _context._readName);
+            if (alias == null) throw new StreamCorruptedException("Column block of null objects");
+            _readHandler = _context._readerProvider.getReadHandler(alias);
+
+            int columnCount = VarInt.readInt(in);
+            if (columnCount <= 0 || columnCount > 1 << 12) {
+                throw new StreamCorruptedException("Invalid column count [" + columnCount + "]");
+            }
+            _types = new int[columnCount];
+            _names = new String[columnCount];
+            _bytes = new ByteBuffer[columnCount];
+            _decoded = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                int header = in.readUnsignedShort();
+                _names[column] = _context._fieldResolver.resolveName(header >>> TYPE_FLAG_SIZE, _context._readName);
+                _types[column] = header & TYPE_FLAG_MASK;
+                switch (_types[column]) {
+                    case TYPE_FLAG_BOOLEAN_TRUE:
+                    case TYPE_FLAG_INTEGER_32:
+                    case TYPE_FLAG_INTEGER_64:
+                    case TYPE_FLAG_FLOAT_32:
+                    case TYPE_FLAG_FLOAT_64:
+                    case TYPE_FLAG_ZIGZAG_32:
+                    case TYPE_FLAG_ZIGZAG_64:
+                    case TYPE_FLAG_STRING:
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Unsupported column type flag [" + _types[column] + "]");
+                }
+                int length = VarInt.readInt(in);
+                if (length < 0) throw new StreamCorruptedException("Invalid column length [" + length + "]");
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                _bytes[column] = ByteBuffer.wrap(bytes);
+            }
+            if (_context._metrics != null) _context._metrics.objectsRead(alias, count, count * columnCount);
+        }
+
+        /**
+         * Builds the object of the next row
+         * @return The object built
+         */
+        private Object build() {
+            Object object = _readHandler.build(_rowReader.reset(_row));
+            _row++;
+            return object;
+        }
+
+        /**
+         * Skips the object of the next row
+         * @return Null, as the object is not built
+         */
+        private Object skip() {
+            _row++;
+            return null;
+        }
+
+        /**
+         * Returns the decoded values of the column, decoding them on first access. Booleans are left as the
+         * bit set, integers and floating point bits of 32 bits are decoded to an int array, of 64 bits to
+         * a long array, and strings to a string array.
+         * @param column The column
+         * @return The values
+         */
+        private Object values(int column) {
+            if (_decoded[column] != null) return _decoded[column];
+            ByteBuffer bytes = _bytes[column].duplicate();
+            try {
+                Object values;
+                switch (_types[column]) {
+                    case TYPE_FLAG_BOOLEAN_TRUE:
+                        if (bytes.remaining() < (_count + Byte.SIZE - 1) / Byte.SIZE) {
+                            throw new BufferUnderflowException();
+                        }
+                        values = bytes.array();
+                        break;
+                    case TYPE_FLAG_INTEGER_32:
+                    case TYPE_FLAG_FLOAT_32: {
+                        int[] ints = new int[_count];
+                        bytes.asIntBuffer().get(ints);
+                        values = ints;
+                        break;
+                    }
+                    case TYPE_FLAG_INTEGER_64:
+                    case TYPE_FLAG_FLOAT_64: {
+                        long[] longs = new long[_count];
+                        bytes.asLongBuffer().get(longs);
+                        values = longs;
+                        break;
+                    }
+                    case TYPE_FLAG_ZIGZAG_32: {
+                        int[] ints = new int[_count];
+                        for (int row = 0; row < _count; row++) {
+                            ints[row] = VarInt.decodeZigZag(VarInt.readInt(bytes));
+                        }
+                        values = ints;
+                        break;
+                    }
+                    case TYPE_FLAG_ZIGZAG_64: {
+                        long[] longs = new long[_count];
+                        for (int row = 0; row < _count; row++) {
+                            longs[row] = VarInt.decodeZigZag(VarInt.readLong(bytes));
+                        }
+                        values = longs;
+                        break;
+                    }
+                    default: {
+                        String[] strings = new String[_count];
+                        for (int row = 0; row < _count; row++) {
+                            int length = VarInt.readInt(bytes);
+                            if (length < 0 || length > bytes.remaining()) throw new BufferUnderflowException();
+                            strings[row] = new String(bytes.array(), bytes.position(), length,
+                                    StandardCharsets.UTF_8);
+                            bytes.position(bytes.position() + length);
+                        }
+                        values = strings;
+                        break;
+                    }
+                }
+                _decoded[column] = values;
+                _bytes[column] = null;
+                return values;
+            }
+            catch (BufferUnderflowException e) {
+                throw new UncheckedIOException(new StreamCorruptedException("Column [" + column + "] too short"));
+            }
+            catch (StreamCorruptedException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Context object shared by all object readers of a tape
+     */
+    static class Context {
+        private final ObjectReadHandlerProvider _readerProvider;
+        // The listener receiving the decoding metrics, or null if not collected
+        private final TurboTapeV1MetricsListener _metrics;
+        private final DataInput _in;
+        private final IOFunction<Integer, String> _readName;
+        private final IndexResolver _fieldResolver = new IndexResolver();
+        private final IndexResolver _objectResolver = new IndexResolver();
+        private final ByteBuffer _scratch = ByteBuffer.allocate(SCRATCH_CAPACITY);
+        private String[] _strings = new String[0];
+        private final List<Object> _identities = new ArrayList<>();
+        private boolean _tracking;
+        private boolean _sized;
+        // The fields of the length prefixed objects, and the strings of other objects, being read,
+        // stacked as nested objects are read
+        private byte[] _arena = new byte[SCRATCH_CAPACITY];
+        private int _arenaTop;
+
+        /**
+         * Creates a context
+         * @param readerProvider The reader provider used to resolve object read handlers
+         * @param metrics The listener receiving the decoding metrics, or null
+         * @param in The Data Input to read from
+         */
+        Context(ObjectReadHandlerProvider readerProvider, TurboTapeV1MetricsListener metrics, DataInput in) {
+            this._readerProvider = readerProvider;
+            this._metrics = metrics;
+            this._in = in;
+            this._readName = index -> in.readUTF();
+        }
+
+        /**
+         * Puts a string in the string value dictionary, replacing any string evicted by the writer
+         * @param slot The dictionary slot
+         * @param value The string
+         * @return The string
+         * @throws IOException If the slot is invalid
+         */
+        private String defineString(int slot, String value) throws IOException {
+            if (slot < 0) throw new StreamCorruptedException("Invalid string dictionary slot [" + slot + "]");
+            if (slot >= _strings.length) {
+                _strings = Arrays.copyOf(_strings, Math.max(slot + 1, _strings.length << 1));
+            }
+            _strings[slot] = value;
+            return value;
+        }
+
+        /**
+         * Reads the fields of a length prefixed object onto the top of the field arena. Fields larger than
+         * the scratch buffer are read into an array of their own, so the arena does not keep growing.
+         * @param length The byte length of the fields
+         * @return The field bytes, valid until the object is read
+         * @throws IOException If an IO exception occurs
+         */
+        private ByteBuffer readFieldBytes(int length) throws IOException {
+            if (length > SCRATCH_CAPACITY) {
+                byte[] bytes = new byte[length];
+                _in.readFully(bytes);
+                return ByteBuffer.wrap(bytes);
+            }
+            int offset = pushArena(length);
+            return ByteBuffer.wrap(_arena, offset, length).slice();
+        }
+
+        /**
+         * Reads bytes onto the top of the field arena, growing it if needed
+         * @param length The number of bytes
+         * @return The offset of the bytes in the arena, valid until the object is read
+         * @throws IOException If an IO exception occurs
+         */
+        private int pushArena(int length) throws IOException {
+            if (length > _arena.length - _arenaTop) {
+                _arena = Arrays.copyOf(_arena, Math.max(_arena.length << 1, _arenaTop + length));
+            }
+            int offset = _arenaTop;
+            _in.readFully(_arena, offset, length);
+            _arenaTop += length;
+            return offset;
+        }
+
+        /**
+         * Reads a definitions chunk following its flag, being the number of field names followed by the index
+         * and name of each, and then the number of aliases followed by the index and alias of each
+         * @throws IOException If an IO exception occurs
+         */
+        private void readDefinitions() throws IOException {
+            for (int count = VarInt.readInt(_in); count > 0; count--) {
+                int index = _in.readUnsignedShort();
+                String name = _in.readUTF();
+                _fieldResolver.resolveName(index, ix -> name);
+            }
+            for (int count = VarInt.readInt(_in); count > 0; count--) {
+                int index = _in.readUnsignedShort();
+                String alias = _in.readUTF();
+                _objectResolver.resolveName(index, ix -> alias);
+            }
+        }
+
+        /**
+         * Looks up a back-referenced object
+         * @param identity The identity number of the object
+         * @return The object
+         * @throws IOException If the identity number is invalid
+         */
+        private Object identity(int identity) throws IOException {
+            if (identity < 0 || identity >= _identities.size()) {
+                throw new StreamCorruptedException("Undefined object back-reference [" + identity + "]");
+            }
+            Object object = _identities.get(identity);
+            if (object == null) {
+                throw new IllegalStateException("Back-reference [" + identity + "] to an object being built, "
+                        + "which must be registered with FieldReader.register before reading its sub-objects");
+            }
+            return object;
+        }
+
+        /**
+         * Looks up a string in the string value dictionary
+         * @param slot The dictionary slot
+         * @return The string
+         * @throws IOException If no string is defined for the slot
+         */
+        private String lookupString(int slot) throws IOException {
+            if (slot < 0 || slot >= _strings.length || _strings[slot] == null) {
+                throw new StreamCorruptedException("Undefined string dictionary slot [" + slot + "]");
+            }
+            return _strings[slot];
+        }
+    }
+
+    /**
+     * Reader which is passed to the read handlers
+     */
     private class FieldReaderImpl implements FieldReader {
+        private int _cursor;
+        private int _atIndex = -1;
+        private String _asName;
 
         @Override
         public FieldReader at(int index) {
-            return null;
+            if (_atIndex >= 0) throw new IllegalStateException("Index already set to [" + _atIndex + "]");
+            if (index < 0) throw new IllegalArgumentException("Negative field index [" + index + "]");
+            _atIndex = index;
+            return this;
         }
 
         @Override
         public FieldReader at() {
-            return null;
+            return at(_cursor);
         }
 
         @Override
         public FieldReader as(String name) {
-            return null;
+            if (_asName != null) throw new IllegalStateException("Name already set to [" + _asName + "]");
+            _asName = name;
+            return this;
         }
 
         @Override
         public int readBool() {
-            return 0;
+            int position = resolve();
+            switch (_types[position]) {
+                case TYPE_FLAG_BOOLEAN_FALSE: return 0;
+                case TYPE_FLAG_BOOLEAN_TRUE: return 1;
+                default: throw mismatch(position, "boolean");
+            }
         }
 
         @Override
         public int readInt() {
-            return 0;
+            int position = resolve();
+            if (isInteger32(_types[position])) return (int)_values[position];
+            throw mismatch(position, "int");
         }
 
         @Override
         public long readLong() {
-            return 0;
+            int position = resolve();
+            int type = _types[position];
+            if (isInteger32(type) || isInteger64(type)) return _values[position];
+            throw mismatch(position, "long");
         }
 
         @Override
         public float readFloat() {
-            return 0;
+            int position = resolve();
+            if (_types[position] == TYPE_FLAG_FLOAT_32) return Float.intBitsToFloat((int)_values[position]);
+            throw mismatch(position, "float");
         }
 
         @Override
         public double readDouble() {
-            return 0;
+            int position = resolve();
+            switch (_types[position]) {
+                case TYPE_FLAG_FLOAT_32: return Float.intBitsToFloat((int)_values[position]);
+                case TYPE_FLAG_FLOAT_64: return Double.longBitsToDouble(_values[position]);
+                default: throw mismatch(position, "double");
+            }
         }
 
         @Override
         public String readString() {
-            return null;
+            int position = resolve();
+            switch (_types[position]) {
+                case TYPE_FLAG_STRING:
+                case TYPE_FLAG_UTF_STRING:
+                case TYPE_STRING_DEFINE:
+                case TYPE_STRING_REF:
+                    return (String)reference(position);
+                default: throw mismatch(position, "String");
+            }
+        }
+
+        @Override
+        public StringView readStringView() {
+            int position = resolve();
+            switch (_types[position]) {
+                case TYPE_FLAG_STRING:
+                    // Strings are viewed in the arena, unless decoded already
+                    if (_references[position] == null) return stringView(position);
+                    return view((String)_references[position]);
+                case TYPE_FLAG_UTF_STRING:
+                case TYPE_STRING_DEFINE:
+                case TYPE_STRING_REF:
+                    return view((String)reference(position));
+                default: throw mismatch(position, "String");
+            }
+        }
+
+        @Override
+        public int[] readIntArray() {
+            return (int[])readArray("int[]", TYPE_INT_ARRAY);
+        }
+
+        @Override
+        public long[] readLongArray() {
+            return (long[])readArray("long[]", TYPE_LONG_ARRAY);
+        }
+
+        @Override
+        public float[] readFloatArray() {
+            return (float[])readArray("float[]", TYPE_FLOAT_ARRAY);
+        }
+
+        @Override
+        public double[] readDoubleArray() {
+            return (double[])readArray("double[]", TYPE_DOUBLE_ARRAY);
+        }
+
+        @Override
+        public byte[] readByteArray() {
+            return (byte[])readArray("byte[]", TYPE_BYTE_ARRAY);
         }
 
         @Override
         public <T> T readObject(Class<T> cls) {
-            return null;
+            int position = resolve();
+            int type = _types[position];
+            if (type != TYPE_FLAG_REF_OBJECT && type != TYPE_OBJECT_BACK_REFERENCE) {
+                throw mismatch(position, cls.getName());
+            }
+            try {
+                if (type == TYPE_OBJECT_BACK_REFERENCE) return cls.cast(_context.identity((int)_values[position]));
+                return cls.cast(subObject(position));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public <T> T register(T object) {
+            if (_identity >= 0) _context._identities.set(_identity, object);
+            return object;
         }
 
         @Override
+        @SuppressWarnings("unchecked")  // Unchecked cast is safe, as the objects are checked as they are returned
         public <T> Iterable<T> readIterable(Class<T> cls) {
-            return null;
+            int position = resolve();
+            if (_types[position] != TYPE_FLAG_REF_ARRAY) throw mismatch(position, "sequence of " + cls.getName());
+            try {
+                Iterable<Object> sequence = sequence(position);
+                return () -> {
+                    Iterator<Object> iterator = sequence.iterator();
+                    return new Iterator<T>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public T next() {
+                            return cls.cast(iterator.next());
+                        }
+                    };
+                };
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Object readArray(String expected, int type) {
+            int position = resolve();
+            if (_types[position] == type) return reference(position);
+            throw mismatch(position, expected);
+        }
+
+        /**
+         * Resolves the field position to read from the name and index specified, or the current
+         * positional index if none is specified. The specification is then cleared for the next read.
+         * @return The position of the field to read
+         */
+        private int resolve() {
+            String name = _asName;
+            int index = _atIndex;
+            _asName = null;
+            _atIndex = -1;
+
+            int position = name != null ? find(name) : -1;
+            if (position < 0) {
+                if (name != null && index < 0) throw new IllegalStateException("No field named [" + name + "]");
+                position = index >= 0 ? index : _cursor;
+            }
+            if (position >= _fieldCount) {
+                throw new IllegalStateException("No field at index [" + position + "], field count is "
+                        + _fieldCount);
+            }
+            _cursor = position + 1;
+            return position;
+        }
+
+        /**
+         * Finds the position of the field with the given name
+         * @param name The name of the field
+         * @return The position, or -1 if not found
+         */
+        private int find(String name) {
+            for (int position = 0; position < _fieldCount; position++) {
+                if (name.equals(_names[position])) return position;
+            }
+            return -1;
+        }
+
+        private IllegalStateException mismatch(int position, String expected) {
+            String field = _names[position] != null ? _names[position] : String.valueOf(position);
+            return new IllegalStateException("Field [" + field + "] with type flag [" + _types[position]
+                    + "] cannot be read as " + expected);
+        }
+    }
+
+    /**
+     * Reader which is passed to the read handlers of objects in column blocks, reading the row of the object
+     * from the columns. Only primitive and string fields are found in column blocks. A block has a single
+     * reader, which is reset for each row.
+     */
+    private static class ColumnRowReader implements FieldReader {
+        private final ColumnBlock _block;
+        private int _row;
+        private int _cursor;
+        private int _atIndex = -1;
+        private String _asName;
+
+        private ColumnRowReader(ColumnBlock block) {
+            _block = block;
+        }
+
+        /**
+         * Prepares the reader for reading a row
+         * @param row The row to read
+         * @return This reader
+         */
+        private ColumnRowReader reset(int row) {
+            _row = row;
+            _cursor = 0;
+            _atIndex = -1;
+            _asName = null;
+            return this;
+        }
+
+        @Override
+        public FieldReader at(int index) {
+            if (_atIndex >= 0) throw new IllegalStateException("Index already set to [" + _atIndex + "]");
+            if (index < 0) throw new IllegalArgumentException("Negative field index [" + index + "]");
+            _atIndex = index;
+            return this;
+        }
+
+        @Override
+        public FieldReader at() {
+            return at(_cursor);
+        }
+
+        @Override
+        public FieldReader as(String name) {
+            if (_asName != null) throw new IllegalStateException("Name already set to [" + _asName + "]");
+            _asName = name;
+            return this;
+        }
+
+        @Override
+        public int readBool() {
+            int column = resolve();
+            if (_block._types[column] != TYPE_FLAG_BOOLEAN_TRUE) throw mismatch(column, "boolean");
+            byte[] bits = (byte[])_block.values(column);
+            return bits[_row / Byte.SIZE] >>> (_row % Byte.SIZE) & 1;
+        }
+
+        @Override
+        public int readInt() {
+            int column = resolve();
+            int type = _block._types[column];
+            if (type != TYPE_FLAG_INTEGER_32 && type != TYPE_FLAG_ZIGZAG_32) throw mismatch(column, "int");
+            return ((int[])_block.values(column))[_row];
+        }
+
+        @Override
+        public long readLong() {
+            int column = resolve();
+            switch (_block._types[column]) {
+                case TYPE_FLAG_INTEGER_32:
+                case TYPE_FLAG_ZIGZAG_32:
+                    return ((int[])_block.values(column))[_row];
+                case TYPE_FLAG_INTEGER_64:
+                case TYPE_FLAG_ZIGZAG_64:
+                    return ((long[])_block.values(column))[_row];
+                default: throw mismatch(column, "long");
+            }
+        }
+
+        @Override
+        public float readFloat() {
+            int column = resolve();
+            if (_block._types[column] != TYPE_FLAG_FLOAT_32) throw mismatch(column, "float");
+            return Float.intBitsToFloat(((int[])_block.values(column))[_row]);
+        }
+
+        @Override
+        public double readDouble() {
+            int column = resolve();
+            switch (_block._types[column]) {
+                case TYPE_FLAG_FLOAT_32: return Float.intBitsToFloat(((int[])_block.values(column))[_row]);
+                case TYPE_FLAG_FLOAT_64: return Double.longBitsToDouble(((long[])_block.values(column))[_row]);
+                default: throw mismatch(column, "double");
+            }
+        }
+
+        @Override
+        public String readString() {
+            int column = resolve();
+            if (_block._types[column] != TYPE_FLAG_STRING) throw mismatch(column, "String");
+            return ((String[])_block.values(column))[_row];
+        }
+
+        @Override
+        public StringView readStringView() {
+            return view(readString());
+        }
+
+        @Override
+        public int[] readIntArray() {
+            throw mismatch(resolve(), "int[]");
+        }
+
+        @Override
+        public long[] readLongArray() {
+            throw mismatch(resolve(), "long[]");
+        }
+
+        @Override
+        public float[] readFloatArray() {
+            throw mismatch(resolve(), "float[]");
+        }
+
+        @Override
+        public double[] readDoubleArray() {
+            throw mismatch(resolve(), "double[]");
+        }
+
+        @Override
+        public byte[] readByteArray() {
+            throw mismatch(resolve(), "byte[]");
+        }
+
+        @Override
+        public <T> T readObject(Class<T> cls) {
+            throw mismatch(resolve(), cls.getName());
+        }
+
+        @Override
+        public <T> T register(T object) {
+            return object;
+        }
+
+        @Override
+        public <T> Iterable<T> readIterable(Class<T> cls) {
+            throw mismatch(resolve(), "sequence of " + cls.getName());
+        }
+
+        /**
+         * Resolves the column to read, the same way {@link FieldReaderImpl} resolves field positions
+         * @return The column to read
+         */
+        private int resolve() {
+            String name = _asName;
+            int index = _atIndex;
+            _asName = null;
+            _atIndex = -1;
+
+            int column = name != null ? find(name) : -1;
+            if (column < 0) {
+                if (name != null && index < 0) throw new IllegalStateException("No field named [" + name + "]");
+                column = index >= 0 ? index : _cursor;
+            }
+            if (column >= _block._types.length) {
+                throw new IllegalStateException("No field at index [" + column + "], field count is "
+                        + _block._types.length);
+            }
+            _cursor = column + 1;
+            return column;
+        }
+
+        private int find(String name) {
+            for (int column = 0; column < _block._names.length; column++) {
+                if (name.equals(_block._names[column])) return column;
+            }
+            return -1;
+        }
+
+        private IllegalStateException mismatch(int column, String expected) {
+            String field = _block._names[column] != null ? _block._names[column] : String.valueOf(column);
+            return new IllegalStateException("Field [" + field + "] with type flag [" + _block._types[column]
+                    + "] cannot be read as " + expected);
         }
     }
 }
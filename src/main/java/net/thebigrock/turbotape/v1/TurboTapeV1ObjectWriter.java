@@ -1,17 +1,37 @@
 package net.thebigrock.turbotape.v1;
 
 import net.thebigrock.turbotape.FieldWriter;
-import net.thebigrock.turbotape.ObjectWriteHandler;
 import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
 import net.thebigrock.turbotape.util.IOConsumer;
 import net.thebigrock.turbotape.util.IndexAllocator;
+import net.thebigrock.turbotape.util.StringDictionary;
+import net.thebigrock.turbotape.util.TapeBuffer;
+import net.thebigrock.turbotape.util.VarInt;
 
-import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import jdk.jfr.EventType;
 
 public class TurboTapeV1ObjectWriter<T> extends TurboTapeV1Protocol {
-    private final Queue<TurboTapeV1ObjectWriter<?>> _objectFifo = new LinkedList<>();
+    // The buffered size at which the tape buffer is drained between sequence chunks
+    private static final int DRAIN_THRESHOLD = 1 << 16;
+    // The longest string value added to the string dictionary
+    static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+    // The number of objects of top level sequences encoded by each parallel task
+    static final int PARALLEL_CHUNK_SIZE = 4 * SEQUENCE_CHUNK_SIZE;
+    // The field name indices available, limited by the bits of the field header left by the type flag
+    private static final int FIELD_INDEX_LIMIT = 1 << (16 - TYPE_FLAG_SIZE);
+    // The type of the flight recorder event, checked before creating an event for each object
+    private static final EventType ENCODE_EVENT_TYPE = EventType.getEventType(TurboTapeV1EncodeEvent.class);
+
     private final Context _context;
     private final T _object;
 
@@ -21,189 +41,1232 @@ public class TurboTapeV1ObjectWriter<T> extends TurboTapeV1Protocol {
      * @param object The initial object to serialize
      */
     TurboTapeV1ObjectWriter(ObjectWriteHandlerProvider writerProvider, T object) {
-        this(new Context(writerProvider), object);
+        this(writerProvider, object, null);
+    }
+
+    /**
+     * Creates the initial object writer, with a drain which is given the tape buffer when it grows large.
+     * <p>
+     * The drain is only called between sequence chunks, and must write out and reset the tape buffer.
+     * This keeps the memory used bounded when serializing sequences of unknown length.
+     *
+     * @param writerProvider The writer provider to use to resolve object writer
+     * @param object The initial object to serialize
+     * @param drain The drain, or null to keep the entire tape in the buffer
+     */
+    TurboTapeV1ObjectWriter(ObjectWriteHandlerProvider writerProvider, T object, IOConsumer<TapeBuffer> drain) {
+        this(new Context(new TurboTapeV1WritePlans(writerProvider), TurboTapeV1WriterOptions.DEFAULT, drain), object);
     }
 
     /**
-     * Creates a writer for a given object
+     * Creates a top level object writer using an existing context, which keeps the object
+     * alias and field name indices allocated by the objects written before it.
      * @param context The writer context
-     * @param object The object to write
+     * @param object The object to serialize
      */
-    private TurboTapeV1ObjectWriter(Context context, T object) {
+    TurboTapeV1ObjectWriter(Context context, T object) {
         this._context = context;
         this._object = object;
     }
 
     /**
-     * Writes the fields to the Data Output
-     * @param out The Data Output to write to
+     * Writes the top level object and its sub-objects to the tape buffer, reporting it to the metrics listener
+     * and the flight recorder if enabled
+     * @param out The tape buffer to write to
+     * @throws IOException If an IO exception occurs
+     */
+    void write(TapeBuffer out) throws IOException {
+        write(_context, out, _object);
+    }
+
+    /**
+     * Writes a top level object like {@link #write(TapeBuffer)}, without creating a writer for it
+     * @param context The writer context
+     * @param out The tape buffer to write to
+     * @param object The object to write
      * @throws IOException If an IO exception occurs
      */
-    void write(DataOutput out) throws IOException {
-        // Get the class writer
-        String objectAlias = _context._writerProvider.getAlias(_object.getClass());
+    static void write(Context context, TapeBuffer out, Object object) throws IOException {
+        // Sub-objects left pending by a failed write are discarded
+        context._pending.clear();
+        TurboTapeV1MetricsListener metrics = context._options.metrics;
+        boolean recorded = ENCODE_EVENT_TYPE.isEnabled();
+        if (metrics == null && !recorded) {
+            writeObject(context, out, object, true);
+            return;
+        }
 
-        // Allocate object type index
-        IndexAllocator.Index index = _context._objectAllocator.allocate(objectAlias);
+        // The event is only created when a recording has enabled it
+        TurboTapeV1EncodeEvent event = recorded ? new TurboTapeV1EncodeEvent() : null;
+        long start = System.nanoTime();
+        long written = context._drainedBytes + out.size();
+        if (event != null) event.begin();
+        writeObject(context, out, object, true);
+        if (event != null) event.end();
+        long bytes = context._drainedBytes + out.size() - written;
+        String alias = object != null ? context._plans.get(object.getClass()).alias : null;
+        if (metrics != null) metrics.encoded(alias, bytes, System.nanoTime() - start);
+        if (event != null && event.shouldCommit()) {
+            event.alias = alias;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes the object, followed by its sub-objects.
+     * <p>
+     * The sub-objects are added to the pending list of the context as the fields are written, and then
+     * written in order. Each sub-object adds its own sub-objects after those of its parent, and removes them
+     * once written, so the list is shared by all objects of the tape without allocating a queue for each.
+     *
+     * @param context The writer context
+     * @param out The tape buffer to write to
+     * @param object The object to write, or null
+     * @param root True if the object is the top level object
+     * @throws IOException If an IO exception occurs
+     */
+    private static void writeObject(Context context, TapeBuffer out, Object object, boolean root)
+            throws IOException {
+        // A null object is represented by the null type index, and carries no fields
+        if (object == null) {
+            out.writeShort(IndexAllocator.NULL_INDEX.index());
+            return;
+        }
+
+        // Length prefixed top level objects are marked by the sized index
+        int start = out.size();
+        boolean sized = context._options.lengthPrefixedObjects;
+        if (sized && root) out.writeShort(SIZED_OBJECT_INDEX);
+
+        // When tracking identity, objects are numbered in the order written, and written only once
+        Map<Object, Integer> identities = context._identities;
+        if (identities != null) {
+            if (root) {
+                identities.clear();
+                out.writeShort(TRACKED_OBJECT_INDEX);
+            }
+            else {
+                Integer identity = identities.get(object);
+                if (identity != null) {
+                    out.writeShort(BACK_REFERENCE_INDEX);
+                    out.writeVarInt(identity);
+                    return;
+                }
+            }
+            identities.put(object, identities.size());
+        }
+
+        // Get the plan of the class, and write the type index
+        TurboTapeV1WritePlans.Plan plan = context._plans.get(object.getClass());
+        context.writeTypeIndex(out, plan);
+
+        // Reserve the lengths of length prefixed objects, filled in once known
+        int lengths = out.size();
+        int definitions = context._definitions;
+        int drains = context._drains;
+        if (sized) {
+            out.writeInt(0);
+            out.writeInt(UNKNOWN_LENGTH);
+        }
+
+        // Execute the class writer to write the object fields, terminated by the end of object marker
+        FieldWriterImpl fieldWriter = context._fieldWriter;
+        List<Object> pending = context._pending;
+        int firstPending = pending.size();
+        try {
+            fieldWriter.begin(out, root);
+            plan.writeHandler.process(fieldWriter, object);
+            fieldWriter.end();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        TurboTapeV1MetricsListener metrics = context._options.metrics;
+        if (metrics != null) metrics.objectsWritten(plan.alias, 1, fieldWriter._fieldCount, out.size() - start);
+        if (sized) out.writeInt(lengths, out.size() - lengths - 2 * Integer.BYTES);
+
+        // Then write the sub-objects, each of which removes its own sub-objects once written
+        int endPending = pending.size();
+        for (int ix = firstPending; ix < endPending; ix++) {
+            Object subObject = pending.set(ix, null);
+            if (subObject instanceof PendingSequence) {
+                PendingSequence sequence = (PendingSequence)subObject;
+                writeSequence(context, out, sequence.sequence, sequence.root);
+            }
+            else {
+                writeObject(context, out, subObject, false);
+            }
+        }
+        for (int ix = endPending - 1; ix >= firstPending; ix--) {
+            pending.remove(ix);
+        }
 
-        // Write the index and potentially the typename
-        out.writeShort(index.index());
-        index.write(out::writeUTF);
+        // The total length is left unknown if the reader cannot skip the object, as it defines indices used
+        // later, or if the buffer holding the reserved length was drained
+        if (sized && definitions == context._definitions && drains == context._drains) {
+            out.writeInt(lengths + Integer.BYTES, out.size() - lengths - 2 * Integer.BYTES);
+        }
+    }
 
-        // Execute the class writer to retrieve the object fields
-        FieldWriterImpl fieldWriter = new FieldWriterImpl();
-        ObjectWriteHandler<T> objectWriter = _context._writerProvider.getWriteHandler(_object.getClass());
-        objectWriter.process(fieldWriter, _object);
+    /**
+     * Writes the sequence as chunks of objects, each prefixed by the number of objects in the chunk.
+     * An empty chunk terminates the sequence.
+     * <p>
+     * Only one chunk of the sequence is pulled from the iterator at the time, so the sequence is never
+     * materialized, and its length need not be known in advance. In columnar mode, chunks which can be
+     * are written as column blocks instead. Sequences of top level objects are encoded in parallel
+     * if enabled.
+     *
+     * @param context The writer context
+     * @param out The tape buffer to write to
+     * @param sequence The sequence
+     * @param root True if the sequence is written by the top level object
+     * @throws IOException If an IO exception occurs
+     */
+    private static void writeSequence(Context context, TapeBuffer out, Iterator<?> sequence, boolean root)
+            throws IOException {
+        if (root && context._shared != null) {
+            new ParallelSequenceWriter(context).write(out, sequence);
+            return;
+        }
 
-        // Write the data
-        fieldWriter.writeData(out);
+        List<Object> chunk = new ArrayList<>();
+        do {
+            chunk.clear();
+            while (chunk.size() < SEQUENCE_CHUNK_SIZE && sequence.hasNext()) {
+                chunk.add(sequence.next());
+            }
+            writeChunk(context, out, chunk);
+            context.drain(out);
+        } while (!chunk.isEmpty());
+    }
 
-        // Then iterate the sub-objects, and write
-        while (!_objectFifo.isEmpty()) {
-            TurboTapeV1ObjectWriter<?> subObjectWriter = _objectFifo.remove();
-            subObjectWriter.write(out);
+    /**
+     * Writes a chunk of a sequence, as a column block if possible, or else as its object count followed
+     * by the objects
+     * @param context The writer context
+     * @param out The tape buffer to write to
+     * @param chunk The objects of the chunk
+     * @throws IOException If an IO exception occurs
+     */
+    private static void writeChunk(Context context, TapeBuffer out, List<Object> chunk) throws IOException {
+        ColumnBlockWriter columnWriter = context._columnWriter;
+        if (columnWriter == null || !columnWriter.write(out, chunk)) {
+            out.writeShort(chunk.size());
+            for (Object element : chunk) {
+                writeObject(context, out, element, false);
+            }
         }
     }
 
 
     /**
-     * Context object containing the class
+     * Context object containing the class write plans and the index allocators, shared by all object
+     * writers of a tape.
      */
-    private static class Context {
-        private final ObjectWriteHandlerProvider _writerProvider;
-        private final IndexAllocator _fieldAllocator = new IndexAllocator(1 << (16 - TYPE_FLAG_SIZE));
-        private final IndexAllocator _objectAllocator = new IndexAllocator(1 << 16);
+    static class Context {
+        private final TurboTapeV1WritePlans _plans;
+        private final TurboTapeV1WriterOptions _options;
+        private final IndexAllocator _fieldAllocator = new IndexAllocator(FIELD_INDEX_LIMIT);
+        private final IndexAllocator _objectAllocator = new IndexAllocator(OBJECT_INDEX_LIMIT);
+        // The type index allocated for each write plan on this tape, by plan number, or 0 if not allocated
+        private int[] _typeIndices = new int[0];
+        private final FieldWriterImpl _fieldWriter = new FieldWriterImpl(this);
+        private final ColumnBlockWriter _columnWriter;
+        private final StringDictionary _stringDictionary;
+        private final Map<Object, Integer> _identities;
+        private IOConsumer<TapeBuffer> _drain;
+        // The sub-objects and sequences of the objects being written, not yet written
+        private final List<Object> _pending = new ArrayList<>();
+        // The number of definitions written inline, and of drains, telling if a length prefixed object can be skipped
+        private int _definitions;
+        private int _drains;
+        // The number of bytes passed to the drain
+        private long _drainedBytes;
+        // The indices shared with the contexts encoding parallel chunks, or null if not encoding in parallel
+        private final SharedIndices _shared;
+        // The field names and plans first used by the context of a parallel chunk, or null if not a chunk
+        private final List<String> _chunkFields;
+        private final List<TurboTapeV1WritePlans.Plan> _chunkPlans;
+
+        /**
+         * Creates a context
+         * @param plans The write plans of the classes written
+         * @param options The encoding options
+         * @param drain The drain for the tape buffer when it grows large, or null
+         */
+        Context(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options, IOConsumer<TapeBuffer> drain) {
+            this(plans, options, drain,
+                    options.parallelPool != null && !options.trackIdentity ? new SharedIndices() : null, false);
+        }
+
+        /**
+         * Creates a context
+         * @param plans The write plans of the classes written
+         * @param options The encoding options
+         * @param drain The drain for the tape buffer when it grows large, or null
+         * @param shared The indices shared by the contexts encoding parallel chunks, or null
+         * @param chunk True if the context encodes a parallel chunk
+         */
+        private Context(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options, IOConsumer<TapeBuffer> drain,
+                        SharedIndices shared, boolean chunk) {
+            this._plans = plans;
+            this._options = options;
+            this._stringDictionary = options.stringDictionaryCapacity > 0
+                    ? new StringDictionary(options.stringDictionaryCapacity) : null;
+            this._identities = options.trackIdentity ? new IdentityHashMap<>() : null;
+            this._columnWriter = options.columnarSequences && !options.trackIdentity
+                    ? new ColumnBlockWriter(this) : null;
+            this._drain = drain;
+            this._shared = shared;
+            this._chunkFields = chunk ? new ArrayList<>() : null;
+            this._chunkPlans = chunk ? new ArrayList<>() : null;
+        }
+
+        /**
+         * Resets the context for writing a new tape, forgetting the indices, strings and objects of the tape
+         * written before, while keeping the memory allocated for them
+         * @param drain The drain for the tape buffer when it grows large, or null
+         */
+        void reset(IOConsumer<TapeBuffer> drain) {
+            _fieldAllocator.reset();
+            _objectAllocator.reset();
+            Arrays.fill(_typeIndices, 0);
+            if (_stringDictionary != null) _stringDictionary.clear();
+            if (_identities != null) _identities.clear();
+            if (_shared != null) _shared.reset();
+            _pending.clear();
+            _fieldWriter.clearPending();
+            _drain = drain;
+            _definitions = 0;
+            _drains = 0;
+            _drainedBytes = 0;
+        }
+
+        /**
+         * Returns the number of definitions and drains written so far. The tape written before an object can
+         * only be kept without the object, if the object failed, when this has not changed while writing it,
+         * as indices and strings are otherwise only defined by the object, or part of it is already written out.
+         * @return The number of definitions and drains
+         */
+        int revision() {
+            return _definitions + _drains;
+        }
+
+        /**
+         * Writes the type index of the plan, and its alias the first time the type is written to the tape.
+         * Parallel chunks leave the alias to be defined ahead of the chunk.
+         * @param out The tape buffer to write to
+         * @param plan The write plan
+         */
+        private void writeTypeIndex(TapeBuffer out, TurboTapeV1WritePlans.Plan plan) {
+            int index = typeIndex(plan);
+            if (index == 0) {
+                index = allocateTypeIndex(plan);
+                out.writeShort(index);
+                if (_chunkPlans != null) _chunkPlans.add(plan);
+                else if (_shared == null || SharedIndices.define(_shared._definedAliases, index)) {
+                    out.write(plan.encodedAlias);
+                    _definitions++;
+                    if (_options.metrics != null) _options.metrics.aliasAllocated(plan.alias, index);
+                }
+            }
+            else {
+                out.writeShort(index);
+            }
+        }
+
+        /**
+         * Writes a field header, and the field name the first time it is written to the tape.
+         * Parallel chunks leave the name to be defined ahead of the chunk.
+         * @param out The tape buffer to write to
+         * @param name The field name, or null if unnamed
+         * @param type The type flag of the field
+         * @throws UTFDataFormatException If the name is too long
+         */
+        private void writeFieldHeader(TapeBuffer out, String name, int type) throws UTFDataFormatException {
+            // Look up the name index, allocating it if the name is new
+            int index = 0;
+            boolean newName = false;
+            if (name != null) {
+                index = _fieldAllocator.find(name);
+                if (index == 0 && _shared == null) {
+                    index = _fieldAllocator.allocateNew(name);
+                    newName = true;
+                }
+                else if (index == 0) {
+                    index = _shared.fieldIndex(name);
+                    _fieldAllocator.assign(name, index);
+                    if (_chunkFields != null) _chunkFields.add(name);
+                    else newName = SharedIndices.define(_shared._definedFields, index);
+                }
+            }
+
+            out.writeShort(index << TYPE_FLAG_SIZE | (type & TYPE_FLAG_MASK));
+            if (newName) {
+                out.writeUTF(name);
+                _definitions++;
+                if (_options.metrics != null) _options.metrics.fieldNameAllocated(name, index);
+            }
+            if ((type & TYPE_FLAG_MASK) == TYPE_FLAG_EXTENDED) out.writeByte(type >>> EXTENDED_TYPE_SHIFT);
+        }
+
+        /**
+         * Returns the type index allocated for the plan on this tape
+         * @param plan The write plan
+         * @return The type index, or 0 if not allocated
+         */
+        private int typeIndex(TurboTapeV1WritePlans.Plan plan) {
+            return plan.number < _typeIndices.length ? _typeIndices[plan.number] : 0;
+        }
+
+        /**
+         * Allocates a new type index for the plan on this tape
+         * @param plan The write plan
+         * @return The type index
+         */
+        private int allocateTypeIndex(TurboTapeV1WritePlans.Plan plan) {
+            int index = _shared != null ? _shared.aliasIndex(plan.alias) : _objectAllocator.allocateNew(plan.alias);
+            if (plan.number >= _typeIndices.length) {
+                _typeIndices = Arrays.copyOf(_typeIndices, Math.max(plan.number + 1, _typeIndices.length << 1));
+            }
+            _typeIndices[plan.number] = index;
+            return index;
+        }
 
-        private Context(ObjectWriteHandlerProvider writerProvider) {
-            this._writerProvider = writerProvider;
+        /**
+         * Passes the tape buffer to the drain, if there is one and the buffer has grown large
+         * @param out The tape buffer
+         * @throws IOException If thrown by the drain
+         */
+        private void drain(TapeBuffer out) throws IOException {
+            if (_drain != null && out.size() >= DRAIN_THRESHOLD) {
+                _drainedBytes += out.size();
+                _drain.accept(out);
+                _drains++;
+            }
         }
     }
 
     /**
-     * Writer which is passed to serialization methods
+     * Writer which is passed to serialization methods.
+     * <p>
+     * Since the name of a field is given after its value, the writer keeps the last written field pending
+     * until the next field is written or the object ends, and then writes it straight to the tape buffer.
+     * The writer is its own {@link FieldWriter.Allocator}, naming the pending field, so writing a primitive
+     * field does not allocate. As objects are written one at the time, one instance is shared by the context.
      */
-    private class FieldWriterImpl implements FieldWriter {
-        private final Queue<FieldEntry> _fieldFifo = new LinkedList<>();
+    private static class FieldWriterImpl implements FieldWriter, FieldWriter.Allocator {
+        private static final int NO_FIELD = -1;
+
+        private final Context _context;
+        private TapeBuffer _out;
+        private boolean _root;
+        // The number of fields written of the object
+        private int _fieldCount;
+
+        // The pending field
+        private int _type = NO_FIELD;
+        private String _name;
+        private long _value;
+        private String _string;
+        private Object _array;
+
+        private FieldWriterImpl(Context context) {
+            _context = context;
+        }
+
+        /**
+         * Starts writing the fields of an object
+         * @param out The tape buffer to write the fields to
+         * @param root True if the object is the top level object
+         */
+        private void begin(TapeBuffer out, boolean root) {
+            clearPending();
+            _out = out;
+            _root = root;
+            _fieldCount = 0;
+        }
+
+        /**
+         * Drops the pending field, such as one left by a write handler which failed
+         */
+        private void clearPending() {
+            _type = NO_FIELD;
+            _name = null;
+            _string = null;
+            _array = null;
+        }
+
+        /**
+         * Writes the pending field, and the end of object marker
+         */
+        private void end() {
+            writePending();
+            _out.writeShort(TYPE_FLAG_END_OBJECT);
+            _out = null;
+        }
 
         @Override
         public Allocator write(boolean value) {
-            return add(new FieldEntry(value ? TYPE_FLAG_BOOLEAN_TRUE : TYPE_FLAG_BOOLEAN_FALSE));
+            return pending(value ? TYPE_FLAG_BOOLEAN_TRUE : TYPE_FLAG_BOOLEAN_FALSE, 0);
         }
 
         @Override
         public Allocator write(int value) {
-            return add(new DataFieldEntry(TYPE_FLAG_INTEGER_32, out -> out.writeInt(value)));
+            if (_context._options.compactIntegers) return compact(value, Integer.BYTES);
+            return pending(TYPE_FLAG_INTEGER_32, value);
         }
 
         @Override
         public Allocator write(long value) {
-            return add(new DataFieldEntry(TYPE_FLAG_INTEGER_64, out -> out.writeLong(value)));
+            if (_context._options.compactIntegers) return compact(value, Long.BYTES);
+            return pending(TYPE_FLAG_INTEGER_64, value);
+        }
+
+        @Override
+        public Allocator writeCompact(int value) {
+            return compact(value, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Allocator writeCompact(long value) {
+            return compact(value, Integer.MAX_VALUE);
         }
 
         @Override
         public Allocator write(float value) {
-            return add(new DataFieldEntry(TYPE_FLAG_FLOAT_32, out -> out.writeFloat(value)));
+            return pending(TYPE_FLAG_FLOAT_32, Float.floatToRawIntBits(value));
         }
 
         @Override
         public Allocator write(double value) {
-            return add(new DataFieldEntry(TYPE_FLAG_FLOAT_64, out -> out.writeDouble(value)));
+            return pending(TYPE_FLAG_FLOAT_64, Double.doubleToRawLongBits(value));
         }
 
         @Override
         public Allocator write(String value) {
-            return add(new DataFieldEntry(TYPE_FLAG_UTF_STRING, out -> out.writeUTF(value)));
+            StringDictionary dictionary = _context._stringDictionary;
+            if (dictionary == null || value == null || value.length() > MAX_DICTIONARY_STRING_LENGTH) {
+                pending(TYPE_FLAG_STRING, 0);
+                _string = value;
+                return this;
+            }
+
+            // Repeated values are written as a reference to their dictionary slot
+            int slot = dictionary.find(value);
+            if (slot >= 0) return pending(TYPE_STRING_REF, slot);
+            pending(TYPE_STRING_DEFINE, dictionary.add(value));
+            _string = value;
+            _context._definitions++;
+            return this;
+        }
+
+        @Override
+        public Allocator write(int[] values) {
+            return pendingArray(TYPE_INT_ARRAY, values);
+        }
+
+        @Override
+        public Allocator write(long[] values) {
+            return pendingArray(TYPE_LONG_ARRAY, values);
+        }
+
+        @Override
+        public Allocator write(float[] values) {
+            return pendingArray(TYPE_FLOAT_ARRAY, values);
+        }
+
+        @Override
+        public Allocator write(double[] values) {
+            return pendingArray(TYPE_DOUBLE_ARRAY, values);
+        }
+
+        @Override
+        public Allocator write(byte[] values) {
+            return pendingArray(TYPE_BYTE_ARRAY, values);
         }
 
         @Override
         public <T> Allocator write(T object) {
-            Allocator objectAllocator = add(new FieldEntry(TYPE_FLAG_REF_OBJECT));
-            _objectFifo.add(new TurboTapeV1ObjectWriter<T>(_context, object));
-            return objectAllocator;
+            Map<Object, Integer> identities = _context._identities;
+            if (identities != null && object != null) {
+                Integer identity = identities.get(object);
+                if (identity != null) return pending(TYPE_OBJECT_BACK_REFERENCE, identity);
+            }
+            pending(TYPE_FLAG_REF_OBJECT, 0);
+            _context._pending.add(object);
+            return this;
         }
 
         @Override
         public <T> Allocator write(Iterator<T> objects) {
-            throw new UnsupportedOperationException("NOT IMPLEMENTED");
+            pending(TYPE_FLAG_REF_ARRAY, 0);
+            _context._pending.add(new PendingSequence(objects, _root));
+            return this;
         }
 
-        private Allocator add(FieldEntry entry) {
-            _fieldFifo.add(entry);
-            return entry;
+        /**
+         * Specifies a name for the pending field
+         * @param name The name to give the field
+         */
+        @Override
+        public void as(String name) {
+            if (_type == NO_FIELD) throw new IllegalStateException("No field written to name [" + name + "]");
+            _name = name;
+        }
+
+        /**
+         * Makes the primitive array pending
+         * @param type The extended type of the array
+         * @param array The array
+         * @return The allocator naming the field
+         */
+        private Allocator pendingArray(int type, Object array) {
+            Objects.requireNonNull(array, "Array field must not be null");
+            pending(type, 0);
+            _array = array;
+            return this;
+        }
+
+        /**
+         * Makes the integer pending as an unsigned varint if it is non-negative, or else ZigZag encoded,
+         * unless the variable length encoding is not smaller than the fixed size
+         * @param value The value
+         * @param fixedSize The size of the fixed size encoding, or {@link Integer#MAX_VALUE} to always use a varint
+         * @return The allocator naming the field
+         */
+        private Allocator compact(int value, int fixedSize) {
+            int type = value >= 0 ? TYPE_FLAG_VARINT_32 : TYPE_FLAG_ZIGZAG_32;
+            int encoded = value >= 0 ? value : VarInt.encodeZigZag(value);
+            if (VarInt.sizeOf(encoded) >= fixedSize) return pending(TYPE_FLAG_INTEGER_32, value);
+            return pending(type, encoded);
+        }
+
+        /**
+         * Makes the long pending as an unsigned varint if it is non-negative, or else ZigZag encoded,
+         * unless the variable length encoding is not smaller than the fixed size
+         * @param value The value
+         * @param fixedSize The size of the fixed size encoding, or {@link Integer#MAX_VALUE} to always use a varint
+         * @return The allocator naming the field
+         */
+        private Allocator compact(long value, int fixedSize) {
+            int type = value >= 0 ? TYPE_FLAG_VARINT_64 : TYPE_FLAG_ZIGZAG_64;
+            long encoded = value >= 0 ? value : VarInt.encodeZigZag(value);
+            if (VarInt.sizeOf(encoded) >= fixedSize) return pending(TYPE_FLAG_INTEGER_64, value);
+            return pending(type, encoded);
+        }
+
+        /**
+         * Writes the previous pending field, and makes the given field pending
+         * @param type The type flag of the field
+         * @param value The primitive value, or the raw bits of floating point values
+         * @return The allocator naming the field
+         */
+        private Allocator pending(int type, long value) {
+            writePending();
+            _type = type;
+            _value = value;
+            return this;
         }
 
-        private void writeData(DataOutput out) throws IOException {
-            while (!_fieldFifo.isEmpty()) {
-                FieldEntry field = _fieldFifo.remove();
-                field.write(out);
+        /**
+         * Writes the pending field to the tape buffer, if any
+         */
+        private void writePending() {
+            if (_type == NO_FIELD) return;
+
+            _fieldCount++;
+            try {
+                _context.writeFieldHeader(_out, _name, _type);
+                switch (_type) {
+                    case TYPE_FLAG_INTEGER_32:
+                    case TYPE_FLAG_FLOAT_32:
+                        _out.writeInt((int)_value);
+                        break;
+                    case TYPE_FLAG_INTEGER_64:
+                    case TYPE_FLAG_FLOAT_64:
+                        _out.writeLong(_value);
+                        break;
+                    case TYPE_FLAG_VARINT_32:
+                    case TYPE_FLAG_ZIGZAG_32:
+                        _out.writeVarInt((int)_value);
+                        break;
+                    case TYPE_FLAG_VARINT_64:
+                    case TYPE_FLAG_ZIGZAG_64:
+                        _out.writeVarLong(_value);
+                        break;
+                    case TYPE_FLAG_STRING:
+                        _out.writeString(_string);
+                        break;
+                    case TYPE_STRING_DEFINE:
+                        _out.writeVarInt((int)_value);
+                        _out.writeString(_string);
+                        break;
+                    case TYPE_STRING_REF:
+                    case TYPE_OBJECT_BACK_REFERENCE:
+                        _out.writeVarInt((int)_value);
+                        break;
+                    case TYPE_INT_ARRAY:
+                        _out.writeVarInt(((int[])_array).length);
+                        _out.writeInts((int[])_array);
+                        break;
+                    case TYPE_LONG_ARRAY:
+                        _out.writeVarInt(((long[])_array).length);
+                        _out.writeLongs((long[])_array);
+                        break;
+                    case TYPE_FLOAT_ARRAY:
+                        _out.writeVarInt(((float[])_array).length);
+                        _out.writeFloats((float[])_array);
+                        break;
+                    case TYPE_DOUBLE_ARRAY:
+                        _out.writeVarInt(((double[])_array).length);
+                        _out.writeDoubles((double[])_array);
+                        break;
+                    case TYPE_BYTE_ARRAY:
+                        _out.writeVarInt(((byte[])_array).length);
+                        _out.write((byte[])_array);
+                        break;
+                }
+            }
+            catch (UTFDataFormatException e) {
+                throw new UncheckedIOException(e);
+            }
+            finally {
+                clearPending();
             }
         }
     }
 
     /**
-     * The simplest possible field, which consist of a single token without any value
+     * Writes chunks of a sequence as column blocks, when all objects of the chunk are of the same class,
+     * write the same primitive and string fields in the same order, and there are at least two of them.
+     * <p>
+     * The handler of each object is run against this writer, capturing the fields into columns. If the objects
+     * turn out not to fit, nothing is written, and the chunk is written as rows instead, running the handlers
+     * again, which is why columnar sequences require repeatable handlers. Classes writing fields which cannot
+     * be columns are remembered, so their handlers run only once. The columns are kept for the next chunk.
+     * <p>
+     * A column block is the object count with the columnar flag set, the type index, the number of columns,
+     * and then each column as a field header, followed by the byte length and the values of the column.
      */
-    private class FieldEntry implements FieldWriter.Allocator {
+    private static class ColumnBlockWriter implements FieldWriter, FieldWriter.Allocator {
+        private static final int INITIAL_BODY_CAPACITY = 1024;
 
-        private final int type;
-        private IndexAllocator.Index index;
+        private final Context _context;
+        private final TapeBuffer _body = new TapeBuffer(INITIAL_BODY_CAPACITY);
+        private final List<Column> _columns = new ArrayList<>();
+        // The columns of earlier chunks by field position, reused by the next
+        private final List<Column> _columnPool = new ArrayList<>();
+        private final BitSet _rowOnlyPlans = new BitSet();
+
+        // The capture state
+        private int _row;
+        private int _field;
+        private boolean _named;
+        private boolean _failed;
+        private boolean _unsupported;
+
+        private ColumnBlockWriter(Context context) {
+            _context = context;
+        }
 
         /**
-         * Create a field for the type flag and
-         * @param typeFlag The field type flag
+         * Writes the chunk as a column block, if it fits
+         * @param out The tape buffer to write to
+         * @param chunk The objects of the chunk
+         * @return True if written, false if the chunk must be written as rows
+         * @throws IOException If an IO exception occurs
          */
-        public FieldEntry(int typeFlag) {
-            this.type = typeFlag;
-            this.index = IndexAllocator.NULL_INDEX;
+        private boolean write(TapeBuffer out, List<Object> chunk) throws IOException {
+            if (chunk.size() < 2 || chunk.get(0) == null) return false;
+            Class<?> cls = chunk.get(0).getClass();
+            for (Object object : chunk) {
+                if (object == null || object.getClass() != cls) return false;
+            }
+            TurboTapeV1WritePlans.Plan plan = _context._plans.get(cls);
+            if (_rowOnlyPlans.get(plan.number)) return false;
+
+            // Capture the fields of all objects
+            _columns.clear();
+            _failed = false;
+            _unsupported = false;
+            try {
+                for (_row = 0; _row < chunk.size() && !_failed; _row++) {
+                    _field = 0;
+                    _named = false;
+                    plan.writeHandler.process(this, chunk.get(_row));
+                    endField();
+                    if (_field != _columns.size()) _failed = true;
+                }
+                if (_unsupported) _rowOnlyPlans.set(plan.number);
+                if (_failed || _columns.isEmpty()) return false;
+                writeBlock(out, plan, chunk.size());
+                return true;
+            }
+            finally {
+                // Drop the strings captured, so the columns kept do not hold on to them
+                for (Column column : _columns) {
+                    column.clear(_row);
+                }
+            }
         }
 
         /**
-         * Writes the field content to the data output
-         * @param out The Data output to write to
-         * @throws IOException If data writer raises one
+         * Writes the columns captured as a column block
+         * @param out The tape buffer to write to
+         * @param plan The plan of the objects
+         * @param count The number of objects
+         * @throws IOException If an IO exception occurs
          */
-        public void write(DataOutput out) throws IOException {
-            out.writeShort(index.index() << 4 | this.type);
-            index.write(out::writeUTF);
+        private void writeBlock(TapeBuffer out, TurboTapeV1WritePlans.Plan plan, int count) throws IOException {
+
+            // Write the block
+            int start = out.size();
+            out.writeShort(count | COLUMNAR_CHUNK_FLAG);
+            _context.writeTypeIndex(out, plan);
+            out.writeVarInt(_columns.size());
+            for (Column column : _columns) {
+                _context.writeFieldHeader(out, column.name, column.type);
+                _body.reset();
+                column.writeValues(_body, count);
+                out.writeVarInt(_body.size());
+                out.write(_body);
+            }
+            TurboTapeV1MetricsListener metrics = _context._options.metrics;
+            if (metrics != null) {
+                metrics.objectsWritten(plan.alias, count, count * _columns.size(), out.size() - start);
+            }
+        }
+
+        @Override
+        public Allocator write(boolean value) {
+            return capture(TYPE_FLAG_BOOLEAN_TRUE, value ? 1 : 0, null);
+        }
+
+        @Override
+        public Allocator write(int value) {
+            return capture(_context._options.compactIntegers ? TYPE_FLAG_ZIGZAG_32 : TYPE_FLAG_INTEGER_32,
+                    value, null);
+        }
+
+        @Override
+        public Allocator write(long value) {
+            return capture(_context._options.compactIntegers ? TYPE_FLAG_ZIGZAG_64 : TYPE_FLAG_INTEGER_64,
+                    value, null);
+        }
+
+        @Override
+        public Allocator writeCompact(int value) {
+            return capture(TYPE_FLAG_ZIGZAG_32, value, null);
+        }
+
+        @Override
+        public Allocator writeCompact(long value) {
+            return capture(TYPE_FLAG_ZIGZAG_64, value, null);
+        }
+
+        @Override
+        public Allocator write(float value) {
+            return capture(TYPE_FLAG_FLOAT_32, Float.floatToRawIntBits(value), null);
+        }
+
+        @Override
+        public Allocator write(double value) {
+            return capture(TYPE_FLAG_FLOAT_64, Double.doubleToRawLongBits(value), null);
+        }
+
+        @Override
+        public Allocator write(String value) {
+            if (value == null) return unsupported();
+            return capture(TYPE_FLAG_STRING, 0, value);
+        }
+
+        @Override
+        public Allocator write(int[] values) {
+            return unsupported();
+        }
+
+        @Override
+        public Allocator write(long[] values) {
+            return unsupported();
+        }
+
+        @Override
+        public Allocator write(float[] values) {
+            return unsupported();
+        }
+
+        @Override
+        public Allocator write(double[] values) {
+            return unsupported();
+        }
+
+        @Override
+        public Allocator write(byte[] values) {
+            return unsupported();
+        }
+
+        @Override
+        public <T> Allocator write(T object) {
+            return unsupported();
+        }
+
+        @Override
+        public <T> Allocator write(Iterator<T> objects) {
+            return unsupported();
         }
 
         /**
-         * Specifies a name for the field
+         * Names the last field captured, which must match the name of its column
          * @param name The name to give the field
          */
         @Override
         public void as(String name) {
-            index = _context._fieldAllocator.allocate(name);
+            if (_field == 0) throw new IllegalStateException("No field written to name [" + name + "]");
+            if (_failed) return;
+            Column column = _columns.get(_field - 1);
+            if (_row == 0) column.name = name;
+            else if (!name.equals(column.name)) _failed = true;
+            _named = true;
+        }
+
+        /**
+         * Captures a field value into the column at the field position
+         * @param type The column type
+         * @param value The primitive value, or the raw bits of floating point values
+         * @param string The string value
+         * @return The allocator naming the field
+         */
+        private Allocator capture(int type, long value, String string) {
+            endField();
+            if (_failed) {
+                _field++;
+                return this;
+            }
+            if (_row == 0) _columns.add(column(type));
+            Column column = _field < _columns.size() ? _columns.get(_field) : null;
+            if (column == null || column.type != type) {
+                _failed = true;
+            }
+            else {
+                column.values[_row] = value;
+                if (string != null) column.strings[_row] = string;
+            }
+            _field++;
+            _named = false;
+            return this;
+        }
+
+        /**
+         * Checks that the last field captured was named if its column is
+         */
+        private void endField() {
+            if (_field > 0 && !_named && !_failed && _row > 0 && _columns.get(_field - 1).name != null) {
+                _failed = true;
+            }
+        }
+
+        private Allocator unsupported() {
+            _failed = true;
+            _unsupported = true;
+            _field++;
+            return this;
+        }
+
+        /**
+         * Returns the column at the field position, reusing the one of an earlier chunk
+         * @param type The column type
+         * @return The column
+         */
+        private Column column(int type) {
+            if (_field == _columnPool.size()) _columnPool.add(new Column(SEQUENCE_CHUNK_SIZE));
+            Column column = _columnPool.get(_field);
+            column.reset(type);
+            return column;
         }
     }
 
     /**
-     * Field containing a value writer
+     * The values captured for a column of a column block
      */
-    private class DataFieldEntry extends FieldEntry {
+    private static class Column {
+        private final long[] values;
+        private String[] strings;
+        private int type;
+        private String name;
 
-        private final IOConsumer<DataOutput> valueWriter;
+        private Column(int capacity) {
+            this.values = new long[capacity];
+        }
 
         /**
-         * Create a field for the type flag and
-         *
-         * @param typeFlag The field type flag
+         * Prepares the column for the values of a chunk
+         * @param type The column type
          */
-        public DataFieldEntry(int typeFlag, IOConsumer<DataOutput> valueWriter) {
-            super(typeFlag);
-            this.valueWriter = valueWriter;
+        private void reset(int type) {
+            this.type = type;
+            this.name = null;
+            if (type == TYPE_FLAG_STRING && strings == null) strings = new String[values.length];
         }
 
         /**
-         * Overrides the write function to also output the value
-         * @param out The Data output to write to
-         * @throws IOException If thrown by DataOutput
+         * Drops the strings captured
+         * @param count The number of values captured
          */
-        @Override
-        public void write(DataOutput out) throws IOException {
-            super.write(out);
-            this.valueWriter.accept(out);
+        private void clear(int count) {
+            if (strings != null) Arrays.fill(strings, 0, Math.min(count, strings.length), null);
+        }
+
+        /**
+         * Writes the values. Booleans are written as a bit set, with the first value in the least significant
+         * bit of the first byte, integers ZigZag encoded or at fixed size, and strings as in their fields.
+         * @param out The tape buffer to write to
+         * @param count The number of values
+         */
+        private void writeValues(TapeBuffer out, int count) {
+            switch (type) {
+                case TYPE_FLAG_BOOLEAN_TRUE:
+                    for (int offset = 0; offset < count; offset += Byte.SIZE) {
+                        int bits = 0;
+                        for (int bit = 0; bit < Byte.SIZE && offset + bit < count; bit++) {
+                            bits |= (int)values[offset + bit] << bit;
+                        }
+                        out.writeByte(bits);
+                    }
+                    break;
+                case TYPE_FLAG_INTEGER_32:
+                case TYPE_FLAG_FLOAT_32:
+                    for (int row = 0; row < count; row++) out.writeInt((int)values[row]);
+                    break;
+                case TYPE_FLAG_INTEGER_64:
+                case TYPE_FLAG_FLOAT_64:
+                    for (int row = 0; row < count; row++) out.writeLong(values[row]);
+                    break;
+                case TYPE_FLAG_ZIGZAG_32:
+                    for (int row = 0; row < count; row++) out.writeVarInt(VarInt.encodeZigZag((int)values[row]));
+                    break;
+                case TYPE_FLAG_ZIGZAG_64:
+                    for (int row = 0; row < count; row++) out.writeVarLong(VarInt.encodeZigZag(values[row]));
+                    break;
+                case TYPE_FLAG_STRING:
+                    for (int row = 0; row < count; row++) out.writeString(strings[row]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The field name and alias indices of a tape encoded with parallel chunks. All contexts of the tape allocate
+     * their indices here, so each name has the same index in every chunk, while the names are only defined
+     * on the tape by the thread writing it, at the first chunk or object using them.
+     */
+    private static class SharedIndices {
+        private final Map<String, Integer> _fields = new ConcurrentHashMap<>();
+        private final Map<String, Integer> _aliases = new ConcurrentHashMap<>();
+        private final AtomicInteger _nextField = new AtomicInteger(1);
+        private final AtomicInteger _nextAlias = new AtomicInteger(1);
+        // The indices defined on the tape so far, only accessed by the thread writing the tape
+        private final BitSet _definedFields = new BitSet();
+        private final BitSet _definedAliases = new BitSet();
+
+        private int fieldIndex(String name) {
+            return _fields.computeIfAbsent(name, key -> next(_nextField, FIELD_INDEX_LIMIT));
+        }
+
+        private int aliasIndex(String alias) {
+            return _aliases.computeIfAbsent(alias, key -> next(_nextAlias, OBJECT_INDEX_LIMIT));
+        }
+
+        private static int next(AtomicInteger counter, int limit) {
+            int index = counter.getAndIncrement();
+            if (index >= limit) throw new IndexOutOfBoundsException("Index limit [" + limit + "] exceeded");
+            return index;
+        }
+
+        /**
+         * Marks the index defined on the tape
+         * @param defined The defined indices
+         * @param index The index
+         * @return True if the index was not defined before, and must be defined now
+         */
+        private static boolean define(BitSet defined, int index) {
+            if (defined.get(index)) return false;
+            defined.set(index);
+            return true;
+        }
+
+        private void reset() {
+            _fields.clear();
+            _aliases.clear();
+            _nextField.set(1);
+            _nextAlias.set(1);
+            _definedFields.clear();
+            _definedAliases.clear();
+        }
+    }
+
+    /**
+     * A sequence written by an object, pending until the fields of the object are written
+     */
+    private static class PendingSequence {
+        private final Iterator<?> sequence;
+        private final boolean root;
+
+        private PendingSequence(Iterator<?> sequence, boolean root) {
+            this.sequence = sequence;
+            this.root = root;
+        }
+    }
+
+    /**
+     * Writes a sequence of a top level object in chunks of {@link #PARALLEL_CHUNK_SIZE} objects, encoded
+     * concurrently on the parallel pool, each into a tape buffer of its own using a context of its own.
+     * <p>
+     * The encoded chunks are written to the tape in sequence order, each preceded by a definitions chunk
+     * with the field names and aliases it uses which are not yet defined on the tape. The sequence is pulled
+     * from the iterator as the chunks are written, with at most two chunks per thread of the pool in progress.
+     */
+    private static class ParallelSequenceWriter {
+        private static final int INITIAL_CHUNK_CAPACITY = 1 << 12;
+
+        private final Context _context;
+        private final TurboTapeV1WriterOptions _chunkOptions;
+
+        private ParallelSequenceWriter(Context context) {
+            TurboTapeV1WriterOptions options = context._options;
+            _context = context;
+            _chunkOptions = new TurboTapeV1WriterOptions(options.compactIntegers, 0, false,
+                    options.columnarSequences, null, options.lengthPrefixedObjects, options.metrics);
+        }
+
+        /**
+         * Writes the sequence, terminated by an empty chunk
+         * @param out The tape buffer to write to
+         * @param sequence The sequence
+         * @throws IOException If an IO exception occurs
+         */
+        private void write(TapeBuffer out, Iterator<?> sequence) throws IOException {
+            ForkJoinPool pool = _context._options.parallelPool;
+            int maxPending = 2 * pool.getParallelism();
+            Deque<Future<EncodedChunk>> pending = new ArrayDeque<>();
+            try {
+                while (sequence.hasNext()) {
+                    List<Object> objects = new ArrayList<>(PARALLEL_CHUNK_SIZE);
+                    while (objects.size() < PARALLEL_CHUNK_SIZE && sequence.hasNext()) {
+                        objects.add(sequence.next());
+                    }
+                    pending.add(pool.submit(() -> encode(objects)));
+                    if (pending.size() >= maxPending) writeEncoded(out, pending.remove());
+                }
+                while (!pending.isEmpty()) {
+                    writeEncoded(out, pending.remove());
+                }
+            }
+            finally {
+                for (Future<EncodedChunk> task : pending) task.cancel(false);
+            }
+            out.writeShort(0);
+        }
+
+        /**
+         * Encodes a chunk of the sequence, run by the parallel pool
+         * @param objects The objects of the chunk
+         * @return The encoded chunk
+         */
+        private EncodedChunk encode(List<Object> objects) {
+            Context context = new Context(_context._plans, _chunkOptions, null, _context._shared, true);
+            TapeBuffer buffer = new TapeBuffer(INITIAL_CHUNK_CAPACITY);
+            try {
+                for (int from = 0; from < objects.size(); from += SEQUENCE_CHUNK_SIZE) {
+                    writeChunk(context, buffer, objects.subList(from,
+                            Math.min(from + SEQUENCE_CHUNK_SIZE, objects.size())));
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new EncodedChunk(context, buffer);
+        }
+
+        /**
+         * Waits for an encoded chunk, and writes it to the tape preceded by its definitions
+         * @param out The tape buffer to write to
+         * @param task The task encoding the chunk
+         * @throws IOException If an IO exception occurs
+         */
+        private void writeEncoded(TapeBuffer out, Future<EncodedChunk> task) throws IOException {
+            EncodedChunk chunk;
+            try {
+                chunk = task.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding a parallel chunk");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException)cause).getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+                if (cause instanceof Error) throw (Error)cause;
+                throw new IOException(cause);
+            }
+
+            writeDefinitions(out, chunk.context);
+            out.write(chunk.buffer);
+            _context.drain(out);
+        }
+
+        /**
+         * Writes a definitions chunk with the field names and aliases first used by the chunk,
+         * unless they are all defined on the tape already
+         * @param out The tape buffer to write to
+         * @param chunk The context of the chunk
+         * @throws IOException If a name is too long
+         */
+        private void writeDefinitions(TapeBuffer out, Context chunk) throws IOException {
+            SharedIndices shared = _context._shared;
+            List<String> fields = new ArrayList<>();
+            for (String name : chunk._chunkFields) {
+                if (SharedIndices.define(shared._definedFields, chunk._fieldAllocator.find(name))) fields.add(name);
+            }
+            List<TurboTapeV1WritePlans.Plan> plans = new ArrayList<>();
+            for (TurboTapeV1WritePlans.Plan plan : chunk._chunkPlans) {
+                if (SharedIndices.define(shared._definedAliases, chunk.typeIndex(plan))) plans.add(plan);
+            }
+            if (fields.isEmpty() && plans.isEmpty()) return;
+
+            _context._definitions++;
+            out.writeShort(DEFINITIONS_CHUNK_FLAG);
+            out.writeVarInt(fields.size());
+            TurboTapeV1MetricsListener metrics = _context._options.metrics;
+            for (String name : fields) {
+                int index = chunk._fieldAllocator.find(name);
+                out.writeShort(index);
+                out.writeUTF(name);
+                if (metrics != null) metrics.fieldNameAllocated(name, index);
+            }
+            out.writeVarInt(plans.size());
+            for (TurboTapeV1WritePlans.Plan plan : plans) {
+                int index = chunk.typeIndex(plan);
+                out.writeShort(index);
+                out.write(plan.encodedAlias);
+                if (metrics != null) metrics.aliasAllocated(plan.alias, index);
+            }
         }
     }
 
+    /**
+     * A chunk of a sequence encoded in parallel, with the context it was encoded with
+     */
+    private static class EncodedChunk {
+        private final Context context;
+        private final TapeBuffer buffer;
+
+        private EncodedChunk(Context context, TapeBuffer buffer) {
+            this.context = context;
+            this.buffer = buffer;
+        }
+    }
 }
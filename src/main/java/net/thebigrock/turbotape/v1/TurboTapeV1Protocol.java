@@ -1,11 +1,18 @@
 package net.thebigrock.turbotape.v1;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Class containing common functionality for the FieldStreamProtocol V1
  */
 public class TurboTapeV1Protocol {
     // The header found at the very beginning of the stream
     static final String PROTOCOL_HEADER = "FSP1";
+    static final byte[] PROTOCOL_HEADER_BYTES = PROTOCOL_HEADER.getBytes(StandardCharsets.UTF_8);
+    // The header of splittable tapes, followed by the sync marker of the tape
+    static final String SPLITTABLE_HEADER = "FSS1";
+    static final byte[] SPLITTABLE_HEADER_BYTES = SPLITTABLE_HEADER.getBytes(StandardCharsets.UTF_8);
+    static final int SYNC_MARKER_LENGTH = 16;
 
     // The type flags
     static final int TYPE_FLAG_BOOLEAN_FALSE = 0x00;
@@ -14,16 +21,67 @@ public class TurboTapeV1Protocol {
     static final int TYPE_FLAG_INTEGER_64 = 0x03;
     static final int TYPE_FLAG_FLOAT_32 = 0x04;
     static final int TYPE_FLAG_FLOAT_64 = 0x05;
-    static final int TYPE_FLAG_UTF_STRING = 0x06;
+    static final int TYPE_FLAG_UTF_STRING = 0x06;      // Modified UTF-8 string, no longer written
+    static final int TYPE_FLAG_END_OBJECT = 0x07;
     static final int TYPE_FLAG_REF_OBJECT = 0x08;
     static final int TYPE_FLAG_REF_ARRAY = 0x09;
+    static final int TYPE_FLAG_VARINT_32 = 0x0A;
+    static final int TYPE_FLAG_ZIGZAG_32 = 0x0B;
+    static final int TYPE_FLAG_VARINT_64 = 0x0C;
+    static final int TYPE_FLAG_ZIGZAG_64 = 0x0D;
+    static final int TYPE_FLAG_STRING = 0x0E;          // Varint length prefixed UTF-8 string
+    static final int TYPE_FLAG_EXTENDED = 0x0F;
 
     // Define the bit size and mask
     static final int TYPE_FLAG_SIZE = 4;
     static final int TYPE_FLAG_MASK = (1 << TYPE_FLAG_SIZE) - 1;
 
+    // The extended types, written as the extended type flag in the field header followed by the extended type byte.
+    // They are represented as the extended type byte shifted above the extended type flag.
+    static final int EXTENDED_TYPE_SHIFT = TYPE_FLAG_SIZE;
+    static final int TYPE_INT_ARRAY = 0x01 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_LONG_ARRAY = 0x02 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_FLOAT_ARRAY = 0x03 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_DOUBLE_ARRAY = 0x04 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_BYTE_ARRAY = 0x05 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_STRING_DEFINE = 0x10 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_STRING_REF = 0x11 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
+    static final int TYPE_OBJECT_BACK_REFERENCE = 0x20 << EXTENDED_TYPE_SHIFT | TYPE_FLAG_EXTENDED;
 
+    // The object type indices reserved for identity tracking. The tracked index precedes a top level object written
+    // with identity tracking, and the back-reference index replaces the object record of an object already written.
+    static final int TRACKED_OBJECT_INDEX = 0xFFFE;
+    static final int BACK_REFERENCE_INDEX = 0xFFFF;
+    // The object type index preceding a top level object written with length prefixed objects, where each object
+    // record is followed by the byte length of its fields, and the byte length of the fields and sub-objects
+    static final int SIZED_OBJECT_INDEX = 0xFFFD;
+    static final int OBJECT_INDEX_LIMIT = SIZED_OBJECT_INDEX;
+    // The length of an object and its sub-objects when unknown, as the writer drained them or they define
+    // field names, aliases or dictionary strings, so they must be read rather than skipped
+    static final int UNKNOWN_LENGTH = -1;
 
+    // The maximum number of objects in each count prefixed chunk of a sequence
+    static final int SEQUENCE_CHUNK_SIZE = 1024;
+    // Set in the object count of a sequence chunk written as a column block
+    static final int COLUMNAR_CHUNK_FLAG = 0x8000;
+    // Set in the object count of a sequence chunk of field name and alias definitions, carrying no objects
+    static final int DEFINITIONS_CHUNK_FLAG = 0x4000;
 
+    /**
+     * Checks if the type flag denotes a 32 bit integer, in any encoding
+     * @param type The type flag
+     * @return True if the field holds a 32 bit integer
+     */
+    static boolean isInteger32(int type) {
+        return type == TYPE_FLAG_INTEGER_32 || type == TYPE_FLAG_VARINT_32 || type == TYPE_FLAG_ZIGZAG_32;
+    }
 
+    /**
+     * Checks if the type flag denotes a 64 bit integer, in any encoding
+     * @param type The type flag
+     * @return True if the field holds a 64 bit integer
+     */
+    static boolean isInteger64(int type) {
+        return type == TYPE_FLAG_INTEGER_64 || type == TYPE_FLAG_VARINT_64 || type == TYPE_FLAG_ZIGZAG_64;
+    }
 }
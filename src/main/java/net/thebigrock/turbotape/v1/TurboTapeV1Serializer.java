@@ -2,28 +2,390 @@ package net.thebigrock.turbotape.v1;
 
 import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
 import net.thebigrock.turbotape.Serializer;
+import net.thebigrock.turbotape.util.BlockCodec;
+import net.thebigrock.turbotape.util.BlockCodecs;
+import net.thebigrock.turbotape.util.BlockCompressingOutputStream;
+import net.thebigrock.turbotape.util.DeflateBlockCodec;
+import net.thebigrock.turbotape.util.IOConsumer;
+import net.thebigrock.turbotape.util.TapeBuffer;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * TurboTape serializer instance
  */
 public class TurboTapeV1Serializer implements Serializer {
+    private static final int INITIAL_BUFFER_CAPACITY = 256;
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 16;
+    private static final int DEFAULT_SPLITTABLE_BLOCK_SIZE = 1 << 20;
+    // The largest buffer kept by a pooled encoder, larger buffers are dropped once the object is encoded
+    private static final int MAX_POOLED_BUFFER_CAPACITY = 1 << 20;
+    private static final byte[] HEADER = TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES;
+    private static final ByteBuffer HEADER_BUFFER = ByteBuffer.wrap(HEADER).asReadOnlyBuffer();
 
-    private final ObjectWriteHandlerProvider _writerProvider;
+    private final TurboTapeV1WritePlans _plans;
+    private final TurboTapeV1WriterOptions _options;
+    // The encoder of each thread, or null if encoders are not pooled
+    private final ThreadLocal<Encoder> _encoders;
 
+    /**
+     * Creates a serializer with the default options. Use the {@link TurboTapeV1SerializerBuilder} to
+     * configure the options.
+     * @param writerProvider The writer provider to use to resolve object writers
+     */
     public TurboTapeV1Serializer(ObjectWriteHandlerProvider writerProvider) {
-        _writerProvider = writerProvider;
+        this(writerProvider, TurboTapeV1WriterOptions.DEFAULT);
     }
 
+    TurboTapeV1Serializer(ObjectWriteHandlerProvider writerProvider, TurboTapeV1WriterOptions options) {
+        this(writerProvider, options, false);
+    }
+
+    TurboTapeV1Serializer(ObjectWriteHandlerProvider writerProvider, TurboTapeV1WriterOptions options,
+                          boolean pooledEncoders) {
+        _plans = new TurboTapeV1WritePlans(writerProvider);
+        _options = options;
+        _encoders = pooledEncoders ? ThreadLocal.withInitial(() -> new Encoder(_plans, _options)) : null;
+    }
+
+    /**
+     * Encodes the object into a buffer, which is written to the output stream when the encoding completes,
+     * or when it has grown large while writing sequences.
+     */
     @Override
     public <T> void serialize(T object, OutputStream outputStream) throws IOException {
-        TurboTapeV1ObjectWriter<T> objectWriter = new TurboTapeV1ObjectWriter<>(_writerProvider, object);
-        DataOutputStream dataWriter = new DataOutputStream(outputStream);
-        dataWriter.write(TurboTapeV1Protocol.PROTOCOL_HEADER.getBytes(StandardCharsets.UTF_8));
-        objectWriter.write(new DataOutputStream(outputStream));
+        Encoder encoder = acquire();
+        try {
+            StreamDrain drain = encoder._streamDrain;
+            drain._outputStream = outputStream;
+            TapeBuffer buffer = encoder.heapBuffer();
+            buffer.write(HEADER);
+            encoder.encode(object, buffer, drain);
+            drain.accept(buffer);
+        }
+        finally {
+            release(encoder);
+        }
+    }
+
+    @Override
+    public <T> byte[] serialize(T object) throws IOException {
+        Encoder encoder = acquire();
+        try {
+            TapeBuffer buffer = encoder.heapBuffer();
+            buffer.write(HEADER);
+            encoder.encode(object, buffer, null);
+            return buffer.toByteArray();
+        }
+        finally {
+            release(encoder);
+        }
+    }
+
+    /**
+     * Encodes the object directly into the byte buffer, which may be a heap or direct buffer.
+     * The position of the buffer is only advanced if the entire object fits.
+     */
+    @Override
+    public <T> void serialize(T object, ByteBuffer buffer) throws IOException {
+        TapeBuffer target = new TapeBuffer(buffer);
+        target.write(HEADER);
+        Encoder encoder = acquire();
+        try {
+            encoder.encode(object, target, null);
+        }
+        finally {
+            release(encoder);
+        }
+        buffer.position(buffer.position() + target.size());
+    }
+
+    /**
+     * Encodes the object into direct memory, which is then written to the channel together with the header
+     * using a gathering write if supported by the channel.
+     */
+    @Override
+    public <T> void serialize(T object, WritableByteChannel channel) throws IOException {
+        Encoder encoder = acquire();
+        try {
+            ChannelDrain drain = new ChannelDrain(channel);
+            TapeBuffer buffer = encoder.directBuffer();
+            encoder.encode(object, buffer, drain);
+            drain.accept(buffer);
+        }
+        finally {
+            release(encoder);
+        }
+    }
+
+    /**
+     * Opens a session writing a tape of many top level objects to the output stream.
+     * <p>
+     * Within a session the protocol header, and each object alias and field name, is only written once.
+     * The session must be read using {@link TurboTapeV1Deserializer#openSession(java.io.InputStream)}.
+     *
+     * @param outputStream The output stream to write the tape to
+     * @return The session writer, which is not thread safe
+     */
+    public TurboTapeV1SessionWriter openSession(OutputStream outputStream) {
+        return new TurboTapeV1SessionWriter(_plans, _options, outputStream);
+    }
+
+    /**
+     * Opens a session like {@link #openSession(OutputStream)}, which writes to the output stream on a daemon
+     * drainer thread, with up to {@value #DEFAULT_ASYNC_QUEUE_CAPACITY} encoded objects queued for it.
+     *
+     * @param outputStream The output stream to write the tape to
+     * @return The session writer, which is not thread safe
+     */
+    public TurboTapeV1AsyncSessionWriter openAsyncSession(OutputStream outputStream) {
+        return openAsyncSession(outputStream, DEFAULT_ASYNC_QUEUE_CAPACITY, daemonThreads("turbotape-session-drainer"));
+    }
+
+    /**
+     * Opens a session like {@link #openSession(OutputStream)}, which writes to the output stream on a drainer
+     * thread created by the thread factory. On runtimes supporting them, a virtual thread factory
+     * can be given.
+     *
+     * @param outputStream The output stream to write the tape to
+     * @param queueCapacity The number of encoded objects which may wait for the drainer before writes block
+     * @param threadFactory The factory creating the drainer thread
+     * @return The session writer, which is not thread safe
+     */
+    public TurboTapeV1AsyncSessionWriter openAsyncSession(OutputStream outputStream, int queueCapacity,
+                                                          ThreadFactory threadFactory) {
+        return new TurboTapeV1AsyncSessionWriter(_plans, _options, outputStream, queueCapacity, threadFactory);
+    }
+
+    /**
+     * Opens a session like {@link #openSession(OutputStream)}, which compresses the tape using the
+     * {@link DeflateBlockCodec} in blocks of {@value BlockCompressingOutputStream#DEFAULT_BLOCK_SIZE} bytes.
+     *
+     * @param outputStream The output stream to write the compressed tape to
+     * @return The session writer, which is not thread safe
+     */
+    public TurboTapeV1SessionWriter openCompressedSession(OutputStream outputStream) {
+        return openCompressedSession(outputStream, new DeflateBlockCodec(),
+                BlockCompressingOutputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Opens a session like {@link #openCompressedSession(OutputStream, BlockCodec, int)}, using the
+     * {@linkplain BlockCodecs#installed() installed codec} of the identifier, which may be the built-in
+     * {@link DeflateBlockCodec} or a codec registered as a service.
+     *
+     * @param outputStream The output stream to write the compressed tape to
+     * @param codecId The identifier of the codec compressing the blocks
+     * @param blockSize The number of bytes in each block
+     * @return The session writer, which is not thread safe
+     * @throws IllegalArgumentException If no codec of the identifier is installed
+     */
+    public TurboTapeV1SessionWriter openCompressedSession(OutputStream outputStream, int codecId, int blockSize) {
+        return openCompressedSession(outputStream, BlockCodecs.find(codecId), blockSize);
+    }
+
+    /**
+     * Opens a session like {@link #openSession(OutputStream)}, which compresses the tape in blocks using the
+     * given codec. The blocks are compressed and written to the output stream on a daemon compressor thread,
+     * overlapping with the encoding, and a block is cut short when the session is flushed.
+     * <p>
+     * Larger blocks compress better, at the cost of memory and of latency until a block is written, unless
+     * flushed. The session must be read using
+     * {@link TurboTapeV1Deserializer#openCompressedSession(java.io.InputStream, BlockCodec...)}.
+     *
+     * @param outputStream The output stream to write the compressed tape to
+     * @param codec The codec compressing the blocks
+     * @param blockSize The number of bytes in each block
+     * @return The session writer, which is not thread safe
+     */
+    public TurboTapeV1SessionWriter openCompressedSession(OutputStream outputStream, BlockCodec codec,
+                                                          int blockSize) {
+        return openSession(new BlockCompressingOutputStream(outputStream, codec, blockSize,
+                daemonThreads("turbotape-session-compressor")));
+    }
+
+    /**
+     * Opens a tape file for appending top level objects as records, creating it if it does not exist.
+     * <p>
+     * Each record can be read on its own, in any order, using {@link TurboTapeV1Deserializer#openTapeFile(Path)}.
+     *
+     * @param path The path of the tape file, which gets an index file beside it
+     * @return The tape file writer, which is not thread safe
+     * @throws IOException If the file cannot be opened, or is not a tape file
+     */
+    public TurboTapeV1TapeFileWriter openTapeFile(Path path) throws IOException {
+        return new TurboTapeV1TapeFileWriter(_plans, _options, path);
+    }
+
+    /**
+     * Opens a splittable tape, with blocks of at least {@value #DEFAULT_SPLITTABLE_BLOCK_SIZE} bytes
+     *
+     * @param outputStream The output stream to write the tape to
+     * @return The splittable tape writer, which is not thread safe
+     * @see #openSplittableTape(OutputStream, int)
+     */
+    public TurboTapeV1SplittableWriter openSplittableTape(OutputStream outputStream) {
+        return openSplittableTape(outputStream, DEFAULT_SPLITTABLE_BLOCK_SIZE);
+    }
+
+    /**
+     * Opens a splittable tape, writing top level objects in blocks separated by sync markers. Each block defines
+     * the aliases and field names it uses, so a stored tape can be split into byte ranges decoded concurrently,
+     * using {@link TurboTapeV1Deserializer#openSplit(Path, long, long)} for each range.
+     * <p>
+     * Larger blocks repeat the definitions less often, while smaller blocks split the tape more evenly.
+     *
+     * @param outputStream The output stream to write the tape to
+     * @param blockSize The number of bytes after which a block is completed
+     * @return The splittable tape writer, which is not thread safe
+     */
+    public TurboTapeV1SplittableWriter openSplittableTape(OutputStream outputStream, int blockSize) {
+        return new TurboTapeV1SplittableWriter(_plans, _options, outputStream, blockSize);
+    }
+
+    /**
+     * Returns the encoder of the calling thread if pooled and not in use, or else a new encoder
+     * @return The encoder, to be released once the object is encoded
+     */
+    private Encoder acquire() {
+        if (_encoders == null) return new Encoder(_plans, _options);
+        Encoder encoder = _encoders.get();
+        // A write handler serializing another object while its own is encoded gets an encoder of its own
+        if (encoder._inUse) return new Encoder(_plans, _options);
+        encoder._inUse = true;
+        return encoder;
+    }
+
+    /**
+     * Releases the encoder, resetting it if pooled
+     * @param encoder The encoder
+     */
+    private void release(Encoder encoder) {
+        if (!encoder._inUse) return;
+        encoder.reset();
+        encoder._inUse = false;
+    }
+
+    /**
+     * Returns a thread factory creating daemon threads with the given name
+     * @param name The thread name
+     * @return The thread factory
+     */
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The context and buffers encoding a top level object. Pooled encoders are kept by their thread, and reset
+     * once the object is encoded, so only the result is allocated in the steady state. Other encoders are
+     * created for each object. Encoders do not refer to their serializer, so the pooled ones do not keep
+     * it from being collected.
+     */
+    private static class Encoder {
+        private final TurboTapeV1ObjectWriter.Context _context;
+        private final StreamDrain _streamDrain = new StreamDrain();
+        private TapeBuffer _heapBuffer;
+        private TapeBuffer _directBuffer;
+        private boolean _inUse;
+
+        private Encoder(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options) {
+            _context = new TurboTapeV1ObjectWriter.Context(plans, options, null);
+        }
+
+        private TapeBuffer heapBuffer() {
+            if (_heapBuffer == null) _heapBuffer = new TapeBuffer(INITIAL_BUFFER_CAPACITY);
+            return _heapBuffer;
+        }
+
+        private TapeBuffer directBuffer() {
+            if (_directBuffer == null) _directBuffer = new TapeBuffer(INITIAL_BUFFER_CAPACITY, true);
+            return _directBuffer;
+        }
+
+        /**
+         * Encodes the object into a tape buffer
+         * @param object The object to encode
+         * @param buffer The tape buffer to encode into
+         * @param drain The drain writing out the buffer when it grows large, or null
+         * @throws IOException If the object writer raises one
+         */
+        private void encode(Object object, TapeBuffer buffer, IOConsumer<TapeBuffer> drain) throws IOException {
+            _context.reset(drain);
+            TurboTapeV1ObjectWriter.write(_context, buffer, object);
+        }
+
+        /**
+         * Resets the encoder for the next object, dropping buffers grown too large to keep
+         */
+        private void reset() {
+            _context.reset(null);
+            _streamDrain._outputStream = null;
+            _heapBuffer = keep(_heapBuffer);
+            _directBuffer = keep(_directBuffer);
+        }
+
+        private TapeBuffer keep(TapeBuffer buffer) {
+            if (buffer == null || buffer.capacity() > MAX_POOLED_BUFFER_CAPACITY) return null;
+            buffer.reset();
+            return buffer;
+        }
+    }
+
+    /**
+     * Drain writing the tape buffer to an output stream
+     */
+    private static class StreamDrain implements IOConsumer<TapeBuffer> {
+        private OutputStream _outputStream;
+
+        @Override
+        public void accept(TapeBuffer buffer) throws IOException {
+            buffer.writeTo(_outputStream);
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Drain writing the tape buffer to a channel, preceded by the header on the first write
+     */
+    private static class ChannelDrain implements IOConsumer<TapeBuffer> {
+        private final WritableByteChannel _channel;
+        private ByteBuffer _header = HEADER_BUFFER.duplicate();
+
+        private ChannelDrain(WritableByteChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public void accept(TapeBuffer buffer) throws IOException {
+            ByteBuffer content = buffer.contentBuffer();
+            if (_header != null && _channel instanceof GatheringByteChannel) {
+                ByteBuffer[] buffers = { _header, content };
+                while (content.hasRemaining()) {
+                    ((GatheringByteChannel)_channel).write(buffers);
+                }
+            }
+            else {
+                if (_header != null) writeFully(_header);
+                writeFully(content);
+            }
+            _header = null;
+            buffer.reset();
+        }
+
+        private void writeFully(ByteBuffer content) throws IOException {
+            while (content.hasRemaining()) {
+                _channel.write(content);
+            }
+        }
     }
 }
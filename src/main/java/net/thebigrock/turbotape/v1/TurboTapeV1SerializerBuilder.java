@@ -0,0 +1,183 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds a {@link TurboTapeV1Serializer} with non-default encoding options.
+ * <p>
+ * The options only affect how the tape is encoded, the {@link TurboTapeV1Deserializer} reads tapes
+ * written with any options.
+ */
+public class TurboTapeV1SerializerBuilder {
+    private final ObjectWriteHandlerProvider _writerProvider;
+    private boolean _compactIntegers;
+    private int _stringDictionaryCapacity;
+    private boolean _trackIdentity;
+    private boolean _columnarSequences;
+    private ForkJoinPool _parallelPool;
+    private boolean _lengthPrefixedObjects;
+    private TurboTapeV1MetricsListener _metricsListener;
+    private boolean _pooledEncoders;
+
+    /**
+     * Private constructor. Use the {@link #create(ObjectWriteHandlerProvider)} method to create a builder
+     */
+    private TurboTapeV1SerializerBuilder(ObjectWriteHandlerProvider writerProvider) {
+        _writerProvider = writerProvider;
+    }
+
+    public static TurboTapeV1SerializerBuilder create(ObjectWriteHandlerProvider writerProvider) {
+        return new TurboTapeV1SerializerBuilder(writerProvider);
+    }
+
+    /**
+     * Enables compact integers, writing each int and long field using a variable length encoding when that is
+     * smaller than the fixed size encoding. Small non-negative values are written as unsigned varints, and small
+     * negative values ZigZag encoded. Off by default.
+     *
+     * @param enabled True to enable compact integers
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder compactIntegers(boolean enabled) {
+        _compactIntegers = enabled;
+        return this;
+    }
+
+    /**
+     * Enables the string value dictionary, which writes repeated string field values as back-references to their
+     * first occurrence on the tape. The dictionary holds at most the given number of strings, evicting the least
+     * recently used ones when full, so the memory used by writers and readers stays bounded also for endless
+     * sessions. Strings longer than {@value TurboTapeV1ObjectWriter#MAX_DICTIONARY_STRING_LENGTH} characters
+     * are never added. Off by default.
+     *
+     * @param capacity The maximum number of strings in the dictionary, or 0 to disable it
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder stringDictionary(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Negative dictionary capacity: " + capacity);
+        _stringDictionaryCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Enables identity tracking, which writes each object once per top level object, and any further reference
+     * to the same instance as a back-reference. The deserializer then rebuilds the shared references, and cyclic
+     * graphs can be written. To read a cycle, the read handler of an object referenced from its own sub-objects
+     * must {@link net.thebigrock.turbotape.FieldReader#register(Object) register} the object before reading them.
+     * <p>
+     * As with Java serialization, writers and readers hold every object of the top level object while tracking,
+     * including the objects of its sequences. Off by default.
+     *
+     * @param enabled True to enable identity tracking
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder trackIdentity(boolean enabled) {
+        _trackIdentity = enabled;
+        return this;
+    }
+
+    /**
+     * Enables columnar sequences, which writes each chunk of up to {@value TurboTapeV1Protocol#SEQUENCE_CHUNK_SIZE}
+     * objects of a sequence as a column block, if the objects are of the same class, and write the same
+     * primitive and string fields in the same order. Each field is then written once per block, with the values
+     * of all the objects packed together. The deserializer only decodes the columns the read handler reads.
+     * <p>
+     * Handlers of classes writing other fields may be run twice for the first chunk, as the chunk is written
+     * as rows instead, and so may the handlers of any chunk whose objects turn out not to fit. Handlers must then
+     * be repeatable and free of side effects, so not write the iterator of a stream which can only be consumed
+     * once, as the second run would find it consumed. String values in columns are not added to the string
+     * dictionary, and columnar sequences are not used with identity tracking. Off by default.
+     *
+     * @param enabled True to enable columnar sequences
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder columnarSequences(boolean enabled) {
+        _columnarSequences = enabled;
+        return this;
+    }
+
+    /**
+     * Enables parallel sequences, which splits the sequences written by top level objects into chunks of
+     * {@value TurboTapeV1ObjectWriter#PARALLEL_CHUNK_SIZE} objects, and encodes the chunks concurrently on the
+     * given pool. Each chunk is encoded into a buffer of its own, and the chunks are written to the tape in
+     * sequence order as they complete, with the field names and aliases first used by each chunk defined
+     * ahead of it. At most two chunks per thread of the pool are in progress at the time, which bounds
+     * the memory used.
+     * <p>
+     * The write handlers of the objects in the sequences must then be thread safe. String values of objects in
+     * the chunks are not added to the string dictionary, and parallel sequences are not used with identity
+     * tracking. Off by default.
+     *
+     * @param pool The pool to encode the chunks on, or null to disable parallel sequences
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder parallelSequences(ForkJoinPool pool) {
+        _parallelPool = pool;
+        return this;
+    }
+
+    /**
+     * Enables length prefixed objects, which writes each object with the byte length of its fields, and the byte
+     * length of its fields and sub-objects. The deserializer then reads the fields of an object in one bulk read,
+     * only decodes the strings and arrays the read handler reads, and skips the sub-objects the handler does not
+     * read in one step, along with all objects below them.
+     * <p>
+     * An object can only be skipped when its length is known, which is not the case if it defines field names,
+     * aliases or dictionary strings used later, or contains a sequence drained by the writer as it was written.
+     * Such objects are read rather than skipped. Off by default.
+     *
+     * @param enabled True to enable length prefixed objects
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder lengthPrefixedObjects(boolean enabled) {
+        _lengthPrefixedObjects = enabled;
+        return this;
+    }
+
+    /**
+     * Sets the listener receiving the metrics of the tapes written, being the objects, fields and bytes written
+     * per alias, the field names and aliases allocated on each tape, and the time taken to encode each top
+     * level object. The listener must be thread safe. No metrics are collected by default.
+     * <p>
+     * Encoding is also recorded by the {@code net.thebigrock.turbotape.Encode} flight recorder event when a
+     * recording enables it, whether a listener is set or not.
+     *
+     * @param listener The listener, or null to not collect metrics
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder metricsListener(TurboTapeV1MetricsListener listener) {
+        _metricsListener = listener;
+        return this;
+    }
+
+    /**
+     * Enables pooled encoders, which keeps the context and buffers encoding an object with the calling thread,
+     * and resets them for the next object serialized by the thread, rather than creating them for each object.
+     * Once warmed up, serializing an object then allocates little beyond the result, apart from the chunks
+     * of the sequences it writes.
+     * <p>
+     * Each thread serializing keeps its encoder until it terminates, holding the index maps and buffer capacity
+     * of the largest objects it serialized, with buffers larger than 1 MiB dropped. It suits services
+     * serializing from a bounded pool of threads, rather than from a thread per call. Sessions and other
+     * writers are not affected. Off by default.
+     *
+     * @param enabled True to enable pooled encoders
+     * @return This TurboTapeV1SerializerBuilder instance for cascading
+     */
+    public TurboTapeV1SerializerBuilder pooledEncoders(boolean enabled) {
+        _pooledEncoders = enabled;
+        return this;
+    }
+
+    /**
+     * Builds the serializer
+     * @return TurboTapeV1Serializer instance
+     */
+    public TurboTapeV1Serializer build() {
+        return new TurboTapeV1Serializer(_writerProvider, new TurboTapeV1WriterOptions(_compactIntegers,
+                _stringDictionaryCapacity, _trackIdentity, _columnarSequences, _parallelPool, _lengthPrefixedObjects,
+                _metricsListener), _pooledEncoders);
+    }
+}
@@ -0,0 +1,136 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.ReusingReadHandler;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.function.Consumer;
+
+/**
+ * Reads the top level objects of a tape written by a {@link TurboTapeV1SessionWriter}, bound to one input stream.
+ * <p>
+ * The reader context is kept between the objects, so aliases and field names read once are known for the
+ * rest of the session. The protocol header is read when the first object is requested.
+ * <p>
+ * If the last sequence of an object is left lazy, and has not been fully iterated when the next object is read,
+ * the rest of the sequence is buffered before the next object is read.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TurboTapeV1SessionReader implements Closeable {
+    private final PushbackInputStream _inputStream;
+    private final DataInputStream _dataReader;
+    private final TurboTapeV1ObjectReader.Context _context;
+    private TurboTapeV1ObjectReader _previous;
+    // The reader of the objects read into reused instances, created on first use
+    private TurboTapeV1ObjectReader _reusing;
+    private boolean _headerRead;
+
+    /**
+     * Creates the session reader. Use {@link TurboTapeV1Deserializer#openSession(InputStream)} to open a session.
+     * @param readerProvider The reader provider used to resolve object read handlers
+     * @param metrics The listener receiving the decoding metrics, or null
+     * @param inputStream The input stream to read the tape from
+     */
+    TurboTapeV1SessionReader(ObjectReadHandlerProvider readerProvider, TurboTapeV1MetricsListener metrics,
+                             InputStream inputStream) {
+        _inputStream = new PushbackInputStream(inputStream);
+        _dataReader = new DataInputStream(_inputStream);
+        _context = new TurboTapeV1ObjectReader.Context(readerProvider, metrics, _dataReader);
+    }
+
+    /**
+     * Checks if there are more objects in the session, blocking until the next object starts or the stream ends
+     * @return True if there are more objects to read
+     * @throws IOException If thrown by the input stream, or the tape is malformed
+     */
+    public boolean hasNext() throws IOException {
+        prepare();
+        int next = _inputStream.read();
+        if (next < 0) return false;
+        _inputStream.unread(next);
+        return true;
+    }
+
+    /**
+     * Reads the next object of the session
+     * @param cls The class of the object to read
+     * @param <T> The object type deferred from the specified class
+     * @return The object read
+     * @throws EOFException If the session has ended
+     * @throws IOException If thrown by the input stream, or the tape is malformed
+     */
+    public <T> T read(Class<T> cls) throws IOException {
+        prepare();
+        _previous = new TurboTapeV1ObjectReader(_context);
+        return cls.cast(_previous.read());
+    }
+
+    /**
+     * Reads the next object of the session into the given instance, using the reusing read handler whatever the
+     * alias of the object. The field table of the reader is reused, so reading each object allocates little
+     * beyond the values the handler reads, and sequences read lazily are only valid until the next read.
+     * @param instance The instance to fill
+     * @param handler The handler filling the instance
+     * @param <T> The type of the instance
+     * @return The instance, or null if a null object was written
+     * @throws EOFException If the session has ended
+     * @throws IOException If thrown by the input stream, or the tape is malformed
+     */
+    public <T> T read(T instance, ReusingReadHandler<? super T> handler) throws IOException {
+        prepare();
+        if (_reusing == null) _reusing = new TurboTapeV1ObjectReader(_context);
+        _previous = _reusing;
+        return _reusing.read(handler, instance);
+    }
+
+    /**
+     * Reads the remaining objects of the session into the given instance, handing the same instance to the
+     * consumer after each object is read
+     * @param instance The instance to fill
+     * @param handler The handler filling the instance
+     * @param consumer The consumer of the instance, which must not keep it past the call
+     * @param <T> The type of the instance
+     * @return The number of objects read
+     * @throws IOException If thrown by the input stream, or the tape is malformed
+     * @see #read(Object, ReusingReadHandler)
+     */
+    public <T> long forEach(T instance, ReusingReadHandler<? super T> handler, Consumer<? super T> consumer)
+            throws IOException {
+        long count = 0;
+        while (hasNext()) {
+            consumer.accept(read(instance, handler));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Closes the input stream
+     * @throws IOException If thrown by the input stream
+     */
+    @Override
+    public void close() throws IOException {
+        _inputStream.close();
+    }
+
+    /**
+     * Reads the header the first time, and positions the tape after the previous object
+     * @throws IOException If thrown by the input stream, or the tape is malformed
+     */
+    private void prepare() throws IOException {
+        if (!_headerRead) {
+            TurboTapeV1Deserializer.readHeader(_dataReader);
+            _headerRead = true;
+        }
+        if (_previous != null) {
+            _previous.finish();
+            _previous = null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.util.TapeBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes many top level objects to a single tape, bound to one output stream.
+ * <p>
+ * The writer context is kept between the objects, so the protocol header is written once, and each object
+ * alias and field name is only written the first time it is used in the session. Each object is written to
+ * the stream as soon as it is encoded. As the indices are never released, a session can hold at most
+ * 4095 distinct field names and 65532 distinct object aliases.
+ * <p>
+ * If writing an object fails, the part of it encoded is discarded, and the session goes on. If the object
+ * defined field names, aliases or strings, or part of it was written to the stream, the tape is not readable
+ * past the object, and the session fails instead, with further writes and flushes throwing.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TurboTapeV1SessionWriter implements Closeable {
+    private static final int INITIAL_BUFFER_CAPACITY = 256;
+
+    private final OutputStream _outputStream;
+    private final TapeBuffer _buffer = new TapeBuffer(INITIAL_BUFFER_CAPACITY);
+    private final TurboTapeV1ObjectWriter.Context _context;
+    // True if a write failed, leaving the tape unreadable past it
+    private boolean _failed;
+
+    /**
+     * Creates the session writer. Use {@link TurboTapeV1Serializer#openSession(OutputStream)} to open a session.
+     * @param plans The write plans of the classes written
+     * @param options The encoding options
+     * @param outputStream The output stream to write the tape to
+     */
+    TurboTapeV1SessionWriter(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options, OutputStream outputStream) {
+        _outputStream = outputStream;
+        _context = new TurboTapeV1ObjectWriter.Context(plans, options, this::drain);
+        _buffer.write(TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES);
+    }
+
+    /**
+     * Writes the object to the tape
+     * @param object The object to write
+     * @param <T> The objects type
+     * @throws IOException If thrown by the output stream, or the session has failed
+     */
+    public <T> void write(T object) throws IOException {
+        checkFailed();
+        int start = _buffer.size();
+        int revision = _context.revision();
+        boolean written = false;
+        try {
+            new TurboTapeV1ObjectWriter<>(_context, object).write(_buffer);
+            written = true;
+        }
+        finally {
+            if (!written) discard(start, revision);
+        }
+        drain(_buffer);
+    }
+
+    /**
+     * Flushes the output stream
+     * @throws IOException If thrown by the output stream, or the session has failed
+     */
+    public void flush() throws IOException {
+        checkFailed();
+        drain(_buffer);
+        _outputStream.flush();
+    }
+
+    /**
+     * Ends the session, closing the output stream
+     * @throws IOException If thrown by the output stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!_failed) drain(_buffer);
+        }
+        finally {
+            _outputStream.close();
+        }
+    }
+
+    /**
+     * Discards the part of a failed object encoded, failing the session unless the tape written before it
+     * is still readable without it
+     * @param start The size of the tape buffer when the object started
+     * @param revision The revision of the context when the object started
+     */
+    private void discard(int start, int revision) {
+        if (_failed || _context.revision() != revision) {
+            _failed = true;
+            _buffer.reset();
+        }
+        else {
+            _buffer.truncate(start);
+        }
+    }
+
+    private void checkFailed() throws IOException {
+        if (_failed) throw new IOException("Session failed by an earlier write");
+    }
+
+    private void drain(TapeBuffer buffer) throws IOException {
+        try {
+            buffer.writeTo(_outputStream);
+        }
+        catch (IOException | RuntimeException e) {
+            _failed = true;
+            throw e;
+        }
+        buffer.reset();
+    }
+}
@@ -0,0 +1,242 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.ReusingReadHandler;
+import net.thebigrock.turbotape.util.ByteBufferInput;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads the top level objects of one split of a splittable tape written by a {@link TurboTapeV1SplittableWriter}.
+ * <p>
+ * A split is a byte range of the tape, holding the blocks whose sync marker starts within the range. The reader
+ * scans from the start of the range for the first sync marker, and then reads the blocks following it, the last
+ * of which may extend past the end of the range. Splits covering the tape without gaps or overlaps thus read
+ * each object exactly once, and can be read concurrently by a reader each.
+ * <p>
+ * Each block is read whole, and decoded with a context of its own. Instances are not thread safe.
+ */
+public class TurboTapeV1SplitReader implements Closeable {
+    private static final int HEADER_LENGTH = TurboTapeV1Protocol.SPLITTABLE_HEADER_BYTES.length
+            + TurboTapeV1Protocol.SYNC_MARKER_LENGTH;
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+
+    private final ObjectReadHandlerProvider _readerProvider;
+    private final TurboTapeV1MetricsListener _metrics;
+    private final FileChannel _channel;
+    private final DataInputStream _input;
+    private final byte[] _syncMarker = new byte[TurboTapeV1Protocol.SYNC_MARKER_LENGTH];
+    private final long _end;
+    // The position in the tape of the next byte of the input
+    private long _position;
+    private boolean _synced;
+    private boolean _ended;
+
+    private byte[] _blockBytes = new byte[0];
+    private ByteBufferInput _block;
+    private TurboTapeV1ObjectReader.Context _context;
+    private TurboTapeV1ObjectReader _previous;
+    // The reader of the objects of the block read into reused instances, created on first use
+    private TurboTapeV1ObjectReader _reusing;
+
+    /**
+     * Opens the split. Use {@link TurboTapeV1Deserializer#openSplit(Path, long, long)} to open a split.
+     * @param readerProvider The reader provider used to resolve object read handlers
+     * @param metrics The listener receiving the decoding metrics, or null
+     * @param path The path of the splittable tape
+     * @param start The position of the first byte of the split
+     * @param end The position after the last byte of the split
+     * @throws IOException If the file cannot be opened, or is not a splittable tape
+     */
+    TurboTapeV1SplitReader(ObjectReadHandlerProvider readerProvider, TurboTapeV1MetricsListener metrics, Path path,
+                           long start, long end) throws IOException {
+        if (start < 0 || end < start) throw new IllegalArgumentException("Invalid split [" + start + ", " + end + "]");
+        _readerProvider = readerProvider;
+        _metrics = metrics;
+        _channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            TurboTapeV1TapeFileWriter.readFully(_channel, header, 0);
+            byte[] magic = Arrays.copyOf(header.array(), TurboTapeV1Protocol.SPLITTABLE_HEADER_BYTES.length);
+            if (!Arrays.equals(magic, TurboTapeV1Protocol.SPLITTABLE_HEADER_BYTES)) {
+                throw new StreamCorruptedException("Not a splittable tape");
+            }
+            header.position(magic.length).get(_syncMarker);
+        }
+        catch (IOException | RuntimeException e) {
+            _channel.close();
+            throw e;
+        }
+        _end = end;
+        _position = Math.max(start, HEADER_LENGTH);
+        _channel.position(_position);
+        _input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(_channel), INPUT_BUFFER_SIZE));
+    }
+
+    /**
+     * Checks if there are more objects in the split
+     * @return True if there are more objects to read
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    public boolean hasNext() throws IOException {
+        if (_previous != null) {
+            _previous.finish();
+            _previous = null;
+        }
+        while (_block == null || _block.remaining() == 0) {
+            if (!nextBlock()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next object of the split
+     * @param cls The class of the object to read
+     * @param <T> The object type deferred from the specified class
+     * @return The object read
+     * @throws EOFException If the split has ended
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    public <T> T read(Class<T> cls) throws IOException {
+        if (!hasNext()) throw new EOFException("End of split reached");
+        _previous = new TurboTapeV1ObjectReader(_context);
+        return cls.cast(_previous.read());
+    }
+
+    /**
+     * Reads the next object of the split into the given instance, using the reusing read handler whatever the
+     * alias of the object. The field table of the reader is reused, so reading each object allocates little
+     * beyond the values the handler reads, and sequences read lazily are only valid until the next read.
+     * @param instance The instance to fill
+     * @param handler The handler filling the instance
+     * @param <T> The type of the instance
+     * @return The instance, or null if a null object was written
+     * @throws EOFException If the split has ended
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    public <T> T read(T instance, ReusingReadHandler<? super T> handler) throws IOException {
+        if (!hasNext()) throw new EOFException("End of split reached");
+        if (_reusing == null) _reusing = new TurboTapeV1ObjectReader(_context);
+        _previous = _reusing;
+        return _reusing.read(handler, instance);
+    }
+
+    /**
+     * Reads the remaining objects of the split into the given instance, handing the same instance to the
+     * consumer after each object is read
+     * @param instance The instance to fill
+     * @param handler The handler filling the instance
+     * @param consumer The consumer of the instance, which must not keep it past the call
+     * @param <T> The type of the instance
+     * @return The number of objects read
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     * @see #read(Object, ReusingReadHandler)
+     */
+    public <T> long forEach(T instance, ReusingReadHandler<? super T> handler, Consumer<? super T> consumer)
+            throws IOException {
+        long count = 0;
+        while (hasNext()) {
+            consumer.accept(read(instance, handler));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Closes the tape file
+     * @throws IOException If an IO exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /**
+     * Reads the next block starting within the split, finding the first sync marker of the split first
+     * @return True if a block was read, false if the split has ended
+     * @throws IOException If an IO exception occurs, or the tape is malformed
+     */
+    private boolean nextBlock() throws IOException {
+        if (_ended) return false;
+        long markerStart = _position;
+        if (!_synced) {
+            markerStart = scanToSyncMarker();
+            _synced = markerStart >= 0;
+        }
+        else if (_position < _end) {
+            // A block is followed by the sync marker of the next block, or the end of the tape
+            int first = _input.read();
+            if (first >= 0) {
+                byte[] marker = new byte[_syncMarker.length];
+                marker[0] = (byte)first;
+                _input.readFully(marker, 1, marker.length - 1);
+                _position += marker.length;
+                if (!Arrays.equals(marker, _syncMarker)) {
+                    throw new StreamCorruptedException("Missing sync marker at [" + markerStart + "]");
+                }
+            }
+            else {
+                markerStart = -1;
+            }
+        }
+        if (markerStart < 0 || markerStart >= _end) {
+            _ended = true;
+            return false;
+        }
+
+        int length = _input.readInt();
+        if (length < 0) throw new StreamCorruptedException("Invalid block length [" + length + "]");
+        if (length > _blockBytes.length) _blockBytes = new byte[length];
+        _input.readFully(_blockBytes, 0, length);
+        _position += Integer.BYTES + length;
+        _block = new ByteBufferInput(ByteBuffer.wrap(_blockBytes, 0, length));
+        _context = new TurboTapeV1ObjectReader.Context(_readerProvider, _metrics, _block);
+        _reusing = null;
+        return true;
+    }
+
+    /**
+     * Scans the input for the sync marker, stopping once past the end of the split
+     * @return The position of the sync marker, or -1 if none starts within the split
+     * @throws IOException If an IO exception occurs
+     */
+    private long scanToSyncMarker() throws IOException {
+        int length = _syncMarker.length;
+        byte[] window = new byte[length];
+        long scanned = 0;
+        while (_position - length < _end) {
+            int b = _input.read();
+            if (b < 0) return -1;
+            window[(int)(scanned % length)] = (byte)b;
+            scanned++;
+            _position++;
+            if (scanned >= length && matches(window, (int)(scanned % length))) return _position - length;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the circular window holds the sync marker
+     * @param window The window
+     * @param start The position in the window of the first byte
+     * @return True if the window holds the sync marker
+     */
+    private boolean matches(byte[] window, int start) {
+        for (int ix = 0; ix < window.length; ix++) {
+            if (window[(start + ix) % window.length] != _syncMarker[ix]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.util.TapeBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Writes top level objects to a splittable tape, which can be split into byte ranges decoded independently
+ * by a {@link TurboTapeV1SplitReader} each.
+ * <p>
+ * The tape starts with the {@value TurboTapeV1Protocol#SPLITTABLE_HEADER} header and a random sync marker of
+ * {@value TurboTapeV1Protocol#SYNC_MARKER_LENGTH} bytes. The objects follow in blocks, each being the sync
+ * marker, the byte length of the block as an int, and the objects of the block. The objects of a block are
+ * encoded with a context of their own, so each block defines the aliases, field names and dictionary strings
+ * it uses, and a reader can start decoding at any block found by scanning for the sync marker.
+ * <p>
+ * Objects are collected into a block until it holds at least the block size, so objects are written to the
+ * output stream as blocks complete, or when the writer is flushed.
+ * <p>
+ * If encoding an object fails, the part of it encoded is discarded. If it had already defined names or strings
+ * in the context of the block, the block is completed without it, and the next object starts a new block.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TurboTapeV1SplittableWriter implements Closeable {
+    private static final int INITIAL_BUFFER_CAPACITY = 256;
+
+    private final TurboTapeV1WritePlans _plans;
+    private final TurboTapeV1WriterOptions _options;
+    private final OutputStream _outputStream;
+    private final int _blockSize;
+    private final byte[] _syncMarker = new byte[TurboTapeV1Protocol.SYNC_MARKER_LENGTH];
+    private final TapeBuffer _frame = new TapeBuffer(INITIAL_BUFFER_CAPACITY);
+    private final TapeBuffer _block = new TapeBuffer(INITIAL_BUFFER_CAPACITY);
+    // The context of the current block, or null if no object has been written to it
+    private TurboTapeV1ObjectWriter.Context _context;
+    // True if the current block takes no more objects, as a failed write left definitions in its context
+    // which are not on the tape
+    private boolean _sealed;
+
+    /**
+     * Creates the writer. Use {@link TurboTapeV1Serializer#openSplittableTape(OutputStream, int)} to open a tape.
+     * @param plans The write plans of the classes written
+     * @param options The encoding options
+     * @param outputStream The output stream to write the tape to
+     * @param blockSize The number of bytes after which a block is completed
+     */
+    TurboTapeV1SplittableWriter(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options,
+                                OutputStream outputStream, int blockSize) {
+        if (blockSize <= 0) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        _plans = plans;
+        _options = options;
+        _outputStream = outputStream;
+        _blockSize = blockSize;
+
+        UUID random = UUID.randomUUID();
+        ByteBuffer.wrap(_syncMarker).putLong(random.getMostSignificantBits()).putLong(random.getLeastSignificantBits());
+        _frame.write(TurboTapeV1Protocol.SPLITTABLE_HEADER_BYTES);
+        _frame.write(_syncMarker);
+    }
+
+    /**
+     * Writes the object to the current block, writing the block to the output stream if it is complete
+     * @param object The object to write
+     * @param <T> The objects type
+     * @throws IOException If thrown by the output stream, or the object writer raises one
+     */
+    public <T> void write(T object) throws IOException {
+        if (_sealed) writeBlock();
+        if (_context == null) _context = new TurboTapeV1ObjectWriter.Context(_plans, _options, null);
+        int start = _block.size();
+        int revision = _context.revision();
+        boolean written = false;
+        try {
+            new TurboTapeV1ObjectWriter<>(_context, object).write(_block);
+            written = true;
+        }
+        finally {
+            if (!written) discard(start, revision);
+        }
+        if (_block.size() >= _blockSize) writeBlock();
+    }
+
+    /**
+     * Discards the part of a failed object encoded. If the context of the block changed, the block is sealed,
+     * or dropped along with its context if the object was the first of it.
+     * @param start The size of the block when the object started
+     * @param revision The revision of the context when the object started
+     */
+    private void discard(int start, int revision) {
+        _block.truncate(start);
+        if (_context.revision() == revision) return;
+        if (start == 0) _context = null;
+        else _sealed = true;
+    }
+
+    /**
+     * Completes the current block, and flushes the output stream
+     * @throws IOException If thrown by the output stream
+     */
+    public void flush() throws IOException {
+        writeBlock();
+        _outputStream.flush();
+    }
+
+    /**
+     * Completes the current block, and closes the output stream
+     * @throws IOException If thrown by the output stream
+     */
+    @Override
+    public void close() throws IOException {
+        writeBlock();
+        _outputStream.close();
+    }
+
+    /**
+     * Writes the current block preceded by the sync marker and its length, and the header before the first
+     * block. Nothing but a pending header is written if the block is empty.
+     * @throws IOException If thrown by the output stream
+     */
+    private void writeBlock() throws IOException {
+        if (_context != null) {
+            _frame.write(_syncMarker);
+            _frame.writeInt(_block.size());
+        }
+        _frame.writeTo(_outputStream);
+        _frame.reset();
+        _block.writeTo(_outputStream);
+        _block.reset();
+        _context = null;
+        _sealed = false;
+    }
+}
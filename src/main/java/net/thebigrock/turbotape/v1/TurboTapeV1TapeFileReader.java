@@ -0,0 +1,158 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.util.ByteBufferInput;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the records of a tape file written by a {@link TurboTapeV1TapeFileWriter} in any order.
+ * <p>
+ * The tape file and its index are memory mapped, so a record is located in constant time from its index
+ * entry, and decoded straight from the mapped memory without copying it. Files larger than
+ * {@value #REGION_SIZE} bytes are mapped in regions of that size, and the few records spanning two regions
+ * are mapped on their own. The index is mapped in regions of the same size, so records are numbered by a
+ * long, like the record numbers returned by {@link TurboTapeV1TapeFileWriter#append(Object)}. Sequences left
+ * lazy by a read handler are decoded from the mapped memory as they are iterated.
+ * <p>
+ * The reader sees the records written when it was opened. Instances are not thread safe.
+ */
+public class TurboTapeV1TapeFileReader implements Closeable {
+    private static final int REGION_SIZE = 1 << 30;
+    private static final int INDEX_REGION_ENTRIES = REGION_SIZE / Long.BYTES;
+
+    private final ObjectReadHandlerProvider _readerProvider;
+    private final TurboTapeV1MetricsListener _metrics;
+    private final FileChannel _channel;
+    private final LongBuffer[] _index;
+    private final long _count;
+    private final MappedByteBuffer[] _regions;
+    // The end offset of the last record
+    private final long _end;
+
+    /**
+     * Opens the tape file. Use {@link TurboTapeV1Deserializer#openTapeFile(Path)} to open a tape file.
+     * @param readerProvider The reader provider used to resolve object read handlers
+     * @param metrics The listener receiving the decoding metrics, or null
+     * @param path The path of the tape file
+     * @throws IOException If the file cannot be opened, or is not a tape file
+     */
+    TurboTapeV1TapeFileReader(ObjectReadHandlerProvider readerProvider, TurboTapeV1MetricsListener metrics,
+                              Path path) throws IOException {
+        _readerProvider = readerProvider;
+        _metrics = metrics;
+        _channel = FileChannel.open(path, StandardOpenOption.READ);
+        try (FileChannel indexChannel = FileChannel.open(TurboTapeV1TapeFileWriter.indexPath(path),
+                StandardOpenOption.READ)) {
+            _count = indexChannel.size() / Long.BYTES;
+            _index = new LongBuffer[(int)((_count + INDEX_REGION_ENTRIES - 1) / INDEX_REGION_ENTRIES)];
+            for (int region = 0; region < _index.length; region++) {
+                long first = (long)region * INDEX_REGION_ENTRIES;
+                long entries = Math.min(INDEX_REGION_ENTRIES, _count - first);
+                _index[region] = indexChannel.map(FileChannel.MapMode.READ_ONLY, first * Long.BYTES,
+                        entries * Long.BYTES).asLongBuffer();
+            }
+
+            // Only the records in the index are mapped, ignoring data appended after them
+            int headerLength = TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES.length;
+            _end = _count > 0 ? entry(_count - 1) : headerLength;
+            if (_end < headerLength || _end > _channel.size()) {
+                throw new StreamCorruptedException("Index does not match the tape file");
+            }
+            _regions = new MappedByteBuffer[(int)((_end + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int region = 0; region < _regions.length; region++) {
+                long offset = (long)region * REGION_SIZE;
+                _regions[region] = _channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(REGION_SIZE, _end - offset));
+            }
+            TurboTapeV1Deserializer.readHeader(new ByteBufferInput(bytes(0, headerLength)));
+        }
+        catch (IOException | RuntimeException e) {
+            _channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The number of records in the tape file
+     * @return The number of records
+     */
+    public long size() {
+        return _count;
+    }
+
+    /**
+     * Reads the record with the given number
+     * @param cls The class of the object to read
+     * @param number The record number, from 0
+     * @param <T> The object type deferred from the specified class
+     * @return The object read
+     * @throws IOException If the tape is malformed
+     * @throws IndexOutOfBoundsException If there is no such record
+     */
+    public <T> T read(Class<T> cls, long number) throws IOException {
+        ByteBufferInput in = new ByteBufferInput(record(number));
+        return cls.cast(new TurboTapeV1ObjectReader(_readerProvider, _metrics, in).read());
+    }
+
+    /**
+     * Returns the encoded bytes of the record with the given number, as a read only view of the mapped memory
+     * @param number The record number, from 0
+     * @return The record bytes, valid until the reader is closed
+     * @throws IOException If the index is invalid
+     * @throws IndexOutOfBoundsException If there is no such record
+     */
+    public ByteBuffer record(long number) throws IOException {
+        if (number < 0 || number >= _count) {
+            throw new IndexOutOfBoundsException("No record [" + number + "], record count is " + _count);
+        }
+        long start = number == 0 ? TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES.length : entry(number - 1);
+        long end = entry(number);
+        if (start > end || end > _end || end - start > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Invalid index entry for record [" + number + "]");
+        }
+        return bytes(start, (int)(end - start));
+    }
+
+    /**
+     * Closes the tape file. The mapped memory is released once the objects read no longer reference it.
+     * @throws IOException If an IO exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /**
+     * Returns the index entry of the record, which is its end offset
+     * @param number The record number, from 0
+     * @return The end offset of the record
+     */
+    private long entry(long number) {
+        return _index[(int)(number / INDEX_REGION_ENTRIES)].get((int)(number % INDEX_REGION_ENTRIES));
+    }
+
+    /**
+     * Returns a view of the bytes at the given offset of the tape file
+     * @param offset The offset in the tape file
+     * @param length The number of bytes
+     * @return The bytes
+     * @throws IOException If an IO exception occurs
+     */
+    private ByteBuffer bytes(long offset, int length) throws IOException {
+        int region = (int)(offset / REGION_SIZE);
+        int start = (int)(offset % REGION_SIZE);
+        if (start + (long)length <= REGION_SIZE) {
+            return _regions[region].slice(start, length).asReadOnlyBuffer();
+        }
+        return _channel.map(FileChannel.MapMode.READ_ONLY, offset, length).asReadOnlyBuffer();
+    }
+}
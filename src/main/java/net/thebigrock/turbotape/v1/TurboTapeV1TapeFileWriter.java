@@ -0,0 +1,218 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.util.TapeBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends top level objects as records to a tape file, with a sidecar index of the record offsets.
+ * <p>
+ * The tape file starts with the protocol header, followed by the records. Unlike a session, each record is
+ * encoded with a context of its own, defining the aliases and field names it uses, so any record can be
+ * read on its own. The index file, named as the tape file with {@value #INDEX_SUFFIX} appended, holds the
+ * end offset of each record as a big endian long, so record K starts where record K - 1 ends.
+ * <p>
+ * Records are encoded straight into a memory mapped region of the tape file, which is mapped ahead of the
+ * records in steps of {@value #REGION_SIZE} bytes, or larger for records that do not fit. The end offset of
+ * a record is appended to the index after the record, so on reopening a file, any data following the last
+ * indexed record, left by a writer which did not complete, is discarded. The file is truncated to the last
+ * record when the writer is closed.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class TurboTapeV1TapeFileWriter implements Closeable {
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int REGION_SIZE = 1 << 24;
+
+    private final TurboTapeV1WritePlans _plans;
+    private final TurboTapeV1WriterOptions _options;
+    private final FileChannel _channel;
+    private final FileChannel _indexChannel;
+    private final ByteBuffer _indexEntry = ByteBuffer.allocate(Long.BYTES);
+    private long _count;
+    private long _end;
+    // The mapped region records are encoded into, positioned at the end of the last record
+    private MappedByteBuffer _region;
+
+    /**
+     * Opens the tape file, creating it if it does not exist.
+     * Use {@link TurboTapeV1Serializer#openTapeFile(Path)} to open a tape file.
+     * @param plans The write plans of the classes written
+     * @param options The encoding options
+     * @param path The path of the tape file
+     * @throws IOException If the file cannot be opened, or is not a tape file
+     */
+    TurboTapeV1TapeFileWriter(TurboTapeV1WritePlans plans, TurboTapeV1WriterOptions options, Path path)
+            throws IOException {
+        _plans = plans;
+        _options = options;
+        _channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            _indexChannel = FileChannel.open(indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        catch (IOException e) {
+            _channel.close();
+            throw e;
+        }
+
+        try {
+            open();
+        }
+        catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * The number of records in the tape file
+     * @return The number of records
+     */
+    public long size() {
+        return _count;
+    }
+
+    /**
+     * Appends the object as a record to the tape file
+     * @param object The object to write
+     * @param <T> The objects type
+     * @return The record number of the object
+     * @throws IOException If an IO exception occurs, or the object writer raises one
+     */
+    public <T> long append(T object) throws IOException {
+        int length;
+        int minimum = 1;
+        while (true) {
+            ByteBuffer region = region(minimum);
+            try {
+                TapeBuffer target = new TapeBuffer(region);
+                TurboTapeV1ObjectWriter.Context context = new TurboTapeV1ObjectWriter.Context(_plans, _options, null);
+                new TurboTapeV1ObjectWriter<>(context, object).write(target);
+                length = target.size();
+                break;
+            }
+            catch (BufferOverflowException e) {
+                // Map a new region, or one twice the size of a new region that did not fit the record, and retry
+                int remaining = region.remaining();
+                if (remaining > Integer.MAX_VALUE / 2) throw new IOException("Record too large", e);
+                minimum = remaining < REGION_SIZE ? REGION_SIZE : remaining * 2;
+            }
+        }
+
+        _end += length;
+        _region.position(_region.position() + length);
+        _indexEntry.clear().putLong(_end).flip();
+        writeFully(_indexChannel, _indexEntry, _count * Long.BYTES);
+        return _count++;
+    }
+
+    /**
+     * Forces the records appended, and their index entries, to the storage device
+     * @throws IOException If an IO exception occurs
+     */
+    public void flush() throws IOException {
+        if (_region != null) _region.force();
+        _channel.force(false);
+        _indexChannel.force(false);
+    }
+
+    /**
+     * Closes the tape file, truncating it to the end of the last record
+     * @throws IOException If an IO exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (_region != null) _region.force();
+            _region = null;
+            if (_channel.isOpen() && _channel.size() > _end && _end > 0) _channel.truncate(_end);
+        }
+        finally {
+            _channel.close();
+            _indexChannel.close();
+        }
+    }
+
+    /**
+     * Writes the header of a new file, or verifies the header of an existing file, and positions the writer
+     * after the last record in the index
+     * @throws IOException If the file is not a tape file, or an IO exception occurs
+     */
+    private void open() throws IOException {
+        byte[] header = TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES;
+        long indexSize = _indexChannel.size();
+        _count = indexSize / Long.BYTES;
+        if (_count == 0 && _channel.size() <= header.length) {
+            writeFully(_channel, ByteBuffer.wrap(header), 0);
+            _end = header.length;
+            _indexChannel.truncate(0);
+            return;
+        }
+
+        ByteBuffer existing = ByteBuffer.allocate(header.length);
+        readFully(_channel, existing, 0);
+        if (!Arrays.equals(existing.array(), header)) throw new StreamCorruptedException("Not a tape file");
+        _end = header.length;
+        if (_count > 0) {
+            ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+            readFully(_indexChannel, last, (_count - 1) * Long.BYTES);
+            _end = last.getLong(0);
+        }
+        if (_end < header.length || _end > _channel.size()) {
+            throw new StreamCorruptedException("Index does not match the tape file");
+        }
+
+        // Discard a partial index entry, and any data following the last indexed record
+        _indexChannel.truncate(_count * Long.BYTES);
+        _channel.truncate(_end);
+    }
+
+    /**
+     * Returns the mapped region at the end of the last record, mapping a new one if it has less than the
+     * given number of bytes remaining
+     * @param minimum The minimum number of bytes remaining
+     * @return The region, positioned at the end of the last record
+     * @throws IOException If an IO exception occurs
+     */
+    private ByteBuffer region(int minimum) throws IOException {
+        if (_region == null || _region.remaining() < minimum) {
+            if (_region != null) _region.force();
+            _region = _channel.map(FileChannel.MapMode.READ_WRITE, _end, Math.max(minimum, REGION_SIZE));
+        }
+        return _region.duplicate();
+    }
+
+    /**
+     * The path of the index file of a tape file
+     * @param path The path of the tape file
+     * @return The path of the index file
+     */
+    static Path indexPath(Path path) {
+        return path.resolveSibling(path.getFileName() + INDEX_SUFFIX);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new StreamCorruptedException("Unexpected end of file");
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.ObjectWriteHandler;
+import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
+import net.thebigrock.turbotape.util.TapeBuffer;
+
+import java.io.UTFDataFormatException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches the write plan of each class written, resolved once from the writer provider.
+ * <p>
+ * Each plan is numbered, so the writer contexts can keep the type index allocated for the plan on their tape in
+ * an array, and writing an object needs neither provider lookups nor hashing of its alias. The plans are shared
+ * by all writers of a serializer, and are safe to use from multiple threads.
+ */
+class TurboTapeV1WritePlans extends ClassValue<TurboTapeV1WritePlans.Plan> {
+    private final ObjectWriteHandlerProvider _writerProvider;
+    private final AtomicInteger _planCount = new AtomicInteger();
+
+    /**
+     * Creates the plan cache
+     * @param writerProvider The writer provider to use to resolve object writers
+     */
+    TurboTapeV1WritePlans(ObjectWriteHandlerProvider writerProvider) {
+        _writerProvider = writerProvider;
+    }
+
+    /**
+     * Resolves the plan of a class not seen before
+     * @param cls The class of the objects written
+     * @return The plan
+     * @throws IllegalStateException If the class is not supported by the provider
+     */
+    @Override
+    protected Plan computeValue(Class<?> cls) {
+        String alias = _writerProvider.getAlias(cls);
+        TapeBuffer encodedAlias = new TapeBuffer(Short.BYTES + alias.length());
+        try {
+            encodedAlias.writeUTF(alias);
+        }
+        catch (UTFDataFormatException e) {
+            throw new IllegalStateException("Alias of " + cls + " is too long", e);
+        }
+        return new Plan(_planCount.getAndIncrement(), alias, encodedAlias.toByteArray(),
+                _writerProvider.getWriteHandler(cls));
+    }
+
+    /**
+     * The plan for writing objects of a class
+     */
+    static class Plan {
+        // The number of the plan, unique within the plan cache
+        final int number;
+        final String alias;
+        // The alias as written to the tape by DataOutput.writeUTF
+        final byte[] encodedAlias;
+        final ObjectWriteHandler<Object> writeHandler;
+
+        private Plan(int number, String alias, byte[] encodedAlias, ObjectWriteHandler<Object> writeHandler) {
+            this.number = number;
+            this.alias = alias;
+            this.encodedAlias = encodedAlias;
+            this.writeHandler = writeHandler;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package net.thebigrock.turbotape.v1;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The encoding options of a serializer, shared by the writers of its tapes.
+ * Use the {@link TurboTapeV1SerializerBuilder} to configure them.
+ */
+class TurboTapeV1WriterOptions {
+    static final TurboTapeV1WriterOptions DEFAULT = new TurboTapeV1WriterOptions(false, 0, false, false, null,
+            false, null);
+
+    // True to write integer fields in the smallest of the fixed and variable length encodings
+    final boolean compactIntegers;
+    // The capacity of the string value dictionary, or 0 if disabled
+    final int stringDictionaryCapacity;
+    // True to write objects referenced more than once as back-references
+    final boolean trackIdentity;
+    // True to write sequence chunks of objects with the same primitive fields as column blocks
+    final boolean columnarSequences;
+    // The pool encoding chunks of top level sequences in parallel, or null to encode on the calling thread
+    final ForkJoinPool parallelPool;
+    // True to prefix each object with the byte lengths of its fields and sub-objects, so readers can skip them
+    final boolean lengthPrefixedObjects;
+    // The listener receiving the encoding metrics, or null if not collected
+    final TurboTapeV1MetricsListener metrics;
+
+    TurboTapeV1WriterOptions(boolean compactIntegers, int stringDictionaryCapacity, boolean trackIdentity,
+                             boolean columnarSequences, ForkJoinPool parallelPool, boolean lengthPrefixedObjects,
+                             TurboTapeV1MetricsListener metrics) {
+        this.compactIntegers = compactIntegers;
+        this.stringDictionaryCapacity = stringDictionaryCapacity;
+        this.trackIdentity = trackIdentity;
+        this.columnarSequences = columnarSequences;
+        this.parallelPool = parallelPool;
+        this.lengthPrefixedObjects = lengthPrefixedObjects;
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,73 @@
+package net.thebigrock.turbotape;
+
+import net.thebigrock.turbotape.v1.TurboTapeV1Deserializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Serializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RecordHandlersTest {
+
+    enum Unit { GRAM, LITRE }
+
+    private record Amount(float quantity, Unit unit) { }
+
+    private record Ingredient(String name, boolean optional, Amount amount, byte[] checksum) { }
+
+    private record Recipe(long id, int servings, double rating, List<Ingredient> ingredients, long[] tags) { }
+
+    private record Boxed(Integer value) { }
+
+    @Test
+    public void test_record_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        TurboTapeV1Serializer serializer = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+                .addRecord(Recipe.class)
+                .addRecord(Ingredient.class)
+                .addRecord("amount", Amount.class)
+                .build());
+        TurboTapeV1Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .addRecord(Recipe.class)
+                .addRecord(Ingredient.class)
+                .addRecord("amount", Amount.class)
+                .build());
+        Recipe recipe = new Recipe(7L, 4, 4.5, List.of(
+                new Ingredient("flour", false, new Amount(0.5f, Unit.GRAM), new byte[] { 1, 2 }),
+                new Ingredient("milk", true, new Amount(0.25f, Unit.LITRE), new byte[0])), new long[] { 3L, 5L });
+
+        // :: Act
+
+        Recipe result = deserializer.deserialize(Recipe.class, serializer.serialize(recipe));
+
+        // :: Assert
+
+        assertThat(result.id()).isEqualTo(7L);
+        assertThat(result.servings()).isEqualTo(4);
+        assertThat(result.rating()).isEqualTo(4.5);
+        assertThat(result.tags()).isEqualTo(new long[] { 3L, 5L });
+        assertThat(result.ingredients()).hasSize(2);
+        Ingredient flour = result.ingredients().get(0);
+        assertThat(flour.name()).isEqualTo("flour");
+        assertThat(flour.optional()).isFalse();
+        assertThat(flour.amount()).isEqualTo(new Amount(0.5f, Unit.GRAM));
+        assertThat(flour.checksum()).isEqualTo(new byte[] { 1, 2 });
+        assertThat(result.ingredients().get(1).optional()).isTrue();
+        assertThat(result.ingredients().get(1).amount()).isEqualTo(new Amount(0.25f, Unit.LITRE));
+    }
+
+    @Test
+    public void test_unsupported_classes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ObjectWriteHandlerProviderBuilder.create().addRecord(String.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> ObjectWriteHandlerProviderBuilder.create().addRecord(Boxed.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> ObjectReadHandlerProviderBuilder.create().addRecord(Boxed.class));
+    }
+}
@@ -0,0 +1,166 @@
+package net.thebigrock.turbotape.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BlockCompressingOutputStreamTest {
+
+    @Test
+    public void test_roundtrip_on_compressor_thread() throws IOException {
+
+        // :: Arrange
+
+        byte[] data = new byte[100_000];
+        for (int ix = 0; ix < data.length; ix++) {
+            data[ix] = (byte)(ix % 97 < 50 ? ix % 7 : 'x');
+        }
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (OutputStream out = new BlockCompressingOutputStream(sink, new DeflateBlockCodec(), 4096,
+                runnable -> new Thread(runnable, "compressor"))) {
+            out.write(data, 0, 10);
+            out.write(data[10]);
+            out.write(data, 11, data.length - 11);
+        }
+        InputStream in = new BlockDecompressingInputStream(new ByteArrayInputStream(sink.toByteArray()),
+                new DeflateBlockCodec());
+
+        // :: Assert
+
+        assertThat(sink.size()).isLessThan(data.length / 4);
+        assertThat(in.readAllBytes()).isEqualTo(data);
+        assertThat(in.read()).isEqualTo(-1);
+    }
+
+    @Test
+    public void test_incompressible_blocks_are_stored() throws IOException {
+
+        // :: Arrange
+
+        byte[] data = new byte[10_000];
+        new Random(42).nextBytes(data);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (OutputStream out = new BlockCompressingOutputStream(sink, new DeflateBlockCodec(), 1000)) {
+            out.write(data);
+        }
+        InputStream in = new BlockDecompressingInputStream(new ByteArrayInputStream(sink.toByteArray()),
+                new DeflateBlockCodec());
+
+        // :: Assert
+
+        // Header, then ten blocks each with two varint lengths, then the end marker
+        assertThat(sink.size()).isEqualTo(4 + 1 + 2 + data.length + 10 * 4 + 1);
+        assertThat(in.readAllBytes()).isEqualTo(data);
+    }
+
+    @Test
+    public void test_flush_writes_partial_block() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = new BlockCompressingOutputStream(sink, new DeflateBlockCodec(), 1 << 16,
+                runnable -> new Thread(runnable, "compressor"));
+
+        // :: Act
+
+        out.write(new byte[] { 1, 2, 3 });
+        out.flush();
+        byte[] flushed = sink.toByteArray();
+        InputStream in = new BlockDecompressingInputStream(new ByteArrayInputStream(flushed), new DeflateBlockCodec());
+
+        // :: Assert
+
+        byte[] read = new byte[3];
+        assertThat(in.read(read)).isEqualTo(3);
+        assertThat(read).isEqualTo(new byte[] { 1, 2, 3 });
+        out.close();
+        assertThrows(IOException.class, () -> out.write(4));
+    }
+
+    @Test
+    public void test_stream_fails_once_compressor_stops() throws Exception {
+
+        // :: Arrange
+
+        List<Thread> compressors = new ArrayList<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        OutputStream sink = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        OutputStream out = new BlockCompressingOutputStream(sink, new DeflateBlockCodec(), 16, runnable -> {
+            Thread compressor = new Thread(runnable, "compressor");
+            compressors.add(compressor);
+            return compressor;
+        });
+
+        // :: Act
+
+        out.write(new byte[] { 1, 2, 3 });
+        out.flush();
+        compressors.get(0).interrupt();
+        compressors.get(0).join();
+
+        // :: Assert
+
+        assertThrows(IOException.class, () -> out.write(new byte[64]));
+        assertThrows(IOException.class, out::close);
+        assertThat(closed.get()).isTrue();
+    }
+
+    @Test
+    public void test_registered_codec_is_installed() throws IOException {
+
+        // :: Arrange
+
+        byte[] data = new byte[10_000];
+        for (int ix = 0; ix < data.length; ix++) {
+            data[ix] = (byte)(ix / 100);
+        }
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (OutputStream out = new BlockCompressingOutputStream(sink, BlockCodecs.find(RunLengthBlockCodec.ID),
+                4096)) {
+            out.write(data);
+        }
+        InputStream in = new BlockDecompressingInputStream(new ByteArrayInputStream(sink.toByteArray()));
+
+        // :: Assert
+
+        assertThat(BlockCodecs.installed().get(0)).isInstanceOf(DeflateBlockCodec.class);
+        assertThat(sink.size()).isLessThan(data.length / 10);
+        assertThat(in.readAllBytes()).isEqualTo(data);
+        assertThrows(IllegalArgumentException.class, () -> BlockCodecs.find(9));
+    }
+
+    @Test
+    public void test_unknown_codec() {
+        byte[] tape = { 'F', 'S', 'Z', '1', 9, 1, 0 };
+        InputStream in = new BlockDecompressingInputStream(new ByteArrayInputStream(tape), new DeflateBlockCodec());
+
+        assertThrows(StreamCorruptedException.class, in::read);
+    }
+}
@@ -0,0 +1,48 @@
+package net.thebigrock.turbotape.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ByteBufferInputTest {
+
+    @Test
+    public void test_reads_tape_buffer_content() throws IOException {
+
+        // :: Arrange
+
+        TapeBuffer buffer = new TapeBuffer(1, true);
+        buffer.writeBoolean(true);
+        buffer.writeShort(-2);
+        buffer.writeInt(123456);
+        buffer.writeLong(Long.MIN_VALUE);
+        buffer.writeDouble(1.5);
+        buffer.writeUTF("\u00e6\u00f8\u00e5");
+        buffer.write(new byte[] { 1, 2, 3 });
+
+        // :: Act
+
+        ByteBufferInput in = new ByteBufferInput(buffer.contentBuffer());
+
+        // :: Assert
+
+        assertThat(in.readBoolean()).isTrue();
+        assertThat(in.readUnsignedShort()).isEqualTo(0xFFFE);
+        assertThat(in.readInt()).isEqualTo(123456);
+        assertThat(in.readLong()).isEqualTo(Long.MIN_VALUE);
+        assertThat(in.readDouble()).isEqualTo(1.5);
+        assertThat(in.readUTF()).isEqualTo("\u00e6\u00f8\u00e5");
+        byte[] bytes = new byte[2];
+        in.readFully(bytes);
+        assertThat(bytes).isEqualTo(new byte[] { 1, 2 });
+        assertThat(in.remaining()).isEqualTo(1);
+        assertThrows(EOFException.class, in::readShort);
+        assertThat(in.skipBytes(5)).isEqualTo(1);
+        assertThat(in.remaining()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,30 @@
+package net.thebigrock.turbotape.util;
+
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class IndexAllocatorTest {
+
+    @Test
+    public void test_reset_allocator_forgets_names() {
+
+        // :: Arrange
+
+        IndexAllocator allocator = new IndexAllocator(16);
+        allocator.allocateNew("a");
+        allocator.allocateNew("b");
+
+        // :: Act
+
+        allocator.reset();
+        int b = allocator.allocateNew("b");
+
+        // :: Assert
+
+        assertThat(b).isEqualTo(1);
+        assertThat(allocator.find("a")).isEqualTo(0);
+        assertThat(allocator.find("b")).isEqualTo(1);
+        assertThat(allocator.allocateNew("a")).isEqualTo(2);
+    }
+}
@@ -0,0 +1,59 @@
+package net.thebigrock.turbotape.util;
+
+import java.io.StreamCorruptedException;
+
+/**
+ * Block codec encoding runs of equal bytes as pairs of length and byte, registered as a service for the tests
+ */
+public class RunLengthBlockCodec implements BlockCodec {
+    public static final int ID = 200;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public Compressor newCompressor() {
+        return new Compressor() {
+            @Override
+            public int compress(byte[] block, int length, byte[] target) {
+                int size = 0;
+                for (int ix = 0; ix < length; ) {
+                    int run = 1;
+                    while (ix + run < length && run < 255 && block[ix + run] == block[ix]) run++;
+                    if (size + 2 > target.length) return -1;
+                    target[size++] = (byte)run;
+                    target[size++] = block[ix];
+                    ix += run;
+                }
+                return size;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public Decompressor newDecompressor() {
+        return new Decompressor() {
+            @Override
+            public void decompress(byte[] compressed, int compressedLength, byte[] block, int length)
+                    throws StreamCorruptedException {
+                int size = 0;
+                for (int ix = 0; ix + 1 < compressedLength; ix += 2) {
+                    int run = compressed[ix] & 0xFF;
+                    if (size + run > length) throw new StreamCorruptedException("Block exceeds its length");
+                    for (int end = size + run; size < end; size++) block[size] = compressed[ix + 1];
+                }
+                if (size != length) throw new StreamCorruptedException("Block is shorter than its length");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
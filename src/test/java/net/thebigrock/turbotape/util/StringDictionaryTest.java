@@ -0,0 +1,56 @@
+package net.thebigrock.turbotape.util;
+
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class StringDictionaryTest {
+
+    @Test
+    public void test_referenced_strings_get_a_second_chance() {
+
+        // :: Arrange
+
+        StringDictionary dictionary = new StringDictionary(3);
+        int a = dictionary.add("a");
+        int b = dictionary.add("b");
+        int c = dictionary.add("c");
+
+        // :: Act
+
+        dictionary.find("a");
+        int d = dictionary.add("d");
+
+        // :: Assert
+
+        assertThat(dictionary.find("b")).isEqualTo(-1);
+        assertThat(d).isEqualTo(b);
+        assertThat(dictionary.find("a")).isEqualTo(a);
+        assertThat(dictionary.find("c")).isEqualTo(c);
+        assertThat(dictionary.find("d")).isEqualTo(d);
+        // All strings were found since the hand passed, so it sweeps the ring once and evicts where it started
+        assertThat(dictionary.add("e")).isEqualTo(c);
+    }
+
+    @Test
+    public void test_cleared_dictionary_starts_over() {
+
+        // :: Arrange
+
+        StringDictionary dictionary = new StringDictionary(2);
+        dictionary.add("a");
+        dictionary.add("b");
+        dictionary.find("a");
+
+        // :: Act
+
+        dictionary.clear();
+
+        // :: Assert
+
+        assertThat(dictionary.find("a")).isEqualTo(-1);
+        assertThat(dictionary.find("b")).isEqualTo(-1);
+        assertThat(dictionary.add("c")).isEqualTo(0);
+        assertThat(dictionary.add("d")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,108 @@
+package net.thebigrock.turbotape.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TapeBufferTest {
+
+    @Test
+    public void test_output_matches_DataOutputStream() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream expected = new DataOutputStream(outputStream);
+        TapeBuffer buffer = new TapeBuffer(1);
+        String text = "Mixed \u0000 ascii, \u00E6\u00F8\u00E5 and \u20AC\uD83D\uDE00";
+
+        // :: Act
+
+        expected.writeUTF(text);
+        buffer.writeUTF(text);
+        expected.writeShort(0xFFFE);
+        expected.writeInt(-125153);
+        expected.writeLong(Long.MIN_VALUE);
+        expected.writeFloat(-1.0f);
+        expected.writeDouble(Double.MIN_VALUE);
+        buffer.writeShort(0xFFFE);
+        buffer.writeInt(-125153);
+        buffer.writeLong(Long.MIN_VALUE);
+        buffer.writeFloat(-1.0f);
+        buffer.writeDouble(Double.MIN_VALUE);
+
+        // :: Assert
+
+        assertThat(buffer.toByteArray()).isEqualTo(outputStream.toByteArray());
+        assertThat(buffer.size()).isEqualTo(outputStream.size());
+    }
+
+    @Test
+    public void test_reset_keeps_nothing() throws IOException {
+        TapeBuffer buffer = new TapeBuffer(4);
+        buffer.writeLong(1L);
+        buffer.reset();
+        buffer.writeShort(7);
+
+        assertThat(buffer.toByteArray()).isEqualTo(new byte[] { 0, 7 });
+    }
+
+    @Test
+    public void test_overwrite_int() {
+        TapeBuffer buffer = new TapeBuffer(4);
+        buffer.writeByte(1);
+        buffer.writeInt(0);
+        buffer.writeByte(2);
+        buffer.writeInt(1, 0x01020304);
+
+        assertThat(buffer.toByteArray()).isEqualTo(new byte[] { 1, 1, 2, 3, 4, 2 });
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.writeInt(3, 0));
+    }
+
+    @Test
+    public void test_too_long_utf_string() {
+        TapeBuffer buffer = new TapeBuffer(16);
+
+        assertThrows(UTFDataFormatException.class, () -> buffer.writeUTF("x".repeat(0x10000)));
+    }
+
+    @Test
+    public void test_string_encoding() throws IOException {
+
+        // :: Arrange
+
+        String ascii = "plain ascii";
+        String mixed = "Mixed \u0000 ascii, \u00E6\u00F8\u00E5 and \u20AC\uD83D\uDE00";
+        String large = "x".repeat(100_000);
+        TapeBuffer heap = new TapeBuffer(1);
+        TapeBuffer direct = new TapeBuffer(1, true);
+
+        // :: Act
+
+        for (TapeBuffer buffer : new TapeBuffer[] { heap, direct }) {
+            buffer.writeString(ascii);
+            buffer.writeString(mixed);
+            buffer.writeString(large);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(heap.toByteArray()));
+
+        // :: Assert
+
+        assertThat(direct.toByteArray()).isEqualTo(heap.toByteArray());
+        for (String expected : new String[] { ascii, mixed, large }) {
+            byte[] bytes = new byte[VarInt.readInt(in)];
+            in.readFully(bytes);
+            assertThat(bytes).isEqualTo(expected.getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(in.available()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,68 @@
+package net.thebigrock.turbotape.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VarIntTest {
+
+    @Test
+    public void test_encoding_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        int[] ints = { 0, 1, 127, 128, 16383, 16384, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        long[] longs = { 0L, 127L, 128L, 1L << 56, -1L, Long.MAX_VALUE, Long.MIN_VALUE };
+        TapeBuffer buffer = new TapeBuffer(1);
+
+        // :: Act
+
+        for (int value : ints) buffer.writeVarInt(value);
+        for (long value : longs) buffer.writeVarLong(value);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+
+        // :: Assert
+
+        int size = 0;
+        for (int value : ints) {
+            assertThat(VarInt.readInt(in)).isEqualTo(value);
+            size += VarInt.sizeOf(value);
+        }
+        for (long value : longs) {
+            assertThat(VarInt.readLong(in)).isEqualTo(value);
+            size += VarInt.sizeOf(value);
+        }
+        assertThat(buffer.size()).isEqualTo(size);
+        assertThat(in.available()).isEqualTo(0);
+        assertThat(VarInt.sizeOf(127)).isEqualTo(1);
+        assertThat(VarInt.sizeOf(128)).isEqualTo(2);
+        assertThat(VarInt.sizeOf(-1)).isEqualTo(5);
+        assertThat(VarInt.sizeOf(-1L)).isEqualTo(10);
+    }
+
+    @Test
+    public void test_zigzag() {
+        assertThat(VarInt.encodeZigZag(0)).isEqualTo(0);
+        assertThat(VarInt.encodeZigZag(-1)).isEqualTo(1);
+        assertThat(VarInt.encodeZigZag(1)).isEqualTo(2);
+        assertThat(VarInt.encodeZigZag(Integer.MIN_VALUE)).isEqualTo(-1);
+        assertThat(VarInt.encodeZigZag(-64L)).isEqualTo(127L);
+        for (int value : new int[] { 0, -1, 1, 1234567, Integer.MIN_VALUE, Integer.MAX_VALUE }) {
+            assertThat(VarInt.decodeZigZag(VarInt.encodeZigZag(value))).isEqualTo(value);
+            assertThat(VarInt.decodeZigZag(VarInt.encodeZigZag((long)value * 3))).isEqualTo((long)value * 3);
+        }
+    }
+
+    @Test
+    public void test_overlong_encoding() {
+        byte[] bytes = { -1, -1, -1, -1, -1, 1 };
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        assertThrows(StreamCorruptedException.class, () -> VarInt.readInt(in));
+    }
+}
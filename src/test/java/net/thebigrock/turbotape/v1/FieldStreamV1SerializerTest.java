@@ -1,14 +1,23 @@
 package net.thebigrock.turbotape.v1;
 
 import net.thebigrock.turbotape.FieldWriter;
+import net.thebigrock.turbotape.ObjectWriteHandler;
+import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
 import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
 import net.thebigrock.turbotape.Serializer;
 import net.thebigrock.turbotape.v1.util.HexViewFormatter;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class FieldStreamV1SerializerTest {
 
@@ -60,12 +69,99 @@ public class FieldStreamV1SerializerTest {
 
         // :: Assert
 
-        assertThat(bytes1.length).isEqualTo(86);
-        assertThat(bytes2.length).isEqualTo(86);
-        assertThat(bytes3.length).isEqualTo(87);
+        assertThat(bytes1.length).isEqualTo(87);
+        assertThat(bytes2.length).isEqualTo(87);
+        assertThat(bytes3.length).isEqualTo(88);
 
         System.out.println(HexViewFormatter.format(bytes3));
 
     }
 
+    @Test
+    public void test_buffer_and_channel_serialization() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+                .add("c1", TestClass1.class, TestClass1::serialize)
+                .build());
+
+        TestClass1 test = new TestClass1(true, -125153, Long.MIN_VALUE, -1.0f, Double.MIN_VALUE, "yoy2222");
+        byte[] expected = serializer.serialize(test);
+
+        ByteBuffer heapBuffer = ByteBuffer.allocate(128).position(3);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(128);
+        ByteArrayOutputStream channelOutput = new ByteArrayOutputStream();
+        Pipe pipe = Pipe.open();
+
+        // :: Act
+
+        serializer.serialize(test, heapBuffer);
+        serializer.serialize(test, directBuffer);
+        serializer.serialize(test, Channels.newChannel(channelOutput));
+        serializer.serialize(test, pipe.sink());
+        pipe.sink().close();
+
+        // :: Assert
+
+        assertThat(heapBuffer.position()).isEqualTo(3 + expected.length);
+        assertThat(toBytes(heapBuffer.flip().position(3))).isEqualTo(expected);
+        assertThat(toBytes(directBuffer.flip())).isEqualTo(expected);
+        assertThat(channelOutput.toByteArray()).isEqualTo(expected);
+        assertThat(Channels.newInputStream(pipe.source()).readAllBytes()).isEqualTo(expected);
+    }
+
+    @Test
+    public void test_buffer_overflow() {
+        Serializer serializer = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+                .add("c1", TestClass1.class, TestClass1::serialize)
+                .build());
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+
+        assertThrows(BufferOverflowException.class,
+                () -> serializer.serialize(new TestClass1(true, 3, 100, 0.1f, 0.2d, "yoyoyo"), buffer));
+        assertThat(buffer.position()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_handlers_resolved_once_per_class() throws IOException {
+
+        // :: Arrange
+
+        ObjectWriteHandlerProvider provider = ObjectWriteHandlerProviderBuilder.create()
+                .add("c1", TestClass1.class, TestClass1::serialize)
+                .build();
+        AtomicInteger lookups = new AtomicInteger();
+        Serializer serializer = new TurboTapeV1Serializer(new ObjectWriteHandlerProvider() {
+            @Override
+            public <T> ObjectWriteHandler<T> getWriteHandler(Class<?> cls) {
+                lookups.incrementAndGet();
+                return provider.getWriteHandler(cls);
+            }
+
+            @Override
+            public String getAlias(Class<?> cls) {
+                lookups.incrementAndGet();
+                return provider.getAlias(cls);
+            }
+        });
+        TestClass1 test = new TestClass1(true, 3, 100, 0.1f, 0.2d, "yoyoyo");
+
+        // :: Act
+
+        byte[] first = serializer.serialize(test);
+        byte[] second = serializer.serialize(test);
+
+        // :: Assert
+
+        assertThat(second).isEqualTo(first);
+        assertThat(lookups.get()).isEqualTo(2);
+        assertThrows(IllegalStateException.class, () -> serializer.serialize("unknown"));
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
 }
@@ -0,0 +1,1187 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.Deserializer;
+import net.thebigrock.turbotape.FieldReader;
+import net.thebigrock.turbotape.FieldWriter;
+import net.thebigrock.turbotape.ObjectReadHandlerProviderBuilder;
+import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
+import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
+import net.thebigrock.turbotape.Serializer;
+import net.thebigrock.turbotape.util.StringView;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static net.thebigrock.turbotape.v1.TurboTapeV1Protocol.SEQUENCE_CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class TurboTapeV1DeserializerTest {
+
+    public static class Primitives {
+        private final boolean b;
+        private final int i;
+        private final long l;
+        private final float f;
+        private final double d;
+        private final String str;
+
+        Primitives(boolean b, int i, long l, float f, double d, String str) {
+            this.b = b;
+            this.i = i;
+            this.l = l;
+            this.f = f;
+            this.d = d;
+            this.str = str;
+        }
+
+        public static void serialize(FieldWriter writer, Primitives obj) {
+            writer.write(obj.b).as("b");
+            writer.write(obj.i).as("i");
+            writer.write(obj.l);
+            writer.write(obj.f).as("f");
+            writer.write(obj.d);
+            writer.write(obj.str).as("str");
+        }
+
+        // Reads the fields in reverse, mixing names and positions
+        public static Primitives deserialize(FieldReader reader) {
+            String str = reader.as("str").readString();
+            double d = reader.at(4).readDouble();
+            float f = reader.as("f").readFloat();
+            long l = reader.at(2).as("l").readLong();
+            int i = reader.at(0).readBool() == 1 ? reader.readInt() : -1;
+            return new Primitives(reader.at(0).readBool() == 1, i, l, f, d, str);
+        }
+    }
+
+    public static class Node {
+        private final String name;
+        private final Node left;
+        private final Node right;
+
+        Node(String name, Node left, Node right) {
+            this.name = name;
+            this.left = left;
+            this.right = right;
+        }
+
+        public static void serialize(FieldWriter writer, Node obj) {
+            writer.write(obj.name).as("name");
+            writer.write(obj.left).as("left");
+            writer.write(obj.right).as("right");
+        }
+
+        // Requests the right sub-tree before the left, which forces the reader to keep the left one
+        public static Node deserialize(FieldReader reader) {
+            Node right = reader.as("right").readObject(Node.class);
+            Node left = reader.as("left").readObject(Node.class);
+            return new Node(reader.as("name").readString(), left, right);
+        }
+
+        // Only reads the name, leaving the sub-trees on the tape
+        public static Node deserializeName(FieldReader reader) {
+            return new Node(reader.readString(), null, null);
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + left + "," + right + ")";
+        }
+    }
+
+    public static class Arrays {
+        private final int[] ints;
+        private final long[] longs;
+        private final float[] floats;
+        private final double[] doubles;
+        private final byte[] bytes;
+
+        Arrays(int[] ints, long[] longs, float[] floats, double[] doubles, byte[] bytes) {
+            this.ints = ints;
+            this.longs = longs;
+            this.floats = floats;
+            this.doubles = doubles;
+            this.bytes = bytes;
+        }
+
+        public static void serialize(FieldWriter writer, Arrays obj) {
+            writer.write(obj.ints).as("ints");
+            writer.write(obj.longs);
+            writer.write(obj.floats);
+            writer.write(obj.doubles);
+            writer.write(obj.bytes).as("bytes");
+        }
+
+        public static Arrays deserialize(FieldReader reader) {
+            byte[] bytes = reader.as("bytes").readByteArray();
+            return new Arrays(reader.at(0).readIntArray(), reader.readLongArray(), reader.readFloatArray(),
+                    reader.readDoubleArray(), bytes);
+        }
+    }
+
+    public static class Link {
+        private String name;
+        private Link next;
+
+        public static void serialize(FieldWriter writer, Link obj) {
+            writer.write(obj.name);
+            writer.write(obj.next);
+        }
+
+        // Registers the link before reading the next, as the chain may link back to it
+        public static Link deserialize(FieldReader reader) {
+            Link link = reader.register(new Link());
+            link.name = reader.readString();
+            link.next = reader.readObject(Link.class);
+            return link;
+        }
+    }
+
+    public static class Row {
+        private final int id;
+
+        Row(int id) {
+            this.id = id;
+        }
+
+        public static void serialize(FieldWriter writer, Row obj) {
+            writer.write(obj.id);
+        }
+
+        public static Row deserialize(FieldReader reader) {
+            return new Row(reader.readInt());
+        }
+    }
+
+    public static class Table {
+        private final Iterable<Row> rows;
+        private final Node footer;
+
+        Table(Iterable<Row> rows, Node footer) {
+            this.rows = rows;
+            this.footer = footer;
+        }
+
+        public static void serialize(FieldWriter writer, Table obj) {
+            writer.write(obj.rows).as("rows");
+            writer.write(obj.footer).as("footer");
+        }
+
+        // Reads the footer first, which forces the reader to buffer the rows preceding it on the tape
+        public static Table deserializeFooterFirst(FieldReader reader) {
+            Node footer = reader.as("footer").readObject(Node.class);
+            return new Table(reader.as("rows").readIterable(Row.class), footer);
+        }
+    }
+
+    public static class RowLog {
+        private final Iterable<Row> rows;
+
+        RowLog(Iterable<Row> rows) {
+            this.rows = rows;
+        }
+
+        public static void serialize(FieldWriter writer, RowLog obj) {
+            writer.write(obj.rows);
+        }
+
+        public static RowLog deserialize(FieldReader reader) {
+            return new RowLog(reader.readIterable(Row.class));
+        }
+    }
+
+    public static class Batch {
+        private final Iterable<Object> items;
+
+        Batch(Iterable<Object> items) {
+            this.items = items;
+        }
+
+        public static void serialize(FieldWriter writer, Batch obj) {
+            writer.write(obj.items.iterator()).as("items");
+        }
+
+        public static Batch deserialize(FieldReader reader) {
+            List<Object> items = new ArrayList<>();
+            reader.as("items").readIterable(Object.class).forEach(items::add);
+            return new Batch(items);
+        }
+    }
+
+    // Counts the objects and fields written and read, the bytes written and encoded, and the names allocated
+    public static class CountingMetrics implements TurboTapeV1MetricsListener {
+        private final Map<String, List<Integer>> written = new TreeMap<>();
+        private final Map<String, List<Integer>> read = new TreeMap<>();
+        private final List<String> allocated = new ArrayList<>();
+        private final List<String> encoded = new ArrayList<>();
+        private long bytesWritten;
+
+        @Override
+        public synchronized void objectsWritten(String alias, int objects, int fields, int bytes) {
+            count(written, alias, objects, fields);
+            bytesWritten += bytes;
+        }
+
+        @Override
+        public synchronized void fieldNameAllocated(String name, int index) {
+            allocated.add(name + "=" + index);
+        }
+
+        @Override
+        public synchronized void aliasAllocated(String alias, int index) {
+            allocated.add("@" + alias + "=" + index);
+        }
+
+        @Override
+        public synchronized void encoded(String alias, long bytes, long nanos) {
+            assertThat(nanos).isAtLeast(0L);
+            encoded.add(alias + ":" + bytes);
+        }
+
+        @Override
+        public synchronized void objectsRead(String alias, int objects, int fields) {
+            count(read, alias, objects, fields);
+        }
+
+        private static void count(Map<String, List<Integer>> counts, String alias, int objects, int fields) {
+            List<Integer> count = counts.computeIfAbsent(alias, key -> new ArrayList<>(List.of(0, 0)));
+            count.set(0, count.get(0) + objects);
+            count.set(1, count.get(1) + fields);
+        }
+    }
+
+    private static final Serializer SERIALIZER = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+            .add("p", Primitives.class, Primitives::serialize)
+            .add("n", Node.class, Node::serialize)
+            .add("r", Row.class, Row::serialize)
+            .add("t", Table.class, Table::serialize)
+            .add("l", RowLog.class, RowLog::serialize)
+            .add("a", Arrays.class, Arrays::serialize)
+            .add("b", Batch.class, Batch::serialize)
+            .build());
+
+    private static final Serializer TRACKING_SERIALIZER = TurboTapeV1SerializerBuilder.create(
+            ObjectWriteHandlerProviderBuilder.create()
+                    .add("n", Node.class, Node::serialize)
+                    .add("r", Row.class, Row::serialize)
+                    .add("t", Table.class, Table::serialize)
+                    .add("k", Link.class, Link::serialize)
+                    .build())
+            .trackIdentity(true)
+            .build();
+
+    @Test
+    public void test_primitive_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .build());
+        Primitives original = new Primitives(true, -125153, Long.MIN_VALUE, -1.0f, Double.MIN_VALUE, "yoy2222");
+
+        // :: Act
+
+        Primitives result = deserializer.deserialize(Primitives.class, SERIALIZER.serialize(original));
+
+        // :: Assert
+
+        assertThat(result.b).isTrue();
+        assertThat(result.i).isEqualTo(-125153);
+        assertThat(result.l).isEqualTo(Long.MIN_VALUE);
+        assertThat(result.f).isEqualTo(-1.0f);
+        assertThat(result.d).isEqualTo(Double.MIN_VALUE);
+        assertThat(result.str).isEqualTo("yoy2222");
+    }
+
+    @Test
+    public void test_string_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .build());
+        String[] strings = { "", "ascii", "\u00E6\u00F8\u00E5 \u20AC\uD83D\uDE00", "y".repeat(70_000),
+                "\u00E6".repeat(5000) };
+
+        for (String str : strings) {
+
+            // :: Act
+
+            Primitives result = deserializer.deserialize(Primitives.class,
+                    SERIALIZER.serialize(new Primitives(true, 1, 2L, 3f, 4d, str)));
+
+            // :: Assert
+
+            assertThat(result.str).isEqualTo(str);
+        }
+    }
+
+    @Test
+    public void test_compact_integer_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Serializer compactSerializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                .add("p", Primitives.class, Primitives::serialize)
+                .build())
+                .compactIntegers(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .build());
+        int[] ints = { 0, 1, -1, 63, -64, 127, 128, 16383, -125153, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        long[] longs = { 0L, 100L, -100L, 1L << 48, -(1L << 48), Long.MAX_VALUE, Long.MIN_VALUE };
+
+        for (int i : ints) {
+            for (long l : longs) {
+
+                // :: Act
+
+                Primitives original = new Primitives(true, i, l, 0.5f, 0.25, "s");
+                byte[] compact = compactSerializer.serialize(original);
+                Primitives result = deserializer.deserialize(Primitives.class, compact);
+
+                // :: Assert
+
+                assertThat(result.i).isEqualTo(i);
+                assertThat(result.l).isEqualTo(l);
+                assertThat(compact.length).isAtMost(SERIALIZER.serialize(original).length);
+            }
+        }
+        Primitives small = new Primitives(true, 3, 100L, 0.5f, 0.25, "s");
+        assertThat(compactSerializer.serialize(small).length).isEqualTo(SERIALIZER.serialize(small).length - 10);
+    }
+
+    @Test
+    public void test_compact_integer_per_field() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+                .add("r", Row.class, (writer, row) -> writer.writeCompact(row.id))
+                .build());
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("r", Row::deserialize)
+                .build());
+
+        // :: Act
+
+        byte[] small = serializer.serialize(new Row(-3));
+        byte[] large = serializer.serialize(new Row(Integer.MIN_VALUE));
+
+        // :: Assert
+
+        assertThat(deserializer.deserialize(Row.class, small).id).isEqualTo(-3);
+        assertThat(deserializer.deserialize(Row.class, large).id).isEqualTo(Integer.MIN_VALUE);
+        assertThat(large.length - small.length).isEqualTo(4);
+    }
+
+    @Test
+    public void test_primitive_array_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("a", Arrays::deserialize)
+                .build());
+        int[] ints = IntStream.range(0, 100_000).map(i -> i * 31 - 7).toArray();
+        long[] longs = { Long.MIN_VALUE, -1L, 0L, Long.MAX_VALUE };
+        float[] floats = { -1.0f, Float.NaN, Float.MIN_VALUE };
+        double[] doubles = IntStream.range(0, 3000).mapToDouble(i -> i / 3.0).toArray();
+        byte[] bytes = { -128, 0, 127 };
+        Arrays original = new Arrays(ints, longs, floats, doubles, bytes);
+        Arrays empty = new Arrays(new int[0], new long[0], new float[0], new double[0], new byte[0]);
+
+        // :: Act
+
+        byte[] tape = SERIALIZER.serialize(original);
+        Arrays result = deserializer.deserialize(Arrays.class, tape);
+        Arrays emptyResult = deserializer.deserialize(Arrays.class, SERIALIZER.serialize(empty));
+
+        // :: Assert
+
+        assertThat(result.ints).isEqualTo(ints);
+        assertThat(result.longs).isEqualTo(longs);
+        assertThat(result.floats).isEqualTo(floats);
+        assertThat(result.doubles).isEqualTo(doubles);
+        assertThat(result.bytes).isEqualTo(bytes);
+        assertThat(emptyResult.ints).isEmpty();
+        assertThat(emptyResult.bytes).isEmpty();
+
+        // Each array is a field header, extended type byte, varint length and the packed elements
+        int object = 4 + 2 + (2 + 1) + 2;
+        int fields = 5 * (2 + 1) + (2 + 4) + (2 + 5);
+        int lengths = 3 + 1 + 1 + 2 + 1;
+        int elements = 100_000 * 4 + 4 * 8 + 3 * 4 + 3000 * 8 + 3;
+        assertThat(tape.length).isEqualTo(object + fields + lengths + elements);
+    }
+
+    @Test
+    public void test_shared_references_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserialize)
+                .add("r", Row::deserialize)
+                .add("t", Table::deserializeFooterFirst)
+                .build());
+        Node shared = new Node("shared", new Node("leaf", null, null), null);
+        Node tree = new Node("root", new Node("a", shared, shared), new Node("b", shared, null));
+        Row row = new Row(7);
+        List<Row> rows = java.util.Arrays.asList(row, new Row(8), row, row);
+
+        // :: Act
+
+        byte[] tape = TRACKING_SERIALIZER.serialize(tree);
+        Node result = deserializer.deserialize(Node.class, tape);
+        Table table = deserializer.deserialize(Table.class, TRACKING_SERIALIZER.serialize(new Table(rows, shared)));
+
+        // :: Assert
+
+        assertThat(result.toString()).isEqualTo(tree.toString());
+        assertThat(result.left.left).isSameInstanceAs(result.left.right);
+        assertThat(result.right.left).isSameInstanceAs(result.left.left);
+        assertThat(tape.length).isLessThan(SERIALIZER.serialize(tree).length);
+
+        List<Row> rowResult = new ArrayList<>();
+        table.rows.forEach(rowResult::add);
+        assertThat(rowResult).hasSize(4);
+        assertThat(rowResult.get(2)).isSameInstanceAs(rowResult.get(0));
+        assertThat(rowResult.get(3)).isSameInstanceAs(rowResult.get(0));
+        assertThat(rowResult.get(1).id).isEqualTo(8);
+    }
+
+    @Test
+    public void test_cyclic_graph_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("k", Link::deserialize)
+                .add("n", Node::deserialize)
+                .build());
+        Link first = new Link();
+        Link second = new Link();
+        first.name = "first";
+        first.next = second;
+        second.name = "second";
+        second.next = first;
+
+        // :: Act
+
+        Link result = deserializer.deserialize(Link.class, TRACKING_SERIALIZER.serialize(first));
+
+        // :: Assert
+
+        assertThat(result.name).isEqualTo("first");
+        assertThat(result.next.name).isEqualTo("second");
+        assertThat(result.next.next).isSameInstanceAs(result);
+    }
+
+    @Test
+    public void test_sub_object_tree_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserialize)
+                .build());
+        Node tree = new Node("root",
+                new Node("a", new Node("a1", null, null), new Node("a2", null, null)),
+                new Node("b", null, new Node("b2", new Node("b21", null, null), null)));
+
+        // :: Act
+
+        Node result = deserializer.deserialize(Node.class, SERIALIZER.serialize(tree));
+
+        // :: Assert
+
+        assertThat(result.toString()).isEqualTo(tree.toString());
+    }
+
+    @Test
+    public void test_unread_sub_objects_are_skipped() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserializeName)
+                .build());
+        Node tree = new Node("root", new Node("a", new Node("a1", null, null), null), new Node("b", null, null));
+        byte[] bytes = SERIALIZER.serialize(tree);
+        byte[] trailing = "tail".getBytes(StandardCharsets.UTF_8);
+        byte[] tape = new byte[bytes.length + trailing.length];
+        System.arraycopy(bytes, 0, tape, 0, bytes.length);
+        System.arraycopy(trailing, 0, tape, bytes.length, trailing.length);
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(tape);
+
+        // :: Act
+
+        Node result = deserializer.deserialize(Node.class, inputStream);
+
+        // :: Assert
+
+        assertThat(result.name).isEqualTo("root");
+        assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("tail");
+    }
+
+    @Test
+    public void test_invalid_header() {
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create().build());
+
+        assertThrows(UncheckedIOException.class,
+                () -> deserializer.deserialize(Node.class, "XXXX".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void test_sequence_is_streamed() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("r", Row::deserialize)
+                .add("l", RowLog::deserialize)
+                .build());
+        int count = 100_000;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Iterator<Row> rows = IntStream.range(0, count)
+                .mapToObj(id -> {
+                    // Tape data must reach the stream while the sequence is still being written
+                    if (id == count - 1) assertThat(outputStream.size()).isGreaterThan(0);
+                    return id % 1000 == 0 ? null : new Row(id);
+                })
+                .iterator();
+
+        // :: Act
+
+        SERIALIZER.serialize(new RowLog(() -> rows), outputStream);
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+        RowLog log = deserializer.deserialize(RowLog.class, inputStream);
+
+        // :: Assert
+
+        // The sequence of the top level object is decoded as it is iterated
+        assertThat(inputStream.available()).isGreaterThan(0);
+        int expected = 0;
+        for (Row row : log.rows) {
+            if (expected % 1000 == 0) assertThat(row).isNull();
+            else assertThat(row.id).isEqualTo(expected);
+            expected++;
+        }
+        assertThat(expected).isEqualTo(count);
+        assertThat(inputStream.available()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_sequence_read_after_following_sub_object() throws IOException {
+
+        // :: Arrange
+
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("r", Row::deserialize)
+                .add("n", Node::deserializeName)
+                .add("t", Table::deserializeFooterFirst)
+                .build());
+        List<Row> rows = IntStream.range(0, 3000).mapToObj(Row::new).collect(Collectors.toList());
+
+        // :: Act
+
+        Table table = deserializer.deserialize(Table.class,
+                SERIALIZER.serialize(new Table(rows, new Node("f", null, null))));
+
+        // :: Assert
+
+        assertThat(table.footer.name).isEqualTo("f");
+        List<Integer> ids = new ArrayList<>();
+        table.rows.forEach(row -> ids.add(row.id));
+        assertThat(ids).isEqualTo(IntStream.range(0, 3000).boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_columnar_sequence_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("p", Primitives.class, Primitives::serialize)
+                        .add("n", Node.class, Node::serialize)
+                        .add("b", Batch.class, Batch::serialize)
+                        .build())
+                .columnarSequences(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .add("n", Node::deserializeName)
+                .add("b", Batch::deserialize)
+                .build());
+        // A first chunk of primitives, a chunk with a null, and a chunk of nodes, written as rows
+        List<Object> items = new ArrayList<>();
+        for (int ix = 0; ix < 2500; ix++) {
+            items.add(ix == 1500 ? null : ix < 2048
+                    ? new Primitives(ix % 3 == 0, -ix, (long)ix << 40, ix / 4f, ix * -0.5, "s" + ix % 7)
+                    : new Node("n" + ix, null, null));
+        }
+
+        // :: Act
+
+        byte[] columnar = serializer.serialize(new Batch(items));
+        byte[] rows = SERIALIZER.serialize(new Batch(items));
+        Batch result = deserializer.deserialize(Batch.class, columnar);
+
+        // :: Assert
+
+        assertThat(columnar.length).isLessThan(rows.length);
+        assertThat(result.items).hasSize(items.size());
+        Iterator<Object> iterator = result.items.iterator();
+        for (Object item : items) {
+            Object read = iterator.next();
+            if (item == null) {
+                assertThat(read).isNull();
+            }
+            else if (item instanceof Node) {
+                assertThat(((Node)read).name).isEqualTo(((Node)item).name);
+            }
+            else {
+                Primitives expected = (Primitives)item;
+                Primitives actual = (Primitives)read;
+                assertThat(actual.b).isEqualTo(expected.b);
+                assertThat(actual.i).isEqualTo(expected.b ? expected.i : -1);
+                assertThat(actual.l).isEqualTo(expected.l);
+                assertThat(actual.f).isEqualTo(expected.f);
+                assertThat(actual.d).isEqualTo(expected.d);
+                assertThat(actual.str).isEqualTo(expected.str);
+            }
+        }
+    }
+
+    @Test
+    public void test_columnar_chunks_of_different_classes() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("p", Primitives.class, Primitives::serialize)
+                        .add("r", Row.class, Row::serialize)
+                        .add("b", Batch.class, Batch::serialize)
+                        .build())
+                .columnarSequences(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .add("r", Row::deserialize)
+                .add("b", Batch::deserialize)
+                .build());
+        // Column blocks of primitives, rows and primitives again, each reusing the columns of the one before
+        List<Object> items = new ArrayList<>();
+        for (int ix = 0; ix < 3 * SEQUENCE_CHUNK_SIZE; ix++) {
+            items.add(ix / SEQUENCE_CHUNK_SIZE == 1 ? new Row(ix) : new Primitives(true, ix, ix, ix, ix, "s" + ix));
+        }
+
+        // :: Act
+
+        Batch result = deserializer.deserialize(Batch.class, serializer.serialize(new Batch(items)));
+
+        // :: Assert
+
+        List<String> read = new ArrayList<>();
+        result.items.forEach(item -> read.add(item instanceof Row
+                ? "r" + ((Row)item).id
+                : ((Primitives)item).i + ((Primitives)item).str));
+        List<String> expected = new ArrayList<>();
+        items.forEach(item -> expected.add(item instanceof Row
+                ? "r" + ((Row)item).id
+                : ((Primitives)item).i + ((Primitives)item).str));
+        assertThat(read).isEqualTo(expected);
+    }
+
+    @Test
+    public void test_columnar_sequence_unread_columns_skipped() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("r", Row.class, Row::serialize)
+                        .add("l", RowLog.class, RowLog::serialize)
+                        .build())
+                .columnarSequences(true)
+                .compactIntegers(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("r", reader -> new Row(7))
+                .add("l", RowLog::deserialize)
+                .build());
+        List<Row> rows = IntStream.range(0, 3000).mapToObj(Row::new).collect(Collectors.toList());
+
+        // :: Act
+
+        RowLog log = deserializer.deserialize(RowLog.class, serializer.serialize(new RowLog(rows)));
+
+        // :: Assert
+
+        List<Integer> ids = new ArrayList<>();
+        log.rows.forEach(row -> ids.add(row.id));
+        assertThat(ids).isEqualTo(Collections.nCopies(3000, 7));
+    }
+
+    @Test
+    public void test_parallel_sequence_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        TurboTapeV1Serializer serializer = TurboTapeV1SerializerBuilder.create(
+                        ObjectWriteHandlerProviderBuilder.create()
+                                .add("p", Primitives.class, Primitives::serialize)
+                                .add("n", Node.class, Node::serialize)
+                                .add("b", Batch.class, Batch::serialize)
+                                .build())
+                .parallelSequences(pool)
+                .columnarSequences(true)
+                .build();
+        TurboTapeV1Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .add("n", Node::deserialize)
+                .add("b", Batch::deserialize)
+                .build());
+        // Nodes first appear in a later chunk, which has to define their alias and field names
+        List<Object> items = new ArrayList<>();
+        for (int ix = 0; ix < 50_000; ix++) {
+            items.add(ix < 10_000 || ix % 3 != 0
+                    ? new Primitives(ix % 2 == 0, ix, -ix, ix, ix, "s" + ix)
+                    : new Node("n" + ix, new Node("l", null, null), null));
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (TurboTapeV1SessionWriter writer = serializer.openSession(outputStream)) {
+            writer.write(new Batch(items));
+            // The names of the top level object were defined by the chunks of the previous one
+            writer.write(new Node("root", null, new Node("r", null, null)));
+        }
+        pool.shutdown();
+
+        // :: Assert
+
+        TurboTapeV1SessionReader reader = deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        Batch batch = reader.read(Batch.class);
+        assertThat(reader.read(Node.class).toString()).isEqualTo("root(null,r(null,null))");
+        assertThat(reader.hasNext()).isFalse();
+        assertThat(batch.items).hasSize(items.size());
+        Iterator<Object> iterator = batch.items.iterator();
+        for (Object item : items) {
+            Object read = iterator.next();
+            if (item instanceof Node) {
+                assertThat(read.toString()).isEqualTo(item.toString());
+            }
+            else {
+                assertThat(((Primitives)read).str).isEqualTo(((Primitives)item).str);
+                assertThat(((Primitives)read).l).isEqualTo(((Primitives)item).l);
+            }
+        }
+    }
+
+    @Test
+    public void test_length_prefixed_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("p", Primitives.class, Primitives::serialize)
+                        .add("n", Node.class, Node::serialize)
+                        .add("r", Row.class, Row::serialize)
+                        .add("t", Table.class, Table::serialize)
+                        .add("a", Arrays.class, Arrays::serialize)
+                        .build())
+                .lengthPrefixedObjects(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("p", Primitives::deserialize)
+                .add("n", Node::deserialize)
+                .add("r", Row::deserialize)
+                .add("t", Table::deserializeFooterFirst)
+                .add("a", Arrays::deserialize)
+                .build());
+        Primitives primitives = new Primitives(true, -5, 1L << 40, 1.5f, -2.5, "text \u00e6\u00f8\u00e5");
+        Arrays arrays = new Arrays(new int[] { 1, -2 }, new long[] { 3L }, new float[0], new double[] { 4.5 },
+                new byte[10_000]);
+        Node tree = new Node("root", new Node("a", new Node("a1", null, null), null), new Node("b", null, null));
+        List<Row> rows = IntStream.range(0, 3000).mapToObj(Row::new).collect(Collectors.toList());
+
+        // :: Act
+
+        Primitives primitivesResult = deserializer.deserialize(Primitives.class, serializer.serialize(primitives));
+        Arrays arraysResult = deserializer.deserialize(Arrays.class, serializer.serialize(arrays));
+        Node treeResult = deserializer.deserialize(Node.class, serializer.serialize(tree));
+        Table tableResult = deserializer.deserialize(Table.class, serializer.serialize(new Table(rows, tree)));
+
+        // :: Assert
+
+        assertThat(primitivesResult.str).isEqualTo(primitives.str);
+        assertThat(primitivesResult.l).isEqualTo(primitives.l);
+        assertThat(primitivesResult.d).isEqualTo(primitives.d);
+        assertThat(arraysResult.ints).isEqualTo(arrays.ints);
+        assertThat(arraysResult.longs).isEqualTo(arrays.longs);
+        assertThat(arraysResult.floats).isEqualTo(arrays.floats);
+        assertThat(arraysResult.doubles).isEqualTo(arrays.doubles);
+        assertThat(arraysResult.bytes).isEqualTo(arrays.bytes);
+        assertThat(treeResult.toString()).isEqualTo(tree.toString());
+        assertThat(tableResult.footer.toString()).isEqualTo(tree.toString());
+        List<Integer> ids = new ArrayList<>();
+        tableResult.rows.forEach(row -> ids.add(row.id));
+        assertThat(ids).hasSize(rows.size());
+        assertThat(ids.get(2999)).isEqualTo(2999);
+    }
+
+    @Test
+    public void test_length_prefixed_sub_objects_skipped_in_one_step() throws IOException {
+
+        // :: Arrange
+
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("n", Node.class, Node::serialize)
+                        .build())
+                .lengthPrefixedObjects(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserializeName)
+                .build());
+        // The alias and field names are defined by the top level object, so the sub-trees can be skipped
+        Node tree = new Node("root", new Node("a", new Node("a1", null, null), null), new Node("b", null, null));
+        byte[] bytes = serializer.serialize(tree);
+        byte[] tape = java.util.Arrays.copyOf(bytes, bytes.length + 4);
+        System.arraycopy("tail".getBytes(StandardCharsets.UTF_8), 0, tape, bytes.length, 4);
+        long[] skipped = new long[1];
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(tape) {
+            @Override
+            public synchronized long skip(long n) {
+                long count = super.skip(n);
+                skipped[0] += count;
+                return count;
+            }
+        };
+
+        // :: Act
+
+        Node result = deserializer.deserialize(Node.class, inputStream);
+
+        // :: Assert
+
+        assertThat(result.name).isEqualTo("root");
+        assertThat(skipped[0]).isGreaterThan(0L);
+        assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("tail");
+    }
+
+    @Test
+    public void test_length_prefixed_skipped_definitions_are_read() throws IOException {
+
+        // :: Arrange
+
+        TurboTapeV1Serializer serializer = TurboTapeV1SerializerBuilder.create(
+                        ObjectWriteHandlerProviderBuilder.create()
+                                .add("n", Node.class, Node::serialize)
+                                .build())
+                .lengthPrefixedObjects(true)
+                .stringDictionary(16)
+                .build();
+        TurboTapeV1Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserializeName)
+                .build());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // :: Act
+
+        // The sub-tree not read defines the dictionary string used by the next object, so it cannot be skipped
+        try (TurboTapeV1SessionWriter writer = serializer.openSession(outputStream)) {
+            writer.write(new Node("root", new Node("shared", null, null), null));
+            writer.write(new Node("shared", null, null));
+        }
+        TurboTapeV1SessionReader reader = deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+
+        // :: Assert
+
+        assertThat(reader.read(Node.class).name).isEqualTo("root");
+        assertThat(reader.read(Node.class).name).isEqualTo("shared");
+        assertThat(reader.hasNext()).isFalse();
+    }
+
+    @Test
+    public void test_string_views_compare_bytes() throws IOException {
+
+        // :: Arrange
+
+        StringView wanted = StringView.of("\u00e6-node");
+        byte[] wantedBytes = "\u00e6-node".getBytes(StandardCharsets.UTF_8);
+        Node tree = new Node("root", new Node("\u00e6-node", null, null), new Node("b", null, null));
+        List<String> names = new ArrayList<>();
+        List<String> matches = new ArrayList<>();
+        // Views are only valid while the object is read, so they are checked in place
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", reader -> {
+                    StringView name = reader.as("name").readStringView();
+                    if (name.equals(wanted)) {
+                        assertThat(name.hashCode()).isEqualTo(wanted.hashCode());
+                        assertThat(name.contentEquals(wantedBytes)).isTrue();
+                        assertThat(name.byteLength()).isEqualTo(7);
+                        assertThat(name.length()).isEqualTo(6);
+                        matches.add(name.toString());
+                    }
+                    names.add(name.charAt(0) + ":" + name.byteLength());
+                    reader.as("left").readObject(Node.class);
+                    reader.as("right").readObject(Node.class);
+                    return null;
+                })
+                .build());
+
+        for (boolean lengthPrefixed : new boolean[] { false, true }) {
+            Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                            .add("n", Node.class, Node::serialize)
+                            .build())
+                    .lengthPrefixedObjects(lengthPrefixed)
+                    .build();
+            names.clear();
+            matches.clear();
+
+            // :: Act
+
+            deserializer.deserialize(Node.class, serializer.serialize(tree));
+
+            // :: Assert
+
+            assertThat(names).containsExactly("r:4", "\u00e6:7", "b:1").inOrder();
+            assertThat(matches).containsExactly("\u00e6-node");
+        }
+    }
+
+    @Test
+    public void test_metrics_reported_per_alias() throws IOException {
+
+        // :: Arrange
+
+        CountingMetrics metrics = new CountingMetrics();
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("n", Node.class, Node::serialize)
+                        .add("r", Row.class, Row::serialize)
+                        .add("t", Table.class, Table::serialize)
+                        .build())
+                .metricsListener(metrics)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserialize)
+                .add("r", Row::deserialize)
+                .add("t", Table::deserializeFooterFirst)
+                .build(), metrics);
+        Table table = new Table(List.of(new Row(1), new Row(2), new Row(3)), new Node("f", null, null));
+
+        // :: Act
+
+        byte[] tape = serializer.serialize(table);
+        List<Integer> ids = new ArrayList<>();
+        deserializer.deserialize(Table.class, tape).rows.forEach(row -> ids.add(row.id));
+
+        // :: Assert
+
+        assertThat(ids).containsExactly(1, 2, 3).inOrder();
+        assertThat(metrics.written).containsExactly("n", List.of(1, 3), "r", List.of(3, 3), "t", List.of(1, 2));
+        assertThat(metrics.read).isEqualTo(metrics.written);
+        assertThat(metrics.allocated).containsExactly("@t=1", "rows=1", "footer=2", "@r=2", "@n=3", "name=3",
+                "left=4", "right=5");
+        int encoded = tape.length - TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES.length;
+        assertThat(metrics.encoded).containsExactly("t:" + encoded);
+        assertThat(metrics.bytesWritten).isLessThan((long)encoded);
+    }
+
+    @Test
+    public void test_encoding_recorded_by_flight_recorder() throws IOException {
+
+        // :: Arrange
+
+        Node node = new Node("a", null, null);
+        int encoded = SERIALIZER.serialize(node).length - TurboTapeV1Protocol.PROTOCOL_HEADER_BYTES.length;
+        Path dump = Files.createTempFile("turbotape", ".jfr");
+        List<RecordedEvent> events;
+
+        // :: Act
+
+        try (Recording recording = new Recording()) {
+            recording.enable("net.thebigrock.turbotape.Encode").withThreshold(Duration.ZERO);
+            recording.start();
+            SERIALIZER.serialize(node);
+            SERIALIZER.serialize(null);
+            recording.stop();
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        }
+        finally {
+            Files.delete(dump);
+        }
+
+        // :: Assert
+
+        assertThat(events.stream().map(event -> event.getString("alias") + ":" + event.getLong("bytes"))
+                .collect(Collectors.toList())).containsExactly("n:" + encoded, "null:2").inOrder();
+    }
+
+    @Test
+    public void test_pooled_encoders_write_same_tapes() throws Exception {
+
+        // :: Arrange
+
+        Serializer[] pooled = new Serializer[1];
+        ObjectWriteHandlerProvider writers = ObjectWriteHandlerProviderBuilder.create()
+                .add("n", Node.class, Node::serialize)
+                .add("r", Row.class, Row::serialize)
+                // Serializes its footer while written, which must not reuse the encoder in use
+                .add("t", Table.class, (writer, table) -> {
+                    try {
+                        writer.write(pooled[0].serialize(table.footer)).as("footerTape");
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    Table.serialize(writer, table);
+                })
+                .build();
+        pooled[0] = TurboTapeV1SerializerBuilder.create(writers).stringDictionary(4).pooledEncoders(true).build();
+        Serializer fresh = TurboTapeV1SerializerBuilder.create(writers).stringDictionary(4).build();
+        List<Object> objects = List.of(
+                new Table(List.of(new Row(1), new Row(2)), new Node("f", new Node("x", null, null), null)),
+                new Node("a", new Node("a", null, null), null),
+                new Row(3),
+                new Table(List.of(), new Node("g", null, null)));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // :: Act
+
+        List<Future<List<byte[]>>> tapes = new ArrayList<>();
+        try {
+            for (int task = 0; task < 8; task++) {
+                tapes.add(executor.submit(() -> {
+                    List<byte[]> written = new ArrayList<>();
+                    for (int round = 0; round < 3; round++) {
+                        for (Object object : objects) {
+                            written.add(pooled[0].serialize(object));
+                            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                            pooled[0].serialize(object, stream);
+                            written.add(stream.toByteArray());
+                        }
+                    }
+                    return written;
+                }));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        // :: Assert
+
+        for (Future<List<byte[]>> task : tapes) {
+            Iterator<byte[]> written = task.get().iterator();
+            for (int round = 0; round < 3; round++) {
+                for (Object object : objects) {
+                    byte[] expected = fresh.serialize(object);
+                    assertThat(written.next()).isEqualTo(expected);
+                    assertThat(written.next()).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_pooled_encoder_recovers_from_failed_handler() throws IOException {
+
+        // :: Arrange
+
+        boolean[] failed = new boolean[1];
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("n", Node.class, Node::serialize)
+                        .add("r", Row.class, (writer, row) -> {
+                            writer.write(row.id).as("failing");
+                            if (!failed[0]) {
+                                failed[0] = true;
+                                throw new IllegalStateException("Failed");
+                            }
+                        })
+                        .build())
+                .pooledEncoders(true)
+                .build();
+        Deserializer deserializer = new TurboTapeV1Deserializer(ObjectReadHandlerProviderBuilder.create()
+                .add("n", Node::deserialize)
+                .build());
+
+        // :: Act
+
+        assertThrows(IllegalStateException.class, () -> serializer.serialize(new Row(1)));
+        Node result = deserializer.deserialize(Node.class, serializer.serialize(new Node("a", null, null)));
+
+        // :: Assert
+
+        assertThat(result.toString()).isEqualTo("a(null,null)");
+    }
+
+    @Test
+    public void test_pooled_encoder_allocates_nothing_per_object() throws IOException {
+
+        // :: Arrange
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        Serializer serializer = TurboTapeV1SerializerBuilder.create(ObjectWriteHandlerProviderBuilder.create()
+                        .add("n", Node.class, Node::serialize)
+                        .build())
+                .pooledEncoders(true)
+                .build();
+        Node tree = new Node("root", new Node("left", null, null), new Node("right", null, null));
+        OutputStream outputStream = OutputStream.nullOutputStream();
+        int count = 20_000;
+        // Warm up the encoder, so its index maps and buffers have grown to fit
+        for (int ix = 0; ix < count; ix++) {
+            serializer.serialize(tree, outputStream);
+        }
+
+        // :: Act
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int ix = 0; ix < count; ix++) {
+            serializer.serialize(tree, outputStream);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // :: Assert
+
+        assertThat(allocated / count).isLessThan(8L);
+    }
+}
@@ -0,0 +1,464 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.FieldReader;
+import net.thebigrock.turbotape.FieldWriter;
+import net.thebigrock.turbotape.ObjectReadHandlerProviderBuilder;
+import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
+import net.thebigrock.turbotape.ReusingReadHandler;
+import net.thebigrock.turbotape.util.DeflateBlockCodec;
+import net.thebigrock.turbotape.util.RunLengthBlockCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class TurboTapeV1SessionTest {
+
+    public static class Message {
+        private final int sequenceNumber;
+        private final String status;
+
+        Message(int sequenceNumber, String status) {
+            this.sequenceNumber = sequenceNumber;
+            this.status = status;
+        }
+
+        public static void serialize(FieldWriter writer, Message obj) {
+            writer.write(obj.sequenceNumber).as("sequenceNumber");
+            writer.write(obj.status).as("status");
+        }
+
+        public static Message deserialize(FieldReader reader) {
+            return new Message(reader.as("sequenceNumber").readInt(), reader.as("status").readString());
+        }
+    }
+
+    public static class MutableMessage {
+        private int sequenceNumber;
+        private String status;
+
+        public static void fill(FieldReader reader, MutableMessage obj) {
+            obj.sequenceNumber = reader.as("sequenceNumber").readInt();
+            obj.status = reader.as("status").readString();
+        }
+    }
+
+    private final TurboTapeV1Serializer _serializer = new TurboTapeV1Serializer(
+            ObjectWriteHandlerProviderBuilder.create()
+                    .add("message", Message.class, Message::serialize)
+                    .build());
+
+    private final TurboTapeV1Deserializer _deserializer = new TurboTapeV1Deserializer(
+            ObjectReadHandlerProviderBuilder.create()
+                    .add("message", Message::deserialize)
+                    .build());
+
+    @Test
+    public void test_names_are_written_once_per_session() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        int singleMessageSize = _serializer.serialize(new Message(0, "OK")).length;
+
+        // :: Act
+
+        TurboTapeV1SessionWriter writer = _serializer.openSession(outputStream);
+        writer.write(new Message(0, "OK"));
+        int firstSize = outputStream.size();
+        writer.write(new Message(1, "OK"));
+        int secondSize = outputStream.size() - firstSize;
+        writer.write(new Message(2, "FAILED"));
+        writer.close();
+
+        // :: Assert
+
+        assertThat(firstSize).isEqualTo(singleMessageSize);
+        // Type index, int field, string field "OK", and end of object marker
+        assertThat(secondSize).isEqualTo(2 + (2 + 4) + (2 + 1 + 2) + 2);
+
+        TurboTapeV1SessionReader reader = _deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        for (int ix = 0; ix < 3; ix++) {
+            assertThat(reader.hasNext()).isTrue();
+            Message message = reader.read(Message.class);
+            assertThat(message.sequenceNumber).isEqualTo(ix);
+            assertThat(message.status).isEqualTo(ix < 2 ? "OK" : "FAILED");
+        }
+        assertThat(reader.hasNext()).isFalse();
+        assertThrows(EOFException.class, () -> reader.read(Message.class));
+    }
+
+    @Test
+    public void test_failed_write_is_discarded() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        TurboTapeV1SessionWriter writer = failingSerializer().openSession(outputStream);
+
+        // :: Act
+
+        writer.write(new Message(0, "OK"));
+        assertThrows(IllegalStateException.class, () -> writer.write(new Message(-1, "OK")));
+        writer.write(new Message(1, "OK"));
+        assertThrows(IllegalStateException.class, () -> writer.write(new Message(-1, "NEW")));
+        assertThrows(IOException.class, () -> writer.write(new Message(2, "OK")));
+        assertThrows(IOException.class, writer::flush);
+        writer.close();
+
+        // :: Assert
+
+        assertThat(readSequenceNumbers(outputStream.toByteArray())).containsExactly(0, 1).inOrder();
+    }
+
+    @Test
+    public void test_objects_read_into_reused_instance() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (TurboTapeV1SessionWriter writer = _serializer.openSession(outputStream)) {
+            for (int ix = 0; ix < 100; ix++) {
+                writer.write(new Message(ix, ix % 2 == 0 ? "OK" : "FAILED"));
+            }
+        }
+        MutableMessage instance = new MutableMessage();
+        List<Integer> sequenceNumbers = new ArrayList<>();
+
+        // :: Act
+
+        TurboTapeV1SessionReader reader = _deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        MutableMessage first = reader.read(instance, MutableMessage::fill);
+        long count = reader.forEach(instance, MutableMessage::fill, message -> {
+            assertThat(message).isSameInstanceAs(instance);
+            assertThat(message.status).isEqualTo(message.sequenceNumber % 2 == 0 ? "OK" : "FAILED");
+            sequenceNumbers.add(message.sequenceNumber);
+        });
+
+        // :: Assert
+
+        assertThat(first).isSameInstanceAs(instance);
+        assertThat(count).isEqualTo(99);
+        assertThat(sequenceNumbers.get(0)).isEqualTo(1);
+        assertThat(sequenceNumbers.get(98)).isEqualTo(99);
+        assertThrows(EOFException.class, () -> reader.read(instance, MutableMessage::fill));
+    }
+
+    @Test
+    public void test_reused_instance_scan_allocates_close_to_nothing() throws IOException {
+
+        // :: Arrange
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        int count = 20_000;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (TurboTapeV1SessionWriter writer = _serializer.openSession(outputStream)) {
+            for (int ix = 0; ix < count; ix++) {
+                writer.write(new Message(ix, ix % 2 == 0 ? "OK" : "FAILED"));
+            }
+        }
+        MutableMessage instance = new MutableMessage();
+        ReusingReadHandler<MutableMessage> handler = (reader, obj) ->
+                obj.sequenceNumber = reader.as("sequenceNumber").readInt();
+        TurboTapeV1SessionReader reader = _deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        // Warm up the reader, so its field tables and buffers have grown to fit
+        for (int ix = 0; ix < count / 2; ix++) {
+            reader.read(instance, handler);
+        }
+
+        // :: Act
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int ix = count / 2; ix < count; ix++) {
+            reader.read(instance, handler);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // :: Assert
+
+        assertThat(instance.sequenceNumber).isEqualTo(count - 1);
+        assertThat(allocated / (count / 2)).isLessThan(8L);
+    }
+
+    @Test
+    public void test_string_dictionary_across_session() throws IOException {
+
+        // :: Arrange
+
+        TurboTapeV1Serializer serializer = TurboTapeV1SerializerBuilder.create(
+                ObjectWriteHandlerProviderBuilder.create()
+                        .add("message", Message.class, Message::serialize)
+                        .build())
+                .stringDictionary(2)
+                .build();
+        String[] statuses = { "RUNNING", "RUNNING", "STOPPED", "RUNNING", "FAILED", "STOPPED", "RUNNING",
+                "x".repeat(300) };
+        ByteArrayOutputStream plainOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (TurboTapeV1SessionWriter plainWriter = _serializer.openSession(plainOutput);
+             TurboTapeV1SessionWriter writer = serializer.openSession(outputStream)) {
+            for (int ix = 0; ix < statuses.length; ix++) {
+                plainWriter.write(new Message(ix, statuses[ix]));
+                writer.write(new Message(ix, statuses[ix]));
+            }
+        }
+
+        // :: Assert
+
+        TurboTapeV1SessionReader reader = _deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        for (int ix = 0; ix < statuses.length; ix++) {
+            Message message = reader.read(Message.class);
+            assertThat(message.sequenceNumber).isEqualTo(ix);
+            assertThat(message.status).isEqualTo(statuses[ix]);
+        }
+        assertThat(reader.hasNext()).isFalse();
+        assertThat(outputStream.size()).isLessThan(plainOutput.size());
+    }
+
+    @Test
+    public void test_compressed_session_roundtrip() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream plainOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (TurboTapeV1SessionWriter plainWriter = _serializer.openSession(plainOutput);
+             TurboTapeV1SessionWriter writer = _serializer.openCompressedSession(outputStream,
+                     new DeflateBlockCodec(Deflater.BEST_SPEED), 1024)) {
+            for (int ix = 0; ix < 1000; ix++) {
+                plainWriter.write(new Message(ix, ix % 10 == 0 ? "FAILED" : "OK"));
+                writer.write(new Message(ix, ix % 10 == 0 ? "FAILED" : "OK"));
+            }
+            // A flush cuts the block short, so the objects written so far can be read
+            writer.flush();
+            TurboTapeV1SessionReader partial = _deserializer.openCompressedSession(
+                    new ByteArrayInputStream(outputStream.toByteArray()));
+            assertThat(partial.read(Message.class).sequenceNumber).isEqualTo(0);
+        }
+
+        // :: Assert
+
+        TurboTapeV1SessionReader reader = _deserializer.openCompressedSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        for (int ix = 0; ix < 1000; ix++) {
+            Message message = reader.read(Message.class);
+            assertThat(message.sequenceNumber).isEqualTo(ix);
+            assertThat(message.status).isEqualTo(ix % 10 == 0 ? "FAILED" : "OK");
+        }
+        assertThat(reader.hasNext()).isFalse();
+        assertThat(outputStream.size()).isLessThan(plainOutput.size() / 2);
+    }
+
+    @Test
+    public void test_compressed_session_with_installed_codec() throws IOException {
+
+        // :: Arrange
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // :: Act
+
+        try (TurboTapeV1SessionWriter writer = _serializer.openCompressedSession(outputStream,
+                RunLengthBlockCodec.ID, 1024)) {
+            for (int ix = 0; ix < 100; ix++) {
+                writer.write(new Message(ix, "OK"));
+            }
+        }
+
+        // :: Assert
+
+        // The codec is registered as a service, so the reader finds it without being given
+        TurboTapeV1SessionReader reader = _deserializer.openCompressedSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        for (int ix = 0; ix < 100; ix++) {
+            assertThat(reader.read(Message.class).sequenceNumber).isEqualTo(ix);
+        }
+        assertThat(reader.hasNext()).isFalse();
+    }
+
+    @Test
+    public void test_async_session_roundtrip() throws Exception {
+
+        // :: Arrange
+
+        CountDownLatch released = new CountDownLatch(1);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        // The stream blocks until released, so the writes complete only after the queue has been filled
+        OutputStream blockingStream = new FilterOutputStream(outputStream) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    released.await();
+                }
+                catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                out.write(b, off, len);
+            }
+        };
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        // :: Act
+
+        TurboTapeV1AsyncSessionWriter writer = _serializer.openAsyncSession(blockingStream, 2, Thread::new);
+        for (int ix = 0; ix < 3; ix++) {
+            futures.add(writer.write(new Message(ix, "OK")));
+        }
+        boolean completedBeforeRelease = futures.stream().anyMatch(CompletableFuture::isDone);
+        released.countDown();
+        for (int ix = 3; ix < 100; ix++) {
+            futures.add(writer.write(new Message(ix, ix % 2 == 0 ? "OK" : "FAILED")));
+        }
+        writer.flush().get();
+        writer.close();
+
+        // :: Assert
+
+        assertThat(completedBeforeRelease).isFalse();
+        assertThat(futures.stream().allMatch(future -> future.isDone() && !future.isCompletedExceptionally()))
+                .isTrue();
+        TurboTapeV1SessionReader reader = _deserializer.openSession(
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        for (int ix = 0; ix < 100; ix++) {
+            Message message = reader.read(Message.class);
+            assertThat(message.sequenceNumber).isEqualTo(ix);
+            assertThat(message.status).isEqualTo(ix < 3 || ix % 2 == 0 ? "OK" : "FAILED");
+        }
+        assertThat(reader.hasNext()).isFalse();
+    }
+
+    @Test
+    public void test_async_session_stream_failure() throws Exception {
+
+        // :: Arrange
+
+        OutputStream failingStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+
+        // :: Act
+
+        TurboTapeV1AsyncSessionWriter writer = _serializer.openAsyncSession(failingStream);
+        CompletableFuture<Void> future = writer.write(new Message(0, "OK"));
+
+        // :: Assert
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, future::get);
+        assertThat(thrown).hasCauseThat().hasMessageThat().isEqualTo("Disk full");
+        assertThrows(IOException.class, () -> writer.write(new Message(1, "OK")));
+        assertThrows(IOException.class, writer::close);
+    }
+
+    @Test
+    public void test_async_failed_write_is_discarded() throws Exception {
+
+        // :: Arrange
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        TurboTapeV1AsyncSessionWriter writer = failingSerializer().openAsyncSession(outputStream);
+
+        // :: Act
+
+        writer.write(new Message(0, "OK"));
+        assertThrows(IllegalStateException.class, () -> writer.write(new Message(-1, "OK")));
+        writer.write(new Message(1, "OK")).get();
+        assertThrows(IllegalStateException.class, () -> writer.write(new Message(-1, "NEW")));
+        assertThrows(IOException.class, () -> writer.write(new Message(2, "OK")));
+        assertThrows(IOException.class, writer::flush);
+        writer.close();
+
+        // :: Assert
+
+        assertThat(readSequenceNumbers(outputStream.toByteArray())).containsExactly(0, 1).inOrder();
+    }
+
+    @Test
+    public void test_async_session_fails_once_drainer_stops() throws Exception {
+
+        // :: Arrange
+
+        List<Thread> drainers = new ArrayList<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        OutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        TurboTapeV1AsyncSessionWriter writer = _serializer.openAsyncSession(outputStream, 1, runnable -> {
+            Thread drainer = new Thread(runnable);
+            drainers.add(drainer);
+            return drainer;
+        });
+
+        // :: Act
+
+        writer.write(new Message(0, "OK")).get();
+        drainers.get(0).interrupt();
+        drainers.get(0).join();
+
+        // :: Assert
+
+        assertThrows(IOException.class, () -> writer.write(new Message(1, "OK")));
+        assertThrows(IOException.class, writer::close);
+        assertThat(closed.get()).isTrue();
+    }
+
+    /**
+     * Returns a serializer whose handler fails for negative sequence numbers, after writing the sequence
+     * number, and a new field name if the status is NEW
+     */
+    private static TurboTapeV1Serializer failingSerializer() {
+        return new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+                .add("message", Message.class, (writer, message) -> {
+                    writer.write(message.sequenceNumber).as("sequenceNumber");
+                    if (message.sequenceNumber < 0) {
+                        if (message.status.equals("NEW")) writer.write(0).as("new");
+                        writer.write(0).as("sequenceNumber");
+                        throw new IllegalStateException("Failed");
+                    }
+                    writer.write(message.status).as("status");
+                })
+                .build());
+    }
+
+    private List<Integer> readSequenceNumbers(byte[] tape) throws IOException {
+        List<Integer> sequenceNumbers = new ArrayList<>();
+        TurboTapeV1SessionReader reader = _deserializer.openSession(new ByteArrayInputStream(tape));
+        while (reader.hasNext()) {
+            sequenceNumbers.add(reader.read(Message.class).sequenceNumber);
+        }
+        return sequenceNumbers;
+    }
+}
@@ -0,0 +1,177 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.FieldReader;
+import net.thebigrock.turbotape.FieldWriter;
+import net.thebigrock.turbotape.ObjectReadHandlerProviderBuilder;
+import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TurboTapeV1SplittableTest {
+
+    public static class Entry {
+        private final long key;
+        private final String value;
+
+        Entry(long key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public static void serialize(FieldWriter writer, Entry obj) {
+            writer.write(obj.key).as("key");
+            writer.write(obj.value).as("value");
+        }
+
+        public static Entry deserialize(FieldReader reader) {
+            return new Entry(reader.as("key").readLong(), reader.as("value").readString());
+        }
+    }
+
+    private static final int ENTRY_COUNT = 2000;
+
+    private final TurboTapeV1Serializer _serializer = TurboTapeV1SerializerBuilder.create(
+            ObjectWriteHandlerProviderBuilder.create()
+                    .add("entry", Entry.class, Entry::serialize)
+                    .build())
+            .compactIntegers(true)
+            .stringDictionary(64)
+            .build();
+
+    private final TurboTapeV1Deserializer _deserializer = new TurboTapeV1Deserializer(
+            ObjectReadHandlerProviderBuilder.create()
+                    .add("entry", Entry::deserialize)
+                    .build());
+
+    @TempDir
+    Path _directory;
+
+    @Test
+    public void test_splits_read_each_object_once_in_order() throws IOException {
+
+        // :: Arrange
+
+        Path path = writeTape(500);
+        long size = Files.size(path);
+
+        for (int splitCount : new int[] { 1, 2, 3, 7, 64 }) {
+
+            // :: Act
+
+            List<Long> keys = new ArrayList<>();
+            for (int split = 0; split < splitCount; split++) {
+                try (TurboTapeV1SplitReader reader = _deserializer.openSplit(path,
+                        size * split / splitCount, size * (split + 1) / splitCount)) {
+                    while (reader.hasNext()) {
+                        Entry entry = reader.read(Entry.class);
+                        assertThat(entry.value).isEqualTo("value " + entry.key % 10);
+                        keys.add(entry.key);
+                    }
+                }
+            }
+
+            // :: Assert
+
+            assertThat(keys).hasSize(ENTRY_COUNT);
+            for (int ix = 0; ix < ENTRY_COUNT; ix++) {
+                assertThat(keys.get(ix)).isEqualTo(ix);
+            }
+        }
+    }
+
+    @Test
+    public void test_splits_read_concurrently() throws IOException {
+
+        // :: Arrange
+
+        Path path = writeTape(1000);
+        ConcurrentLinkedQueue<Long> keys = new ConcurrentLinkedQueue<>();
+
+        // :: Act
+
+        _deserializer.readSplits(path, Entry.class, 5, ForkJoinPool.commonPool(), entry -> keys.add(entry.key));
+
+        // :: Assert
+
+        assertThat(keys).hasSize(ENTRY_COUNT);
+        assertThat(keys.stream().distinct().count()).isEqualTo(ENTRY_COUNT);
+    }
+
+    @Test
+    public void test_failed_write_is_discarded() throws IOException {
+
+        // :: Arrange
+
+        // The handler fails for negative keys after writing the key, and a new field name if the value is NEW
+        TurboTapeV1Serializer serializer = new TurboTapeV1Serializer(ObjectWriteHandlerProviderBuilder.create()
+                .add("entry", Entry.class, (writer, entry) -> {
+                    writer.write(entry.key).as("key");
+                    if (entry.key < 0) {
+                        if (entry.value.equals("NEW")) writer.write(0).as("new");
+                        writer.write(0).as("key");
+                        throw new IllegalStateException("Failed");
+                    }
+                    writer.write(entry.value).as("value");
+                })
+                .build());
+        Path path = _directory.resolve("failed.tape");
+
+        // :: Act
+
+        try (TurboTapeV1SplittableWriter writer = serializer.openSplittableTape(Files.newOutputStream(path),
+                1 << 16)) {
+            writer.write(new Entry(0, "zero"));
+            assertThrows(IllegalStateException.class, () -> writer.write(new Entry(-1, "OK")));
+            writer.write(new Entry(1, "one"));
+            assertThrows(IllegalStateException.class, () -> writer.write(new Entry(-1, "NEW")));
+            writer.write(new Entry(2, "two"));
+            assertThrows(IllegalStateException.class, () -> writer.write(new Entry(-1, "NEW")));
+            writer.write(new Entry(3, "three"));
+        }
+
+        // :: Assert
+
+        List<String> values = new ArrayList<>();
+        try (TurboTapeV1SplitReader reader = _deserializer.openSplit(path, 0, Files.size(path))) {
+            while (reader.hasNext()) {
+                Entry entry = reader.read(Entry.class);
+                values.add(entry.key + ":" + entry.value);
+            }
+        }
+        assertThat(values).containsExactly("0:zero", "1:one", "2:two", "3:three").inOrder();
+    }
+
+    @Test
+    public void test_not_a_splittable_tape() throws IOException {
+        Path path = _directory.resolve("plain.tape");
+        try (OutputStream out = Files.newOutputStream(path)) {
+            _serializer.serialize(new Entry(1, "one"), out);
+        }
+
+        assertThrows(StreamCorruptedException.class, () -> _deserializer.openSplit(path, 0, Files.size(path)));
+    }
+
+    private Path writeTape(int blockSize) throws IOException {
+        Path path = _directory.resolve("entries.tape");
+        try (TurboTapeV1SplittableWriter writer = _serializer.openSplittableTape(Files.newOutputStream(path),
+                blockSize)) {
+            for (int ix = 0; ix < ENTRY_COUNT; ix++) {
+                writer.write(new Entry(ix, "value " + ix % 10));
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,131 @@
+package net.thebigrock.turbotape.v1;
+
+import net.thebigrock.turbotape.FieldReader;
+import net.thebigrock.turbotape.FieldWriter;
+import net.thebigrock.turbotape.ObjectReadHandlerProviderBuilder;
+import net.thebigrock.turbotape.ObjectWriteHandlerProviderBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TurboTapeV1TapeFileTest {
+
+    public static class Entry {
+        private final long key;
+        private final String value;
+
+        Entry(long key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public static void serialize(FieldWriter writer, Entry obj) {
+            writer.write(obj.key).as("key");
+            writer.write(obj.value).as("value");
+        }
+
+        public static Entry deserialize(FieldReader reader) {
+            return new Entry(reader.as("key").readLong(), reader.as("value").readString());
+        }
+    }
+
+    private final TurboTapeV1Serializer _serializer = new TurboTapeV1Serializer(
+            ObjectWriteHandlerProviderBuilder.create()
+                    .add("entry", Entry.class, Entry::serialize)
+                    .build());
+
+    private final TurboTapeV1Deserializer _deserializer = new TurboTapeV1Deserializer(
+            ObjectReadHandlerProviderBuilder.create()
+                    .add("entry", Entry::deserialize)
+                    .build());
+
+    @TempDir
+    Path _directory;
+
+    @Test
+    public void test_records_read_in_any_order() throws IOException {
+
+        // :: Arrange
+
+        Path path = _directory.resolve("entries.tape");
+
+        // :: Act
+
+        try (TurboTapeV1TapeFileWriter writer = _serializer.openTapeFile(path)) {
+            for (int ix = 0; ix < 1000; ix++) {
+                assertThat(writer.append(new Entry(ix, "value " + ix))).isEqualTo(ix);
+            }
+        }
+        // Reopening appends after the existing records
+        long last;
+        try (TurboTapeV1TapeFileWriter writer = _serializer.openTapeFile(path)) {
+            assertThat(writer.size()).isEqualTo(1000);
+            last = writer.append(new Entry(1000, "x".repeat(100_000)));
+        }
+
+        // :: Assert
+
+        try (TurboTapeV1TapeFileReader reader = _deserializer.openTapeFile(path)) {
+            assertThat(reader.size()).isEqualTo(1001);
+            for (int ix : new int[] { 999, 0, 500, 1 }) {
+                Entry entry = reader.read(Entry.class, ix);
+                assertThat(entry.key).isEqualTo(ix);
+                assertThat(entry.value).isEqualTo("value " + ix);
+            }
+            // The record numbers returned by the writer are used as is
+            assertThat(reader.read(Entry.class, last).value).hasLength(100_000);
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.record(reader.size()));
+        }
+        // The mapped region past the last record is truncated away
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(TurboTapeV1TapeFileWriter.indexPath(path)));
+        assertThat(Files.size(path)).isEqualTo(index.getLong(1000 * Long.BYTES));
+    }
+
+    @Test
+    public void test_unindexed_data_discarded_on_reopen() throws IOException {
+
+        // :: Arrange
+
+        Path path = _directory.resolve("partial.tape");
+        try (TurboTapeV1TapeFileWriter writer = _serializer.openTapeFile(path)) {
+            writer.append(new Entry(0, "zero"));
+        }
+        long end = Files.size(path);
+        // Simulates a writer which stopped within a record, and within its index entry
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 1, 2 }));
+        }
+        try (FileChannel channel = FileChannel.open(TurboTapeV1TapeFileWriter.indexPath(path),
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0 }));
+        }
+
+        // :: Act
+
+        try (TurboTapeV1TapeFileWriter writer = _serializer.openTapeFile(path)) {
+            writer.append(new Entry(1, "one"));
+        }
+
+        // :: Assert
+
+        try (TurboTapeV1TapeFileReader reader = _deserializer.openTapeFile(path)) {
+            assertThat(reader.size()).isEqualTo(2);
+            assertThat(reader.read(Entry.class, 0).value).isEqualTo("zero");
+            assertThat(reader.read(Entry.class, 1).value).isEqualTo("one");
+            assertThat(reader.record(1).position()).isEqualTo(0);
+        }
+        assertThat(Files.size(path)).isGreaterThan(end);
+        Files.write(path, new byte[] { 'X', 'X', 'X', 'X' }, StandardOpenOption.WRITE);
+        assertThrows(StreamCorruptedException.class, () -> _deserializer.openTapeFile(path));
+    }
+}
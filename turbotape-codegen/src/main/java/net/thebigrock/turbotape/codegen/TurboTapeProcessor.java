@@ -0,0 +1,449 @@
+package net.thebigrock.turbotape.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor generating object write handlers and read handlers for the types annotated with
+ * {@link TurboTapeType}.
+ * <p>
+ * For a type {@code Foo}, a {@code FooTurboTapeWriter} and a {@code FooTurboTapeReader} are generated into
+ * the package of the type, with a shared {@code INSTANCE} each. The writer writes the fields in declaration
+ * order, naming each, and the reader reads them by their position, which is generated as a constant, so neither
+ * looks up anything per field. A {@code TurboTapeHandlers} class is generated into each package, registering
+ * the handlers of the package with the provider builders.
+ * <p>
+ * Fields can be primitives other than char, short and byte, strings, primitive arrays of the supported kinds,
+ * enums, which are written by name, lists of objects, and objects of types registered with the providers.
+ */
+@SupportedAnnotationTypes("net.thebigrock.turbotape.codegen.TurboTapeType")
+public class TurboTapeProcessor extends AbstractProcessor {
+    static final String WRITER_SUFFIX = "TurboTapeWriter";
+    static final String READER_SUFFIX = "TurboTapeReader";
+    static final String HANDLERS_CLASS = "TurboTapeHandlers";
+    private static final String CORE_PACKAGE = "net.thebigrock.turbotape";
+
+    // The types generated and not yet registered in the handlers class of their package, by package
+    private final Map<String, List<Model>> _pending = new LinkedHashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Generates the handlers of the annotated types of the round. The handlers classes are generated in the
+     * first round without annotated types, so each covers the types of its package from all previous rounds.
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<? extends Element> annotated = roundEnv.getElementsAnnotatedWith(TurboTapeType.class);
+        for (Element element : annotated) {
+            Model model = model(element);
+            if (model == null) continue;
+            write(model.qualified(model.writerName), writerSource(model), element);
+            write(model.qualified(model.readerName), readerSource(model), element);
+            _pending.computeIfAbsent(model.packageName, name -> new ArrayList<>()).add(model);
+        }
+
+        if (annotated.isEmpty() && !roundEnv.processingOver()) {
+            for (Map.Entry<String, List<Model>> entry : _pending.entrySet()) {
+                String packageName = entry.getKey();
+                String name = packageName.isEmpty() ? HANDLERS_CLASS : packageName + "." + HANDLERS_CLASS;
+                write(name, handlersSource(packageName, entry.getValue()), null);
+            }
+            _pending.clear();
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the model of an annotated type, reporting an error if the type is not supported
+     * @param element The annotated element
+     * @return The model, or null if not supported
+     */
+    private Model model(Element element) {
+        if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.RECORD) {
+            return error("@TurboTapeType must annotate a class or record", element);
+        }
+        TypeElement type = (TypeElement)element;
+        if (type.getModifiers().contains(Modifier.PRIVATE) || type.getModifiers().contains(Modifier.ABSTRACT)
+                || type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            return error("@TurboTapeType type must be a concrete top level or static nested type, "
+                    + "which is not private", element);
+        }
+
+        // The generated names flatten the nesting, e.g. Outer_InnerTurboTapeWriter
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String qualifiedName = type.getQualifiedName().toString();
+        String flatName = (packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1))
+                .replace('.', '_');
+        String alias = type.getAnnotation(TurboTapeType.class).alias();
+        Model model = new Model(packageName, qualifiedName, flatName,
+                alias.isEmpty() ? type.getSimpleName().toString() : alias);
+
+        if (type.getKind() == ElementKind.RECORD) {
+            for (RecordComponentElement component : type.getRecordComponents()) {
+                String name = component.getSimpleName().toString();
+                if (!model.add(name, "obj." + name + "()", component)) return null;
+            }
+        }
+        else {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+                String name = field.getSimpleName().toString();
+                if (modifiers.contains(Modifier.PRIVATE)) return error("Field [" + name + "] is private", field);
+                if (!model.add(name, "obj." + name, field)) return null;
+            }
+            if (!hasConstructor(type, model)) {
+                return error("No constructor which is not private, taking the fields in declaration order", type);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Checks if the class has a constructor, which is not private, taking the fields in declaration order
+     * @param type The class
+     * @param model The model of the class
+     * @return True if there is such a constructor
+     */
+    private boolean hasConstructor(TypeElement type, Model model) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || parameters.size() != model.fields.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int ix = 0; ix < parameters.size() && matches; ix++) {
+                matches = processingEnv.getTypeUtils().isSameType(parameters.get(ix).asType(),
+                        model.fields.get(ix).type);
+            }
+            if (matches) return true;
+        }
+        return false;
+    }
+
+    private Model error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return null;
+    }
+
+    /**
+     * Writes a generated source file
+     * @param name The qualified name of the generated class
+     * @param source The source
+     * @param origin The element the class is generated for, or null if generated for many
+     */
+    private void write(String name, String source, Element origin) {
+        try (Writer writer = (origin != null ? processingEnv.getFiler().createSourceFile(name, origin)
+                : processingEnv.getFiler().createSourceFile(name)).openWriter()) {
+            writer.write(source);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to write generated source [" + name + "]", e);
+        }
+    }
+
+    private String writerSource(Model model) {
+        StringBuilder source = header(model.packageName);
+        source.append("import ").append(CORE_PACKAGE).append(".FieldWriter;\n")
+                .append("import ").append(CORE_PACKAGE).append(".ObjectWriteHandler;\n\n")
+                .append(generated())
+                .append("public final class ").append(model.writerName)
+                .append(" implements ObjectWriteHandler<").append(model.typeName).append("> {\n")
+                .append("    public static final ").append(model.writerName).append(" INSTANCE = new ")
+                .append(model.writerName).append("();\n\n")
+                .append("    private ").append(model.writerName).append("() { }\n\n")
+                .append("    @Override\n")
+                .append("    public void process(FieldWriter writer, ").append(model.typeName).append(" obj) {\n");
+        for (Field field : model.fields) {
+            source.append("        writer.write(").append(field.kind.writeExpression(field)).append(").as(\"")
+                    .append(field.name).append("\");\n");
+        }
+        return source.append("    }\n}\n").toString();
+    }
+
+    private String readerSource(Model model) {
+        StringBuilder source = header(model.packageName);
+        source.append("import ").append(CORE_PACKAGE).append(".FieldReader;\n")
+                .append("import ").append(CORE_PACKAGE).append(".ObjectReadHandler;\n\n")
+                .append(generated())
+                .append("public final class ").append(model.readerName)
+                .append(" implements ObjectReadHandler<").append(model.typeName).append("> {\n")
+                .append("    public static final ").append(model.readerName).append(" INSTANCE = new ")
+                .append(model.readerName).append("();\n\n");
+        for (int ix = 0; ix < model.fields.size(); ix++) {
+            source.append("    public static final int ").append(model.fields.get(ix).constant).append(" = ")
+                    .append(ix).append(";\n");
+        }
+        source.append("\n    private ").append(model.readerName).append("() { }\n\n")
+                .append("    @Override\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public ").append(model.typeName).append(" build(FieldReader reader) {\n");
+        StringBuilder arguments = new StringBuilder();
+        for (int ix = 0; ix < model.fields.size(); ix++) {
+            Field field = model.fields.get(ix);
+            String local = "v" + ix;
+            field.kind.appendRead(source, field, local, "reader.at(" + field.constant + ")");
+            arguments.append(ix > 0 ? ", " : "").append(local);
+        }
+        return source.append("        return new ").append(model.typeName).append("(").append(arguments)
+                .append(");\n    }\n}\n").toString();
+    }
+
+    private String handlersSource(String packageName, List<Model> models) {
+        StringBuilder source = header(packageName);
+        for (String name : new String[] { "ObjectReadHandlerProvider", "ObjectReadHandlerProviderBuilder",
+                "ObjectWriteHandlerProvider", "ObjectWriteHandlerProviderBuilder" }) {
+            source.append("import ").append(CORE_PACKAGE).append(".").append(name).append(";\n");
+        }
+        source.append("\n").append(generated())
+                .append("public final class ").append(HANDLERS_CLASS).append(" {\n")
+                .append("    private ").append(HANDLERS_CLASS).append("() { }\n\n")
+                .append("    public static ObjectWriteHandlerProviderBuilder addWriteHandlers(")
+                .append("ObjectWriteHandlerProviderBuilder builder) {\n")
+                .append("        return builder");
+        for (Model model : models) {
+            source.append("\n                .add(").append(literal(model.alias)).append(", ").append(model.typeName)
+                    .append(".class, ").append(model.writerName).append(".INSTANCE)");
+        }
+        source.append(";\n    }\n\n")
+                .append("    public static ObjectReadHandlerProviderBuilder addReadHandlers(")
+                .append("ObjectReadHandlerProviderBuilder builder) {\n")
+                .append("        return builder");
+        for (Model model : models) {
+            source.append("\n                .add(").append(literal(model.alias)).append(", ").append(model.readerName)
+                    .append(".INSTANCE)");
+        }
+        return source.append(";\n    }\n\n")
+                .append("    public static ObjectWriteHandlerProvider writeHandlers() {\n")
+                .append("        return addWriteHandlers(ObjectWriteHandlerProviderBuilder.create()).build();\n")
+                .append("    }\n\n")
+                .append("    public static ObjectReadHandlerProvider readHandlers() {\n")
+                .append("        return addReadHandlers(ObjectReadHandlerProviderBuilder.create()).build();\n")
+                .append("    }\n}\n").toString();
+    }
+
+    private static StringBuilder header(String packageName) {
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) source.append("package ").append(packageName).append(";\n\n");
+        return source;
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private String generated() {
+        return "@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")\n";
+    }
+
+    /**
+     * Resolves how a field of the given type is written and read
+     * @param type The type of the field
+     * @return The kind of field, or null if the type is not supported
+     */
+    private Kind kind(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return Kind.BOOLEAN;
+            case INT: return new Kind("readInt()");
+            case LONG: return new Kind("readLong()");
+            case FLOAT: return new Kind("readFloat()");
+            case DOUBLE: return new Kind("readDouble()");
+            case ARRAY:
+                switch (((ArrayType)type).getComponentType().getKind()) {
+                    case INT: return new Kind("readIntArray()");
+                    case LONG: return new Kind("readLongArray()");
+                    case FLOAT: return new Kind("readFloatArray()");
+                    case DOUBLE: return new Kind("readDoubleArray()");
+                    case BYTE: return new Kind("readByteArray()");
+                    default: return null;
+                }
+            case DECLARED:
+                break;
+            default:
+                return null;
+        }
+
+        TypeElement element = (TypeElement)((DeclaredType)type).asElement();
+        String name = element.getQualifiedName().toString();
+        if (name.equals("java.lang.String")) return new Kind("readString()");
+        if (element.getKind() == ElementKind.ENUM) return Kind.ENUM;
+        if (name.equals("java.util.List") || name.equals("java.util.Collection") || name.equals("java.lang.Iterable")) {
+            List<? extends TypeMirror> arguments = ((DeclaredType)type).getTypeArguments();
+            if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) return null;
+            return Kind.LIST;
+        }
+        // Boxed primitives and other java.lang types have no read handlers
+        if (name.startsWith("java.lang.") || element.getKind() == ElementKind.INTERFACE) return null;
+        return Kind.OBJECT;
+    }
+
+    /**
+     * The model of an annotated type
+     */
+    private class Model {
+        private final String packageName;
+        private final String typeName;
+        private final String writerName;
+        private final String readerName;
+        private final String alias;
+        private final List<Field> fields = new ArrayList<>();
+
+        private Model(String packageName, String typeName, String flatName, String alias) {
+            this.packageName = packageName;
+            this.typeName = typeName;
+            this.writerName = flatName + WRITER_SUFFIX;
+            this.readerName = flatName + READER_SUFFIX;
+            this.alias = alias;
+        }
+
+        private String qualified(String name) {
+            return packageName.isEmpty() ? name : packageName + "." + name;
+        }
+
+        /**
+         * Adds a field, reporting an error if its type is not supported, or if its position constant is
+         * already used by another field, e.g. for fooBar and foo_bar
+         * @param name The name of the field
+         * @param access The expression reading the field of the object
+         * @param element The field or record component
+         * @return True if added, false if an error was reported
+         */
+        private boolean add(String name, String access, Element element) {
+            String description = element.getKind() == ElementKind.RECORD_COMPONENT ? "record component" : "field";
+            Kind kind = kind(element.asType());
+            if (kind == null) {
+                error("Unsupported type of " + description + " [" + name + "]", element);
+                return false;
+            }
+            Field added = new Field(name, access, element.asType(), kind);
+            for (Field field : fields) {
+                if (field.constant.equals(added.constant)) {
+                    error("The " + description + " [" + name + "] and [" + field.name + "] both map to the constant ["
+                            + added.constant + "]", element);
+                    return false;
+                }
+            }
+            fields.add(added);
+            return true;
+        }
+    }
+
+    /**
+     * A field of an annotated type
+     */
+    private class Field {
+        private final String name;
+        private final String access;
+        private final TypeMirror type;
+        private final Kind kind;
+        // The name of the constant holding the position of the field, e.g. FIELD_NAME_INDEX for fieldName
+        private final String constant;
+
+        private Field(String name, String access, TypeMirror type, Kind kind) {
+            this.name = name;
+            this.access = access;
+            this.type = type;
+            this.kind = kind;
+            this.constant = name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase() + "_INDEX";
+        }
+
+        private String erasure() {
+            return processingEnv.getTypeUtils().erasure(type).toString();
+        }
+
+        private String element() {
+            return processingEnv.getTypeUtils().erasure(((DeclaredType)type).getTypeArguments().get(0)).toString();
+        }
+    }
+
+    /**
+     * How a field is written and read. Fields are written as is by default, and read with a reader method.
+     */
+    private static class Kind {
+        private static final Kind BOOLEAN = new Kind(null) {
+            @Override
+            void appendRead(StringBuilder source, Field field, String local, String reader) {
+                source.append("        boolean ").append(local).append(" = ").append(reader)
+                        .append(".readBool() != 0;\n");
+            }
+        };
+
+        private static final Kind ENUM = new Kind(null) {
+            @Override
+            String writeExpression(Field field) {
+                return field.access + ".name()";
+            }
+
+            @Override
+            void appendRead(StringBuilder source, Field field, String local, String reader) {
+                source.append("        ").append(field.erasure()).append(" ").append(local).append(" = ")
+                        .append(field.erasure()).append(".valueOf(").append(reader).append(".readString());\n");
+            }
+        };
+
+        private static final Kind LIST = new Kind(null) {
+            @Override
+            void appendRead(StringBuilder source, Field field, String local, String reader) {
+                String element = field.element();
+                source.append("        java.util.List<").append(element).append("> ").append(local)
+                        .append(" = new java.util.ArrayList<>();\n")
+                        .append("        for (").append(element).append(" element : ").append(reader)
+                        .append(".readIterable(").append(element).append(".class)) {\n")
+                        .append("            ").append(local).append(".add(element);\n")
+                        .append("        }\n");
+            }
+        };
+
+        private static final Kind OBJECT = new Kind(null) {
+            @Override
+            void appendRead(StringBuilder source, Field field, String local, String reader) {
+                source.append("        ").append(field.type).append(" ").append(local).append(" = ")
+                        .append(reader).append(".readObject(").append(field.erasure()).append(".class);\n");
+            }
+        };
+
+        private final String readMethod;
+
+        private Kind(String readMethod) {
+            this.readMethod = readMethod;
+        }
+
+        String writeExpression(Field field) {
+            return field.access;
+        }
+
+        void appendRead(StringBuilder source, Field field, String local, String reader) {
+            source.append("        ").append(field.type).append(" ").append(local).append(" = ").append(reader)
+                    .append(".").append(readMethod).append(";\n");
+        }
+    }
+}
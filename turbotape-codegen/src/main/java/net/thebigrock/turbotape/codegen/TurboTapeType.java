@@ -0,0 +1,25 @@
+package net.thebigrock.turbotape.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record or class to generate an object write handler and read handler for, using the
+ * {@link TurboTapeProcessor}.
+ * <p>
+ * The fields of a record are its components. The fields of a class are its instance fields which are not
+ * transient, in declaration order, and the class must have a constructor taking them in the same order.
+ * Neither the fields nor the constructor may be private, as the handlers are generated into the same package.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface TurboTapeType {
+
+    /**
+     * The alias the objects are written with
+     * @return The alias, or empty to use the simple name of the type
+     */
+    String alias() default "";
+}
@@ -0,0 +1,159 @@
+package net.thebigrock.turbotape.codegen;
+
+import net.thebigrock.turbotape.ObjectReadHandlerProvider;
+import net.thebigrock.turbotape.ObjectWriteHandlerProvider;
+import net.thebigrock.turbotape.v1.TurboTapeV1Deserializer;
+import net.thebigrock.turbotape.v1.TurboTapeV1Serializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TurboTapeProcessorTest {
+
+    private static final String ORDER = String.join("\n",
+            "package shop;",
+            "import java.util.List;",
+            "import net.thebigrock.turbotape.codegen.TurboTapeType;",
+            "@TurboTapeType(alias = \"shop \\\"order\\\"\")",
+            "public record Order(long orderId, String customer, boolean paid, double[] prices, Status status,",
+            "                    Line firstLine, List<Line> lines) {",
+            "    public enum Status { OPEN, SHIPPED }",
+            "}");
+
+    private static final String LINE = String.join("\n",
+            "package shop;",
+            "import net.thebigrock.turbotape.codegen.TurboTapeType;",
+            "@TurboTapeType",
+            "public class Line {",
+            "    final String item;",
+            "    final int quantity;",
+            "    transient int cached;",
+            "    public Line(String item, int quantity) {",
+            "        this.item = item;",
+            "        this.quantity = quantity;",
+            "    }",
+            "    @Override",
+            "    public String toString() {",
+            "        return quantity + \" x \" + item;",
+            "    }",
+            "}");
+
+    @TempDir
+    Path _directory;
+
+    @Test
+    public void test_generated_handlers_roundtrip() throws Exception {
+
+        // :: Arrange
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(ORDER, LINE);
+        assertThat(diagnostics.stream().filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                .collect(Collectors.toList())).isEmpty();
+        ClassLoader loader = new URLClassLoader(new URL[] { _directory.toUri().toURL() }, getClass().getClassLoader());
+        Class<?> handlers = loader.loadClass("shop." + TurboTapeProcessor.HANDLERS_CLASS);
+        Class<?> order = loader.loadClass("shop.Order");
+        Class<?> line = loader.loadClass("shop.Line");
+        Class<?> status = loader.loadClass("shop.Order$Status");
+        Object firstLine = line.getConstructor(String.class, int.class).newInstance("apple", 3);
+        Object input = order.getConstructors()[0].newInstance(42L, "\u00c5se", true, new double[] { 1.5, 2.5 },
+                status.getEnumConstants()[1], firstLine,
+                List.of(firstLine, line.getConstructor(String.class, int.class).newInstance("pear", 1)));
+
+        // :: Act
+
+        TurboTapeV1Serializer serializer = new TurboTapeV1Serializer(
+                (ObjectWriteHandlerProvider)handlers.getMethod("writeHandlers").invoke(null));
+        TurboTapeV1Deserializer deserializer = new TurboTapeV1Deserializer(
+                (ObjectReadHandlerProvider)handlers.getMethod("readHandlers").invoke(null));
+        Object output = deserializer.deserialize(order, new ByteArrayInputStream(serializer.serialize(input)));
+
+        // :: Assert
+
+        assertThat(order.getMethod("orderId").invoke(output)).isEqualTo(42L);
+        assertThat(order.getMethod("customer").invoke(output)).isEqualTo("\u00c5se");
+        assertThat(order.getMethod("paid").invoke(output)).isEqualTo(true);
+        assertThat(order.getMethod("prices").invoke(output)).isEqualTo(new double[] { 1.5, 2.5 });
+        assertThat(order.getMethod("status").invoke(output)).isEqualTo(status.getEnumConstants()[1]);
+        assertThat(order.getMethod("firstLine").invoke(output).toString()).isEqualTo("3 x apple");
+        assertThat(order.getMethod("lines").invoke(output).toString()).isEqualTo("[3 x apple, 1 x pear]");
+        assertThat(loader.loadClass("shop.OrderTurboTapeReader").getField("FIRST_LINE_INDEX").get(null)).isEqualTo(5);
+    }
+
+    @Test
+    public void test_unsupported_types_are_reported() throws Exception {
+        String source = String.join("\n",
+                "package shop;",
+                "import net.thebigrock.turbotape.codegen.TurboTapeType;",
+                "@TurboTapeType",
+                "public class Hidden {",
+                "    private final int value;",
+                "    public Hidden(int value) {",
+                "        this.value = value;",
+                "    }",
+                "}");
+
+        List<String> errors = compile(source).stream()
+                .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                .map(d -> d.getMessage(null))
+                .collect(Collectors.toList());
+
+        assertThat(errors).containsExactly("Field [value] is private");
+    }
+
+    @Test
+    public void test_clashing_constants_are_reported() throws Exception {
+        String source = String.join("\n",
+                "package shop;",
+                "import net.thebigrock.turbotape.codegen.TurboTapeType;",
+                "@TurboTapeType",
+                "public record Clash(int fooBar, int foo_bar) { }");
+
+        List<String> errors = compile(source).stream()
+                .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                .map(d -> d.getMessage(null))
+                .collect(Collectors.toList());
+
+        assertThat(errors).containsExactly(
+                "The record component [foo_bar] and [fooBar] both map to the constant [FOO_BAR_INDEX]");
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(String... sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<JavaFileObject> files = new ArrayList<>();
+        for (String source : sources) {
+            String name = source.replaceAll("(?s).*public (?:record|class) (\\w+).*", "$1");
+            files.add(new SimpleJavaFileObject(URI.create("string:///shop/" + name + ".java"),
+                    JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            });
+        }
+        Files.createDirectories(_directory);
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                List.of("-d", _directory.toString(), "-s", _directory.toString(),
+                        "-classpath", System.getProperty("java.class.path")), null, files);
+        task.setProcessors(List.of(new TurboTapeProcessor()));
+        task.call();
+        return diagnostics.getDiagnostics();
+    }
+}